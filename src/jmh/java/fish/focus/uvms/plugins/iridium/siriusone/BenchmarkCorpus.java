@@ -0,0 +1,90 @@
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic SiriusOne reports shaped like production traffic: vessels in Nordic waters reporting every few minutes
+ * at fishing speeds, as binary frames and as SiriusOne XML exports.
+ */
+public class BenchmarkCorpus {
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final LocalDateTime START = LocalDateTime.of(2023, 3, 1, 6, 0);
+    private static final int START_MINUTES = (int) Duration.between(LocalDateTime.of(2015, 1, 1, 0, 1), START).toMinutes();
+    private static final double DEGREES_PER_UNIT = 0.000344;
+
+    private BenchmarkCorpus() {
+    }
+
+    /**
+     * @return {@code frames} consecutive 10 byte reports
+     */
+    public static byte[] binaryReports(int frames, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        byte[] bytes = new byte[frames * SiriusOneFrame.FRAME_LENGTH];
+        for (int i = 0; i < frames; i++) {
+            double latitude = 55 + random.nextDouble() * 14;
+            double longitude = -4 + random.nextDouble() * 28;
+            long high = 1L << 62
+                    | (long) (START_MINUTES + i * 5) << 39
+                    | (longitude < 0 ? 1L : 0L) << 38
+                    | (long) (Math.abs(longitude) / DEGREES_PER_UNIT) << 19
+                    | (long) (latitude / DEGREES_PER_UNIT);
+            int offset = i * SiriusOneFrame.FRAME_LENGTH;
+            for (int b = 0; b < 8; b++) {
+                bytes[offset + b] = (byte) (high >>> (56 - 8 * b));
+            }
+            bytes[offset + 8] = (byte) random.nextInt(60);
+            bytes[offset + 9] = (byte) random.nextInt(240);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return a SiriusOne XML export with {@code devices} devices holding {@code positions} positions each
+     */
+    public static byte[] xmlReport(int devices, int positions, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n<devices>\n");
+        for (int d = 0; d < devices; d++) {
+            xml.append("    <device>\n")
+                    .append("        <devicetype>SiriusOne</devicetype>\n")
+                    .append("        <name>Vessel ").append(d).append("</name>\n")
+                    .append("        <firmware>3.00</firmware>\n")
+                    .append("        <serial>E").append(10_000_000 + d).append("</serial>\n")
+                    .append("        <positions>\n");
+            for (int p = 0; p < positions; p++) {
+                LocalDateTime gps = START.plusMinutes(15L * p + d);
+                double knots = random.nextInt(150) / 10.0;
+                xml.append("            <position>\n")
+                        .append("                <serial>").append(p).append("</serial>\n")
+                        .append("                <csp>").append(TIMESTAMP.format(gps.plusSeconds(71))).append("</csp>\n")
+                        .append("                <source>Data Report</source>\n")
+                        .append("                <type>Interval report</type>\n")
+                        .append("                <timestamp>").append(TIMESTAMP.format(gps.plusSeconds(77))).append("</timestamp>\n")
+                        .append("                <gps>").append(TIMESTAMP.format(gps)).append("</gps>\n")
+                        .append("                <speed>\n")
+                        .append("                    <knots>").append(knots).append("</knots>\n")
+                        .append("                    <km>").append(Math.round(knots * 1.852)).append("</km>\n")
+                        .append("                </speed>\n")
+                        .append("                <course>").append(random.nextInt(360)).append("</course>\n")
+                        .append("                <odometer/>\n")
+                        .append("                <io/>\n")
+                        .append("                <zone/>\n")
+                        .append("                <analog/>\n")
+                        .append("                <latitude>").append(String.format(Locale.ROOT, "%.7f", 55 + random.nextDouble() * 14)).append("</latitude>\n")
+                        .append("                <longitude>").append(String.format(Locale.ROOT, "%.7f", -4 + random.nextDouble() * 28)).append("</longitude>\n")
+                        .append("                <altitude/>\n")
+                        .append("            </position>\n");
+            }
+            xml.append("        </positions>\n")
+                    .append("    </device>\n");
+        }
+        return xml.append("</devices>\n").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
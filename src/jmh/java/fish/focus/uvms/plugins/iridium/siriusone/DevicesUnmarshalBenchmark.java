@@ -0,0 +1,51 @@
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import fish.focus.uvms.plugins.iridium.mapper.JAXBContextRegistry;
+import fish.focus.uvms.plugins.iridium.siriusone.xml.Devices;
+import org.openjdk.jmh.annotations.*;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JAXB unmarshalling of SiriusOne XML attachments, one operation is one attachment.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DevicesUnmarshalBenchmark {
+
+    @Param({"1", "100"})
+    public int positions;
+
+    private byte[] xml;
+    private JAXBContext context;
+    private JAXBContextRegistry registry;
+
+    @Setup
+    public void setup() throws JAXBException {
+        xml = BenchmarkCorpus.xmlReport(1, positions, 42);
+        context = JAXBContext.newInstance(Devices.class);
+        registry = new JAXBContextRegistry();
+    }
+
+    @Benchmark
+    public Devices newContextPerAttachment() throws JAXBException {
+        return (Devices) JAXBContext.newInstance(Devices.class).createUnmarshaller().unmarshal(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public Devices sharedContext() throws JAXBException {
+        return (Devices) context.createUnmarshaller().unmarshal(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public Devices pooledRegistry() throws JAXBException {
+        return registry.unmarshal(new ByteArrayInputStream(xml), Devices.class);
+    }
+}
@@ -0,0 +1,61 @@
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import fish.focus.schema.exchange.movement.v1.SetReportMovementType;
+import fish.focus.schema.exchange.plugin.types.v1.PluginType;
+import fish.focus.uvms.exchange.model.mapper.ExchangeModuleRequestMapper;
+import fish.focus.uvms.plugins.iridium.mapper.MovementMapper;
+import fish.focus.uvms.plugins.iridium.siriusone.xml.SiriusOneXmlReader;
+import org.openjdk.jmh.annotations.*;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping of decoded reports to the Exchange model and serialization of the resulting movement report request, one
+ * operation is one report.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MovementMappingBenchmark {
+
+    private static final String PLUGIN_NAME = "fish.focus.uvms.plugins.iridium.siriusone";
+
+    private SiriusOneReportBatch batch;
+    private SiriusOneXmlReader xmlReader;
+    private SetReportMovementType report;
+    private int index;
+
+    @Setup
+    public void setup() throws XMLStreamException {
+        byte[] attachment = BenchmarkCorpus.binaryReports(256, 42);
+        batch = new SiriusOneReportBatch(256);
+        batch.decode(attachment, 0, attachment.length);
+
+        xmlReader = new SiriusOneXmlReader(new ByteArrayInputStream(BenchmarkCorpus.xmlReport(1, 1, 42)));
+        xmlReader.next();
+
+        report = MovementMapper.mapToSetReportMovementType(batch, 0, 12345678L, PLUGIN_NAME);
+    }
+
+    @Benchmark
+    public SetReportMovementType mapBinaryReport() {
+        index = (index + 1) % batch.size();
+        return MovementMapper.mapToSetReportMovementType(batch, index, 12345678L, PLUGIN_NAME);
+    }
+
+    @Benchmark
+    public SetReportMovementType mapXmlReport() {
+        return MovementMapper.mapToSetReportMovementType(xmlReader.getDeviceSerial(), xmlReader.getPosition(), PLUGIN_NAME);
+    }
+
+    @Benchmark
+    public String createSetMovementReportRequest() {
+        return ExchangeModuleRequestMapper.createSetMovementReportRequest(report, "SIRIUSONE", null, Instant.now(), PluginType.SATELLITE_RECEIVER, "SIRIUSONE", null);
+    }
+}
@@ -0,0 +1,91 @@
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import fish.focus.uvms.plugins.iridium.siriusone.xml.Position;
+import fish.focus.uvms.plugins.iridium.siriusone.xml.SiriusOneTimestamp;
+import fish.focus.uvms.plugins.iridium.siriusone.xml.SiriusOneXmlReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the position elements of a SiriusOne XML report, JAXB {@link Position} versus the cursor decoder, one
+ * operation is one document. Set {@code jmh.sample} to the path of a production export to run on it instead of
+ * the generated corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PositionDecodeBenchmark {
+
+    private static final String GENERATED = "generated";
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    @Param({"100"})
+    public int positions;
+
+    @Param({GENERATED})
+    public String sample;
+
+    private String timestamp = "2023-03-01 06:15:11";
+    private byte[] xml;
+    private Unmarshaller unmarshaller;
+
+    @Setup
+    public void setup() throws IOException, JAXBException {
+        xml = GENERATED.equals(sample) ? BenchmarkCorpus.xmlReport(1, positions, 42) : Files.readAllBytes(Paths.get(sample));
+        unmarshaller = JAXBContext.newInstance(Position.class).createUnmarshaller();
+    }
+
+    @Benchmark
+    public void jaxbPosition(Blackhole blackhole) throws XMLStreamException, JAXBException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(xml));
+        while (reader.hasNext()) {
+            if (reader.getEventType() == XMLStreamConstants.START_ELEMENT && "position".equals(reader.getLocalName())) {
+                Position position = unmarshaller.unmarshal(reader, Position.class).getValue();
+                blackhole.consume(position.getGps());
+                blackhole.consume(position.getLatitude());
+                blackhole.consume(position.getSpeed().getKnots());
+            } else {
+                reader.next();
+            }
+        }
+        reader.close();
+    }
+
+    @Benchmark
+    public void cursorDecoder(Blackhole blackhole) throws XMLStreamException {
+        try (SiriusOneXmlReader reader = new SiriusOneXmlReader(new ByteArrayInputStream(xml))) {
+            while (reader.next()) {
+                blackhole.consume(reader.getPosition().getGps());
+                blackhole.consume(reader.getPosition().getLatitude());
+                blackhole.consume(reader.getPosition().getKnots());
+            }
+        }
+    }
+
+    @Benchmark
+    public LocalDateTime timestampFormatter() {
+        return LocalDateTime.parse(timestamp, SiriusOneTimestamp.FORMAT);
+    }
+
+    @Benchmark
+    public long timestampFastPath() {
+        return SiriusOneTimestamp.parseEpochSecond(timestamp);
+    }
+}
@@ -0,0 +1,69 @@
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of binary attachments, one operation is one 10 byte report.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(SiriusOneDecodeBenchmark.FRAMES)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SiriusOneDecodeBenchmark {
+
+    static final int FRAMES = 1024;
+
+    private byte[] attachment;
+    private SiriusOneFrame frame;
+    private SiriusOneReportBatch batch;
+
+    @Setup
+    public void setup() {
+        attachment = BenchmarkCorpus.binaryReports(FRAMES, 42);
+        frame = new SiriusOneFrame();
+        batch = new SiriusOneReportBatch(256);
+    }
+
+    @Benchmark
+    public void stringDecoder(Blackhole blackhole) {
+        for (int offset = 0; offset < attachment.length; offset += SiriusOneFrame.FRAME_LENGTH) {
+            byte[] bytes = Arrays.copyOfRange(attachment, offset, offset + SiriusOneFrame.FRAME_LENGTH);
+            SiriusOneMessage message = new SiriusOneMessage(bytes, 12345678L, 1L);
+            blackhole.consume(message.getLatitude());
+            blackhole.consume(message.getLongitude());
+            blackhole.consume(message.getDateTime());
+        }
+    }
+
+    @Benchmark
+    public void frameView(Blackhole blackhole) {
+        for (int offset = 0; offset < attachment.length; offset += SiriusOneFrame.FRAME_LENGTH) {
+            frame.wrap(attachment, offset);
+            blackhole.consume(frame.getLatitude());
+            blackhole.consume(frame.getLongitude());
+            blackhole.consume(SiriusOneTime.toEpochMillis(frame.getTime()));
+        }
+    }
+
+    @Benchmark
+    public void streamedBatch(Blackhole blackhole) throws IOException {
+        SiriusOneFrameReader reader = new SiriusOneFrameReader(new ByteArrayInputStream(attachment));
+        while (reader.read(batch) > 0) {
+            for (int i = 0; i < batch.size(); i++) {
+                blackhole.consume(batch.getLatitude(i));
+                blackhole.consume(batch.getLongitude(i));
+                blackhole.consume(SiriusOneTime.toEpochMillis(batch.getTime(i)));
+            }
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package fish.focus.uvms.plugins.iridium.loadtest;
+
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import fish.focus.uvms.plugins.iridium.StartupBean;
+import fish.focus.uvms.plugins.iridium.producer.PluginMessageProducer;
+import fish.focus.uvms.plugins.iridium.service.ExchangeService;
+import fish.focus.uvms.plugins.iridium.siriusone.DownloadService;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.AttachmentJournal;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.MailboxConnectionManager;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.MailboxSettings;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.UidCheckpointStore;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.IngestPipeline;
+import org.apache.activemq.artemis.api.jms.ActiveMQJMSClient;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.apache.activemq.artemis.jms.client.ActiveMQConnectionFactory;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * End to end throughput of the ingest path: {@link DownloadService}, the {@link IngestPipeline} and
+ * {@link PluginMessageProducer}, wired by hand against an in-process GreenMail IMAP server and an embedded Artemis
+ * broker standing in for the Exchange queue.
+ * <p>
+ * Mails are delivered up front, or at a fixed rate while the plugin polls back to back. The latency of a report is
+ * measured from the delivery of its mail to its arrival on the queue. Configured with system properties:
+ * <ul>
+ * <li>{@code loadtest.mails}, default 2000</li>
+ * <li>{@code loadtest.reportsPerMail}, default 20</li>
+ * <li>{@code loadtest.rate}, mails delivered per second during the run, default 0 to deliver all before</li>
+ * <li>{@code loadtest.syncMode}, {@code UNSEEN} or {@code UID}, default {@code UNSEEN}</li>
+ * <li>{@code loadtest.batchSize}, reports sent to Exchange per transaction, default 1</li>
+ * <li>{@code loadtest.sendMode}, {@code SYNC} or {@code ASYNC}, default {@code SYNC}</li>
+ * <li>{@code loadtest.timeoutSeconds}, default 600</li>
+ * <li>{@code loadtest.minReportsPerSecond}, fail the run below this throughput, default 0</li>
+ * <li>{@code loadtest.result}, JSON result file, default {@code target/loadtest-result.json}</li>
+ * </ul>
+ */
+public class IngestLoadTest {
+
+    private static final String USER = "reports";
+    private static final String PASSWORD = "secret";
+    private static final String ADDRESS = "reports@localhost";
+    private static final Pattern SERIAL = Pattern.compile("value>(1\\d{7})<");
+
+    private final int mails = Integer.getInteger("loadtest.mails", 2000);
+    private final int reportsPerMail = Integer.getInteger("loadtest.reportsPerMail", 20);
+    private final int rate = Integer.getInteger("loadtest.rate", 0);
+    private final String syncMode = System.getProperty("loadtest.syncMode", "UNSEEN");
+    private final int batchSize = Integer.getInteger("loadtest.batchSize", 1);
+    private final String sendMode = System.getProperty("loadtest.sendMode", "SYNC");
+    private final long timeoutSeconds = Long.getLong("loadtest.timeoutSeconds", 600);
+    private final double minReportsPerSecond = Double.parseDouble(System.getProperty("loadtest.minReportsPerSecond", "0"));
+    private final Path resultFile = Paths.get(System.getProperty("loadtest.result", "target/loadtest-result.json"));
+
+    private final int reports = mails * reportsPerMail;
+    private final long[] deliveredAt = new long[mails];
+    private final long[] latencies = new long[reports];
+    private final AtomicInteger received = new AtomicInteger();
+    private final AtomicInteger traced = new AtomicInteger();
+    private final AtomicLong lastArrival = new AtomicLong();
+    private final AtomicLong maxHeapUsed = new AtomicLong();
+    private final CountDownLatch allReceived = new CountDownLatch(1);
+
+    public static void main(String[] args) throws Exception {
+        System.exit(new IngestLoadTest().run() ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        GreenMail imap = new GreenMail(ServerSetupTest.IMAP);
+        imap.start();
+        GreenMailUser user = imap.setUser(ADDRESS, USER, PASSWORD);
+
+        EmbeddedActiveMQ broker = new EmbeddedActiveMQ();
+        broker.setConfiguration(new ConfigurationImpl()
+                .setPersistenceEnabled(false)
+                .setSecurityEnabled(false)
+                .addAcceptorConfiguration("in-vm", "vm://0"));
+        broker.start();
+        ConnectionFactory connectionFactory = new ActiveMQConnectionFactory("vm://0");
+        Queue exchangeQueue = ActiveMQJMSClient.createQueue("UVMSExchangeEvent");
+
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        IngestPipeline pipeline = null;
+        try (Connection consumerConnection = connectionFactory.createConnection()) {
+            listen(consumerConnection, exchangeQueue);
+
+            StartupBean startupBean = startupBean(ServerSetupTest.IMAP.getPort());
+            pipeline = pipeline(startupBean, connectionFactory, exchangeQueue);
+            DownloadService downloadService = downloadService(startupBean, pipeline);
+
+            SyntheticMails synthetic = new SyntheticMails(ADDRESS, reportsPerMail);
+            if (rate == 0) {
+                for (int i = 0; i < mails; i++) {
+                    deliveredAt[i] = System.nanoTime();
+                    user.deliver(synthetic.mail(i));
+                }
+            }
+            System.out.printf(Locale.ROOT, "Ingesting %d mails with %d reports each%s%n", mails, reportsPerMail,
+                    rate > 0 ? " delivered at " + rate + " mails/s" : "");
+
+            sampler.scheduleAtFixedRate(this::sampleHeap, 0, 50, TimeUnit.MILLISECONDS);
+            long gcCount = gcCount();
+            long gcMillis = gcMillis();
+            long start = System.nanoTime();
+            Thread delivery = rate > 0 ? deliverAtRate(user, synthetic) : null;
+
+            long deadline = start + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+            while (allReceived.getCount() > 0 && System.nanoTime() < deadline) {
+                if (downloadService.download() == 0) {
+                    allReceived.await(100, TimeUnit.MILLISECONDS);
+                }
+            }
+            if (delivery != null) {
+                delivery.interrupt();
+            }
+            return report(start, gcCount() - gcCount, gcMillis() - gcMillis);
+        } finally {
+            sampler.shutdownNow();
+            if (pipeline != null) {
+                invoke(pipeline, "stop");
+            }
+            broker.stop();
+            imap.stop();
+        }
+    }
+
+    private void listen(Connection connection, Queue queue) throws JMSException {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = session.createConsumer(queue);
+        consumer.setMessageListener(message -> {
+            long now = System.nanoTime();
+            try {
+                Matcher serial = SERIAL.matcher(((TextMessage) message).getText());
+                int index;
+                if (serial.find() && (index = traced.getAndIncrement()) < latencies.length) {
+                    int mail = (int) (Long.parseLong(serial.group(1)) - SyntheticMails.FIRST_SERIAL);
+                    latencies[index] = now - deliveredAt[mail];
+                }
+            } catch (JMSException | RuntimeException e) {
+                e.printStackTrace();
+            }
+            lastArrival.set(now);
+            if (received.incrementAndGet() == reports) {
+                allReceived.countDown();
+            }
+        });
+        connection.start();
+    }
+
+    private Thread deliverAtRate(GreenMailUser user, SyntheticMails synthetic) {
+        Thread delivery = new Thread(() -> {
+            long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+            long next = System.nanoTime();
+            try {
+                for (int i = 0; i < mails; i++) {
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    next += interval;
+                    deliveredAt[i] = System.nanoTime();
+                    user.deliver(synthetic.mail(i));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, "loadtest-delivery");
+        delivery.start();
+        return delivery;
+    }
+
+    private boolean report(long start, long gcCount, long gcMillis) throws IOException {
+        int count = received.get();
+        long end = count > 0 ? lastArrival.get() : System.nanoTime();
+        double seconds = (end - start) / 1e9;
+        double throughput = count / seconds;
+        long[] sorted = Arrays.copyOf(latencies, Math.min(traced.get(), latencies.length));
+        Arrays.sort(sorted);
+
+        String result = String.format(Locale.ROOT, "{%n"
+                        + "  \"mails\": %d,%n  \"reportsPerMail\": %d,%n  \"rate\": %d,%n  \"syncMode\": \"%s\",%n"
+                        + "  \"batchSize\": %d,%n  \"sendMode\": \"%s\",%n"
+                        + "  \"reportsReceived\": %d,%n  \"seconds\": %.3f,%n  \"reportsPerSecond\": %.1f,%n"
+                        + "  \"latencyMillis\": {\"p50\": %.1f, \"p90\": %.1f, \"p99\": %.1f, \"max\": %.1f},%n"
+                        + "  \"maxHeapUsedMegabytes\": %.1f,%n  \"gcCount\": %d,%n  \"gcMillis\": %d%n}%n",
+                mails, reportsPerMail, rate, syncMode, batchSize, sendMode, count, seconds, throughput,
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), percentile(sorted, 1.0),
+                maxHeapUsed.get() / 1048576.0, gcCount, gcMillis);
+        System.out.print(result);
+        if (resultFile.getParent() != null) {
+            Files.createDirectories(resultFile.getParent());
+        }
+        Files.write(resultFile, result.getBytes(StandardCharsets.UTF_8));
+
+        if (count < reports) {
+            System.out.printf("FAILED: received %d of %d reports within %d seconds%n", count, reports, timeoutSeconds);
+            return false;
+        }
+        if (throughput < minReportsPerSecond) {
+            System.out.printf(Locale.ROOT, "FAILED: %.1f reports/s is below the minimum of %.1f%n", throughput, minReportsPerSecond);
+            return false;
+        }
+        return true;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private void sampleHeap() {
+        long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        maxHeapUsed.accumulateAndGet(used, Math::max);
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+
+    private StartupBean startupBean(int imapPort) {
+        StartupBean startupBean = new StartupBean();
+        setting(startupBean, MailboxSettings.HOST, "127.0.0.1");
+        setting(startupBean, MailboxSettings.PORT, Integer.toString(imapPort));
+        setting(startupBean, MailboxSettings.USERNAME, USER);
+        setting(startupBean, MailboxSettings.PASSWORD, PASSWORD);
+        setting(startupBean, DownloadService.SYNC_MODE, syncMode);
+        setting(startupBean, IngestPipeline.BATCH_SIZE, Integer.toString(batchSize));
+        setting(startupBean, IngestPipeline.SEND_MODE, sendMode);
+        return startupBean;
+    }
+
+    private static void setting(StartupBean startupBean, String key, String value) {
+        startupBean.getSettings().put(startupBean.getRegisterClassName() + "." + startupBean.getApplicationName() + "." + key, value);
+    }
+
+    private static IngestPipeline pipeline(StartupBean startupBean, ConnectionFactory connectionFactory, Queue exchangeQueue) throws ReflectiveOperationException {
+        PluginMessageProducer producer = new PluginMessageProducer();
+        inject(producer, "connectionFactory", connectionFactory);
+        inject(producer, "exchangeQueue", exchangeQueue);
+
+        ExchangeService exchange = new ExchangeService();
+        inject(exchange, "startupBean", startupBean);
+        inject(exchange, "producer", producer);
+
+        IngestPipeline pipeline = new IngestPipeline();
+        inject(pipeline, "startupBean", startupBean);
+        inject(pipeline, "exchange", exchange);
+        Method start = IngestPipeline.class.getDeclaredMethod("start", ThreadFactory.class);
+        start.setAccessible(true);
+        start.invoke(pipeline, Executors.defaultThreadFactory());
+        return pipeline;
+    }
+
+    private static DownloadService downloadService(StartupBean startupBean, IngestPipeline pipeline) throws ReflectiveOperationException, IOException {
+        UidCheckpointStore checkpoints = new UidCheckpointStore();
+        Path directory = Files.createTempDirectory("loadtest-checkpoints");
+        inject(checkpoints, "directory", directory);
+        AttachmentJournal journal = new AttachmentJournal();
+        inject(journal, "directory", directory);
+
+        DownloadService downloadService = new DownloadService();
+        inject(downloadService, "startUp", startupBean);
+        inject(downloadService, "pipeline", pipeline);
+        inject(downloadService, "mailbox", new MailboxConnectionManager());
+        inject(downloadService, "checkpoints", checkpoints);
+        inject(downloadService, "journal", journal);
+        return downloadService;
+    }
+
+    /**
+     * Set a field the container would inject.
+     */
+    private static void inject(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private static void invoke(Object target, String name) throws ReflectiveOperationException {
+        Method method = target.getClass().getDeclaredMethod(name);
+        method.setAccessible(true);
+        method.invoke(target);
+    }
+}
@@ -0,0 +1,81 @@
+package fish.focus.uvms.plugins.iridium.loadtest;
+
+import fish.focus.uvms.plugins.iridium.siriusone.SiriusOneFrame;
+
+import javax.activation.DataHandler;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import javax.mail.util.ByteArrayDataSource;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+/**
+ * Mails as delivered by the SiriusOne land station: a short text body and one binary attachment named
+ * {@code <device serial>_<sequence>.sbd}. Every mail comes from its own device, so a report can be traced back to the
+ * mail it was delivered in by its serial number.
+ */
+public class SyntheticMails {
+
+    public static final long FIRST_SERIAL = 10_000_000;
+
+    private static final int START_MINUTES = (int) Duration.between(LocalDateTime.of(2015, 1, 1, 0, 1), LocalDateTime.of(2023, 3, 1, 6, 0)).toMinutes();
+    private static final double DEGREES_PER_UNIT = 0.000344;
+
+    private final Session session = Session.getInstance(new Properties());
+    private final String recipient;
+    private final int reportsPerMail;
+
+    public SyntheticMails(String recipient, int reportsPerMail) {
+        this.recipient = recipient;
+        this.reportsPerMail = reportsPerMail;
+    }
+
+    public MimeMessage mail(int index) throws MessagingException {
+        long serial = FIRST_SERIAL + index;
+
+        MimeBodyPart text = new MimeBodyPart();
+        text.setText("SiriusOne reports of device " + serial);
+
+        MimeBodyPart attachment = new MimeBodyPart();
+        attachment.setDataHandler(new DataHandler(new ByteArrayDataSource(frames(reportsPerMail, serial), "application/octet-stream")));
+        attachment.setFileName(serial + "_1.sbd");
+
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress("noreply@siriusone.example"));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress(recipient));
+        message.setSubject("SBD Msg From Unit: " + serial);
+        message.setSentDate(new Date());
+        message.setContent(new MimeMultipart(text, attachment));
+        message.saveChanges();
+        return message;
+    }
+
+    static byte[] frames(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        byte[] bytes = new byte[count * SiriusOneFrame.FRAME_LENGTH];
+        for (int i = 0; i < count; i++) {
+            double latitude = 55 + random.nextDouble() * 14;
+            double longitude = -4 + random.nextDouble() * 28;
+            long high = 1L << 62
+                    | (long) (START_MINUTES + i * 5) << 39
+                    | (longitude < 0 ? 1L : 0L) << 38
+                    | (long) (Math.abs(longitude) / DEGREES_PER_UNIT) << 19
+                    | (long) (latitude / DEGREES_PER_UNIT);
+            int offset = i * SiriusOneFrame.FRAME_LENGTH;
+            for (int b = 0; b < 8; b++) {
+                bytes[offset + b] = (byte) (high >>> (56 - 8 * b));
+            }
+            bytes[offset + 8] = (byte) random.nextInt(60);
+            bytes[offset + 9] = (byte) random.nextInt(240);
+        }
+        return bytes;
+    }
+}
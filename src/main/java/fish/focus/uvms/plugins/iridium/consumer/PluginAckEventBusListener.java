@@ -14,8 +14,8 @@ package fish.focus.uvms.plugins.iridium.consumer;
 import fish.focus.schema.exchange.registry.v1.ExchangeRegistryBaseRequest;
 import fish.focus.schema.exchange.registry.v1.RegisterServiceResponse;
 import fish.focus.schema.exchange.registry.v1.UnregisterServiceResponse;
-import fish.focus.uvms.exchange.model.mapper.JAXBMarshaller;
 import fish.focus.uvms.plugins.iridium.StartupBean;
+import fish.focus.uvms.plugins.iridium.mapper.JAXBContextRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +32,9 @@ public class PluginAckEventBusListener implements MessageListener {
     @Inject
     StartupBean startupService;
 
+    @Inject
+    JAXBContextRegistry jaxbRegistry;
+
     @Override
     public void onMessage(Message inMessage) {
 
@@ -48,7 +51,7 @@ public class PluginAckEventBusListener implements MessageListener {
             } else {
                 switch (request.getMethod()) {
                     case REGISTER_SERVICE:
-                        RegisterServiceResponse registerResponse = JAXBMarshaller.unmarshallTextMessage(textMessage, RegisterServiceResponse.class);
+                        RegisterServiceResponse registerResponse = jaxbRegistry.unmarshallTextMessage(textMessage, RegisterServiceResponse.class);
                         startupService.setWaitingForResponse(Boolean.FALSE);
                         switch (registerResponse.getAck().getType()) {
                             case OK:
@@ -64,7 +67,7 @@ public class PluginAckEventBusListener implements MessageListener {
                         }
                         break;
                     case UNREGISTER_SERVICE:
-                        UnregisterServiceResponse unregisterResponse = JAXBMarshaller.unmarshallTextMessage(textMessage, UnregisterServiceResponse.class);
+                        UnregisterServiceResponse unregisterResponse = jaxbRegistry.unmarshallTextMessage(textMessage, UnregisterServiceResponse.class);
                         switch (unregisterResponse.getAck().getType()) {
                             case OK:
                                 LOG.info("Unregister OK");
@@ -97,7 +100,7 @@ public class PluginAckEventBusListener implements MessageListener {
 
     private ExchangeRegistryBaseRequest tryConsumeRegistryBaseRequest(TextMessage textMessage) {
         try {
-            return JAXBMarshaller.unmarshallTextMessage(textMessage, ExchangeRegistryBaseRequest.class);
+            return jaxbRegistry.unmarshallTextMessage(textMessage, ExchangeRegistryBaseRequest.class);
         } catch (RuntimeException e) {
             return null;
         }
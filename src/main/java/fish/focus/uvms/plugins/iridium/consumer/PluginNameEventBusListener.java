@@ -15,8 +15,8 @@ import fish.focus.schema.exchange.common.v1.AcknowledgeType;
 import fish.focus.schema.exchange.common.v1.AcknowledgeTypeType;
 import fish.focus.schema.exchange.plugin.v1.*;
 import fish.focus.uvms.exchange.model.mapper.ExchangePluginResponseMapper;
-import fish.focus.uvms.exchange.model.mapper.JAXBMarshaller;
 import fish.focus.uvms.plugins.iridium.StartupBean;
+import fish.focus.uvms.plugins.iridium.mapper.JAXBContextRegistry;
 import fish.focus.uvms.plugins.iridium.producer.PluginMessageProducer;
 import fish.focus.uvms.plugins.iridium.service.PluginService;
 import org.slf4j.Logger;
@@ -41,6 +41,9 @@ public class PluginNameEventBusListener implements MessageListener {
     @Inject
     StartupBean startup;
 
+    @Inject
+    JAXBContextRegistry jaxbRegistry;
+
     @Override
     public void onMessage(Message inMessage) {
 
@@ -50,42 +53,42 @@ public class PluginNameEventBusListener implements MessageListener {
 
         try {
 
-            PluginBaseRequest request = JAXBMarshaller.unmarshallTextMessage(textMessage, PluginBaseRequest.class);
+            PluginBaseRequest request = jaxbRegistry.unmarshallTextMessage(textMessage, PluginBaseRequest.class);
             String responseMessage = null;
 
             switch (request.getMethod()) {
                 case SET_CONFIG:
-                    SetConfigRequest setConfigRequest = JAXBMarshaller.unmarshallTextMessage(textMessage, SetConfigRequest.class);
+                    SetConfigRequest setConfigRequest = jaxbRegistry.unmarshallTextMessage(textMessage, SetConfigRequest.class);
                     AcknowledgeTypeType setConfig = service.setConfig(setConfigRequest.getConfigurations());
                     AcknowledgeType setConfigAck = ExchangePluginResponseMapper.mapToAcknowledgeType(textMessage.getJMSMessageID(), setConfig);
                     responseMessage = ExchangePluginResponseMapper.mapToSetConfigResponse(startup.getRegisterClassName() + "." + startup.getApplicationName(), setConfigAck);
                     break;
                 case SET_COMMAND:
-                    SetCommandRequest setCommandRequest = JAXBMarshaller.unmarshallTextMessage(textMessage, SetCommandRequest.class);
+                    SetCommandRequest setCommandRequest = jaxbRegistry.unmarshallTextMessage(textMessage, SetCommandRequest.class);
                     AcknowledgeTypeType setCommand = service.setCommand(setCommandRequest.getCommand());
                     AcknowledgeType setCommandAck = ExchangePluginResponseMapper.mapToAcknowledgeType(textMessage.getJMSMessageID(), setCommand);
                     responseMessage = ExchangePluginResponseMapper.mapToSetCommandResponse(startup.getRegisterClassName() + "." + startup.getApplicationName(), setCommandAck);
                     break;
                 case SET_REPORT:
-                    SetReportRequest setReportRequest = JAXBMarshaller.unmarshallTextMessage(textMessage, SetReportRequest.class);
+                    SetReportRequest setReportRequest = jaxbRegistry.unmarshallTextMessage(textMessage, SetReportRequest.class);
                     AcknowledgeTypeType setReport = service.setReport(setReportRequest.getReport());
                     AcknowledgeType setReportAck = ExchangePluginResponseMapper.mapToAcknowledgeType(textMessage.getJMSMessageID(), setReport);
                     responseMessage = ExchangePluginResponseMapper.mapToSetReportResponse(startup.getRegisterClassName() + "." + startup.getApplicationName(), setReportAck);
                     break;
                 case START:
-                    StartRequest startRequest = JAXBMarshaller.unmarshallTextMessage(textMessage, StartRequest.class);
+                    StartRequest startRequest = jaxbRegistry.unmarshallTextMessage(textMessage, StartRequest.class);
                     AcknowledgeTypeType start = service.start();
                     AcknowledgeType startAck = ExchangePluginResponseMapper.mapToAcknowledgeType(textMessage.getJMSMessageID(), start);
                     responseMessage = ExchangePluginResponseMapper.mapToStartResponse(startup.getRegisterClassName() + "." + startup.getApplicationName(), startAck);
                     break;
                 case STOP:
-                    StopRequest stopRequest = JAXBMarshaller.unmarshallTextMessage(textMessage, StopRequest.class);
+                    StopRequest stopRequest = jaxbRegistry.unmarshallTextMessage(textMessage, StopRequest.class);
                     AcknowledgeTypeType stop = service.stop();
                     AcknowledgeType stopAck = ExchangePluginResponseMapper.mapToAcknowledgeType(textMessage.getJMSMessageID(), stop);
                     responseMessage = ExchangePluginResponseMapper.mapToStopResponse(startup.getRegisterClassName() + "." + startup.getApplicationName(), stopAck);
                     break;
                 case PING:
-                    PingRequest pingRequest = JAXBMarshaller.unmarshallTextMessage(textMessage, PingRequest.class);
+                    PingRequest pingRequest = jaxbRegistry.unmarshallTextMessage(textMessage, PingRequest.class);
                     responseMessage = ExchangePluginResponseMapper.mapToPingResponse(startup.isIsEnabled(), startup.isIsEnabled());
                     break;
                 default:
@@ -0,0 +1,148 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.mapper;
+
+import fish.focus.schema.exchange.plugin.v1.*;
+import fish.focus.schema.exchange.registry.v1.ExchangeRegistryBaseRequest;
+import fish.focus.schema.exchange.registry.v1.RegisterServiceResponse;
+import fish.focus.schema.exchange.registry.v1.UnregisterServiceResponse;
+import fish.focus.uvms.plugins.iridium.siriusone.xml.Devices;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.jms.JMSException;
+import javax.jms.TextMessage;
+import javax.xml.bind.*;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Application wide JAXB contexts with pooled unmarshallers and marshallers.
+ * <p>
+ * Building a JAXBContext is expensive, so the contexts for the SiriusOne XML reports and the Exchange messages
+ * consumed by the plugin are built once at startup. Unmarshallers and marshallers are not thread safe, they are
+ * borrowed from a per context pool for the duration of one call.
+ */
+@Startup
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class JAXBContextRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JAXBContextRegistry.class);
+
+    private static final List<Class<?>> PRELOADED_TYPES = Arrays.asList(
+            Devices.class,
+            PluginBaseRequest.class,
+            SetConfigRequest.class,
+            SetCommandRequest.class,
+            SetReportRequest.class,
+            StartRequest.class,
+            StopRequest.class,
+            PingRequest.class,
+            ExchangeRegistryBaseRequest.class,
+            RegisterServiceResponse.class,
+            UnregisterServiceResponse.class);
+
+    private final ConcurrentHashMap<Class<?>, PooledContext> contexts = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (Class<?> type : PRELOADED_TYPES) {
+            context(type);
+        }
+        LOG.info("JAXB contexts created for {} types", contexts.size());
+    }
+
+    public <T> T unmarshal(InputStream in, Class<T> type) throws JAXBException {
+        return unmarshal(new StreamSource(in), type);
+    }
+
+    public <T> T unmarshal(Source source, Class<T> type) throws JAXBException {
+        PooledContext context = context(type);
+        Unmarshaller unmarshaller = context.borrowUnmarshaller();
+        try {
+            Object result = unmarshaller.unmarshal(source);
+            return type.cast(JAXBIntrospector.getValue(result));
+        } finally {
+            context.unmarshallers.offer(unmarshaller);
+        }
+    }
+
+    /**
+     * Drop in replacement for {@code JAXBMarshaller.unmarshallTextMessage} using the pooled contexts.
+     */
+    public <T> T unmarshallTextMessage(TextMessage textMessage, Class<T> type) {
+        try {
+            return unmarshal(new StreamSource(new StringReader(textMessage.getText())), type);
+        } catch (JAXBException | JMSException | ClassCastException e) {
+            throw new IllegalArgumentException("Could not unmarshal message to " + type.getSimpleName(), e);
+        }
+    }
+
+    public String marshal(Object data) throws JAXBException {
+        PooledContext context = context(data.getClass());
+        Marshaller marshaller = context.borrowMarshaller();
+        try {
+            StringWriter writer = new StringWriter();
+            marshaller.marshal(data, writer);
+            return writer.toString();
+        } finally {
+            context.marshallers.offer(marshaller);
+        }
+    }
+
+    private PooledContext context(Class<?> type) {
+        PooledContext context = contexts.get(type);
+        if (context != null) {
+            return context;
+        }
+        return contexts.computeIfAbsent(type, PooledContext::new);
+    }
+
+    private static class PooledContext {
+
+        private final JAXBContext context;
+        private final Queue<Unmarshaller> unmarshallers = new ConcurrentLinkedQueue<>();
+        private final Queue<Marshaller> marshallers = new ConcurrentLinkedQueue<>();
+
+        PooledContext(Class<?> type) {
+            try {
+                context = JAXBContext.newInstance(type);
+            } catch (JAXBException e) {
+                throw new IllegalStateException("Could not create JAXBContext for " + type.getName(), e);
+            }
+        }
+
+        Unmarshaller borrowUnmarshaller() throws JAXBException {
+            Unmarshaller unmarshaller = unmarshallers.poll();
+            return unmarshaller != null ? unmarshaller : context.createUnmarshaller();
+        }
+
+        Marshaller borrowMarshaller() throws JAXBException {
+            Marshaller marshaller = marshallers.poll();
+            return marshaller != null ? marshaller : context.createMarshaller();
+        }
+    }
+}
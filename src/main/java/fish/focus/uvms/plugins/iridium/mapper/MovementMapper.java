@@ -0,0 +1,132 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.mapper;
+
+import fish.focus.schema.exchange.movement.mobileterminal.v1.IdList;
+import fish.focus.schema.exchange.movement.mobileterminal.v1.IdType;
+import fish.focus.schema.exchange.movement.mobileterminal.v1.MobileTerminalId;
+import fish.focus.schema.exchange.movement.v1.*;
+import fish.focus.schema.exchange.plugin.types.v1.PluginType;
+import fish.focus.uvms.plugins.iridium.siriusone.SiriusOneReportBatch;
+import fish.focus.uvms.plugins.iridium.siriusone.SiriusOneTime;
+import fish.focus.uvms.plugins.iridium.siriusone.xml.PositionRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+
+/**
+ * Mapping of decoded SiriusOne reports to the movement reports sent to Exchange.
+ */
+public class MovementMapper {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MovementMapper.class);
+
+    private MovementMapper() {
+    }
+
+    public static SetReportMovementType mapToSetReportMovementType(SiriusOneReportBatch batch, int index, long serialNumber, String pluginName) {
+        MovementBaseType movement = new MovementBaseType();
+        movement.setComChannelType(MovementComChannelType.MOBILE_TERMINAL);
+        MobileTerminalId mobTermId = new MobileTerminalId();
+
+        IdList deviceId = new IdList();
+        deviceId.setType(IdType.SERIAL_NUMBER);
+        deviceId.setValue("" + serialNumber);
+
+        mobTermId.getMobileTerminalIdList().add(deviceId);
+
+        movement.setMobileTerminalId(mobTermId);
+
+        movement.setMovementType(MovementTypeType.POS);
+
+        MovementPoint mp = new MovementPoint();
+        mp.setAltitude(0.0);
+        mp.setLatitude(batch.getLatitude(index));
+        mp.setLongitude(batch.getLongitude(index));
+        movement.setPosition(mp);
+
+        movement.setPositionTime(SiriusOneTime.toDate(batch.getTime(index)));
+
+        movement.setReportedCourse(batch.getCourse(index));
+
+        movement.setReportedSpeed(batch.getSpeed(index));
+
+        movement.setSource(MovementSourceType.IRIDIUM);
+
+        movement.setStatus("11");
+
+        SetReportMovementType reportType = new SetReportMovementType();
+        reportType.setMovement(movement);
+
+        reportType.setPluginName(pluginName);
+
+        reportType.setTimestamp(new Date());
+
+        reportType.setPluginType(PluginType.SATELLITE_RECEIVER);
+
+        LOG.debug("LONGITUDE GET {}", batch.getLongitude(index));
+        LOG.debug("LATITUDE GET {}", batch.getLatitude(index));
+
+        return reportType;
+    }
+
+    public static SetReportMovementType mapToSetReportMovementType(String serial, PositionRecord position, String pluginName) {
+        MovementBaseType movement = new MovementBaseType();
+
+        movement.setComChannelType(MovementComChannelType.MOBILE_TERMINAL);
+
+        MobileTerminalId mobTermId = new MobileTerminalId();
+        IdList deviceId = new IdList();
+        deviceId.setType(IdType.SERIAL_NUMBER);
+        deviceId.setValue(serial);
+        mobTermId.getMobileTerminalIdList().add(deviceId);
+        movement.setMobileTerminalId(mobTermId);
+
+        movement.setMovementType(MovementTypeType.POS);
+
+        MovementPoint mp = new MovementPoint();
+        mp.setAltitude(valueOf(position.getAltitude()));
+        mp.setLatitude(valueOf(position.getLatitude()));
+        mp.setLongitude(valueOf(position.getLongitude()));
+        movement.setPosition(mp);
+
+        movement.setPositionTime(toDate(position.getGps()));
+
+        movement.setReportedCourse(valueOf(position.getCourse()));
+
+        movement.setReportedSpeed(valueOf(position.getKnots()));
+
+        movement.setSource(MovementSourceType.IRIDIUM);
+
+        movement.setLesReportTime(toDate(position.getTimestamp()));
+
+        SetReportMovementType reportType = new SetReportMovementType();
+        reportType.setMovement(movement);
+
+        reportType.setPluginName(pluginName);
+
+        reportType.setTimestamp(new Date());
+
+        reportType.setPluginType(PluginType.SATELLITE_RECEIVER);
+
+        return reportType;
+    }
+
+    private static Double valueOf(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+
+    private static Date toDate(long epochSecond) {
+        return epochSecond == PositionRecord.NO_TIME ? null : new Date(epochSecond * 1000);
+    }
+}
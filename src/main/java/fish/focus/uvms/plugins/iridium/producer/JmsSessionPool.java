@@ -0,0 +1,288 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.producer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.CompletionListener;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sessions with an anonymous producer on one shared connection, kept open between sends instead of a connection,
+ * session and producer per message.
+ * <p>
+ * A session is used by one thread at a time: a send borrows an idle session, or opens a new one while fewer than
+ * the maximum are open, and waits otherwise. The connection is thread safe and shared. When a send fails the
+ * connection and every session opened on it are dropped and the send is tried once more on a new connection, the
+ * exception listener of the connection does the same as soon as the provider notices a broken connection.
+ * <p>
+ * With transacted sessions all messages of a send are committed together, a failed send rolls them all back before
+ * it is tried again. An asynchronous send returns the session as soon as the message is handed to the provider, the
+ * broker acknowledgement arrives later on the {@link CompletionListener}.
+ */
+public class JmsSessionPool implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JmsSessionPool.class);
+
+    static final long BORROW_TIMEOUT_MILLIS = 30_000;
+
+    private final ConnectionSupplier connections;
+    private final int maxSessions;
+    private final boolean transacted;
+    private final Semaphore permits;
+    private final BlockingDeque<PooledSession> idle = new LinkedBlockingDeque<>();
+
+    private Connection connection;
+    private long generation;
+    private boolean closed;
+
+    public JmsSessionPool(ConnectionSupplier connections, int maxSessions) {
+        this(connections, maxSessions, false);
+    }
+
+    public JmsSessionPool(ConnectionSupplier connections, int maxSessions, boolean transacted) {
+        this.connections = connections;
+        this.maxSessions = maxSessions;
+        this.transacted = transacted;
+        this.permits = new Semaphore(maxSessions, true);
+    }
+
+    /**
+     * Send a persistent message created on a pooled session.
+     *
+     * @return the JMS message id
+     * @throws JMSException when the send fails on a new connection as well, or no session became free in time
+     */
+    public String send(Destination destination, MessageFactory factory) throws JMSException {
+        return send(destination, List.of(factory)).get(0);
+    }
+
+    /**
+     * Send persistent messages on one pooled session, in one transaction when the sessions are transacted.
+     *
+     * @return the JMS message ids, in the order of the factories
+     * @throws JMSException when the send fails on a new connection as well, or no session became free in time
+     */
+    public List<String> send(Destination destination, List<? extends MessageFactory> factories) throws JMSException {
+        return withRetry(destination, () -> sendOnce(destination, factories, null));
+    }
+
+    /**
+     * Send a persistent message created on a pooled session without waiting for the broker. Only a failure to hand
+     * the message to the provider is thrown and retried, a failure reported by the broker goes to the listener.
+     */
+    public void send(Destination destination, MessageFactory factory, CompletionListener listener) throws JMSException {
+        withRetry(destination, () -> sendOnce(destination, List.of(factory), listener));
+    }
+
+    private <T> T withRetry(Destination destination, Attempt<T> attempt) throws JMSException {
+        try {
+            return attempt.run();
+        } catch (JMSException e) {
+            if (isClosed()) {
+                throw e;
+            }
+            LOG.warn("Send to {} failed, retrying on a new connection: {}", destination, e.getMessage());
+            return attempt.run();
+        }
+    }
+
+    /**
+     * Close the connection and all sessions, the pool cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            reset(generation);
+        }
+        PooledSession session;
+        while ((session = idle.pollFirst()) != null) {
+            session.close();
+        }
+    }
+
+    /**
+     * @return the JMS message ids, none for an asynchronous send as its messages belong to the provider until completed
+     */
+    private List<String> sendOnce(Destination destination, List<? extends MessageFactory> factories, CompletionListener listener) throws JMSException {
+        acquire();
+        PooledSession session = null;
+        boolean broken = true;
+        try {
+            session = borrow();
+            List<String> messageIds = new ArrayList<>(factories.size());
+            for (MessageFactory factory : factories) {
+                Message message = factory.create(session.session);
+                if (listener == null) {
+                    session.producer.send(destination, message, DeliveryMode.PERSISTENT, Message.DEFAULT_PRIORITY, Message.DEFAULT_TIME_TO_LIVE);
+                    messageIds.add(message.getJMSMessageID());
+                } else {
+                    session.producer.send(destination, message, DeliveryMode.PERSISTENT, Message.DEFAULT_PRIORITY, Message.DEFAULT_TIME_TO_LIVE, listener);
+                }
+            }
+            if (transacted) {
+                session.session.commit();
+            }
+            broken = false;
+            return messageIds;
+        } catch (JMSException | RuntimeException e) {
+            if (session != null) {
+                reset(session.generation);
+            }
+            throw e;
+        } finally {
+            if (session != null) {
+                release(session, broken);
+            }
+            permits.release();
+        }
+    }
+
+    private void acquire() throws JMSException {
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                throw new JMSException("No JMS session became free within " + BORROW_TIMEOUT_MILLIS + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMSException("Interrupted while waiting for a JMS session");
+        }
+    }
+
+    private PooledSession borrow() throws JMSException {
+        PooledSession session;
+        while ((session = idle.pollFirst()) != null) {
+            if (isCurrent(session)) {
+                return session;
+            }
+            session.close();
+        }
+        return open();
+    }
+
+    private void release(PooledSession session, boolean broken) {
+        if (broken || !isCurrent(session)) {
+            session.close();
+        } else {
+            // most recently used first, so sessions beyond the steady load stay idle
+            idle.offerFirst(session);
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private synchronized boolean isCurrent(PooledSession session) {
+        return !closed && session.generation == generation;
+    }
+
+    private synchronized PooledSession open() throws JMSException {
+        if (closed) {
+            throw new JMSException("JMS session pool is closed");
+        }
+        if (connection == null) {
+            connection = connect();
+        }
+        Session session = connection.createSession(transacted, transacted ? Session.SESSION_TRANSACTED : Session.AUTO_ACKNOWLEDGE);
+        try {
+            return new PooledSession(session, session.createProducer(null), generation);
+        } catch (JMSException | RuntimeException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    private Connection connect() throws JMSException {
+        Connection created = connections.create();
+        long current = generation;
+        try {
+            created.setExceptionListener(e -> {
+                LOG.warn("JMS connection failed: {}", e.getMessage());
+                reset(current);
+            });
+        } catch (JMSException | IllegalStateException e) {
+            // not allowed in some containers, failed sends still reconnect
+            LOG.debug("Could not set JMS exception listener", e);
+        }
+        LOG.info("Opened JMS connection for up to {} {}producer sessions", maxSessions, transacted ? "transacted " : "");
+        return created;
+    }
+
+    /**
+     * Drop the connection of the given generation, sessions opened on it are closed instead of reused.
+     */
+    private synchronized void reset(long failedGeneration) {
+        if (failedGeneration != generation) {
+            return;
+        }
+        generation++;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (JMSException | RuntimeException e) {
+                LOG.debug("Could not close JMS connection", e);
+            }
+            connection = null;
+        }
+    }
+
+    private static class PooledSession {
+
+        private final Session session;
+        private final MessageProducer producer;
+        private final long generation;
+
+        private PooledSession(Session session, MessageProducer producer, long generation) {
+            this.session = session;
+            this.producer = producer;
+            this.generation = generation;
+        }
+
+        private void close() {
+            try {
+                session.close();
+            } catch (JMSException | RuntimeException e) {
+                LOG.debug("Could not close JMS session", e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Attempt<T> {
+        T run() throws JMSException;
+    }
+
+    @FunctionalInterface
+    public interface ConnectionSupplier {
+        Connection create() throws JMSException;
+    }
+
+    @FunctionalInterface
+    public interface MessageFactory {
+        Message create(Session session) throws JMSException;
+    }
+}
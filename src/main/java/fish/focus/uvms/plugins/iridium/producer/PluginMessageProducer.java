@@ -16,15 +16,28 @@ import fish.focus.uvms.exchange.model.constant.ExchangeModelConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import javax.enterprise.context.ApplicationScoped;
 import javax.jms.*;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Sends to Exchange and the plugin event bus over pooled sessions, see {@link JmsSessionPool}. Safe to use from the
+ * pipeline workers and the message driven beans at the same time. Batches of messages to Exchange go over a second
+ * pool of transacted sessions and are committed at once.
+ */
 @ApplicationScoped
 public class PluginMessageProducer {
 
     private static final Logger LOG = LoggerFactory.getLogger(PluginMessageProducer.class);
 
+    /**
+     * Enough for every pipeline worker and event bus listener to send at once.
+     */
+    static final int MAX_SESSIONS = 16;
+
     @Resource(mappedName = "java:/" + ExchangeModelConstants.EXCHANGE_MESSAGE_IN_QUEUE)
     private Queue exchangeQueue;
 
@@ -35,55 +48,88 @@ public class PluginMessageProducer {
     @Resource(mappedName = "java:/ConnectionFactory")
     private ConnectionFactory connectionFactory;
 
+    private final JmsSessionPool sessions = new JmsSessionPool(() -> connectionFactory.createConnection(), MAX_SESSIONS);
+    private final JmsSessionPool transactedSessions = new JmsSessionPool(() -> connectionFactory.createConnection(), MAX_SESSIONS, true);
+
+    @PreDestroy
+    public void shutdown() {
+        sessions.close();
+        transactedSessions.close();
+    }
+
     public void sendResponseMessage(String text, TextMessage requestMessage) throws JMSException {
-        try (Connection connection = connectionFactory.createConnection();
-             Session session = connection.createSession(false, 1);
-             MessageProducer producer = session.createProducer(requestMessage.getJMSReplyTo());
-        ) {
-            TextMessage message = session.createTextMessage();
-            message.setJMSDestination(requestMessage.getJMSReplyTo());
-            message.setJMSCorrelationID(requestMessage.getJMSMessageID());
-            message.setText(text);
-
-            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
-            producer.send(message);
-        }
+        Destination replyTo = requestMessage.getJMSReplyTo();
+        String correlationId = requestMessage.getJMSMessageID();
+        sessions.send(replyTo, session -> {
+            TextMessage message = session.createTextMessage(text);
+            message.setJMSCorrelationID(correlationId);
+            return message;
+        });
     }
 
     public String sendMessageToExchange(String text, String function) throws JMSException {
-        try (Connection connection = connectionFactory.createConnection();
-             Session session = connection.createSession(false, 1);
-             MessageProducer producer = session.createProducer(exchangeQueue);
-        ) {
-
-            TextMessage message = session.createTextMessage();
-            message.setText(text);
-            message.setStringProperty(MessageConstants.JMS_FUNCTION_PROPERTY, function);
-
-            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
-            producer.send(message);
-
-            LOG.debug("SendMessage-queue:{}, message:{}", message);
-            return message.getJMSMessageID();
+        try {
+            String messageId = sessions.send(exchangeQueue, session -> {
+                TextMessage message = session.createTextMessage(text);
+                message.setStringProperty(MessageConstants.JMS_FUNCTION_PROPERTY, function);
+                return message;
+            });
+            LOG.debug("SendMessage-queue:{}, message:{}", exchangeQueue, messageId);
+            return messageId;
+        } catch (JMSException e) {
+            LOG.error("[ Error when sending data source message. {}] {}", text, e.getMessage());
+            throw new JMSException(e.getMessage());
+        }
+    }
 
+    /**
+     * Send a message to Exchange without waiting for the broker to acknowledge it, the listener is called once it has.
+     */
+    public void sendMessageToExchange(String text, String function, CompletionListener listener) throws JMSException {
+        try {
+            sessions.send(exchangeQueue, session -> {
+                TextMessage message = session.createTextMessage(text);
+                message.setStringProperty(MessageConstants.JMS_FUNCTION_PROPERTY, function);
+                return message;
+            }, listener);
         } catch (JMSException e) {
             LOG.error("[ Error when sending data source message. {}] {}", text, e.getMessage());
             throw new JMSException(e.getMessage());
         }
     }
 
+    /**
+     * Send messages with the same function to Exchange in one transaction, either all of them are sent or none.
+     *
+     * @return the JMS message ids, in the order of the texts
+     */
+    public List<String> sendMessagesToExchange(List<String> texts, String function) throws JMSException {
+        List<JmsSessionPool.MessageFactory> messages = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            messages.add(session -> {
+                TextMessage message = session.createTextMessage(text);
+                message.setStringProperty(MessageConstants.JMS_FUNCTION_PROPERTY, function);
+                return message;
+            });
+        }
+        try {
+            List<String> messageIds = transactedSessions.send(exchangeQueue, messages);
+            LOG.debug("SendMessages-queue:{}, messages:{}", exchangeQueue, messageIds.size());
+            return messageIds;
+        } catch (JMSException e) {
+            LOG.error("[ Error when sending {} data source messages.] {}", texts.size(), e.getMessage());
+            throw new JMSException(e.getMessage());
+        }
+    }
+
     public String sendEventBusMessage(String text, String serviceName, String function) throws JMSException {
-        try (Connection connection = connectionFactory.createConnection();
-             Session session = connection.createSession(false, 1);
-             MessageProducer producer = session.createProducer(eventBus);
-        ) {
-            TextMessage message = session.createTextMessage();
-            message.setText(text);
-            message.setStringProperty(ExchangeModelConstants.SERVICE_NAME, serviceName);
-            message.setStringProperty(MessageConstants.JMS_FUNCTION_PROPERTY, function);
-            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
-            producer.send(message);
-            return message.getJMSMessageID();
+        try {
+            return sessions.send(eventBus, session -> {
+                TextMessage message = session.createTextMessage(text);
+                message.setStringProperty(ExchangeModelConstants.SERVICE_NAME, serviceName);
+                message.setStringProperty(MessageConstants.JMS_FUNCTION_PROPERTY, function);
+                return message;
+            });
         } catch (JMSException e) {
             LOG.error(e.toString(), e);
             throw e;
@@ -18,12 +18,18 @@ import fish.focus.uvms.exchange.model.mapper.ExchangeModuleRequestMapper;
 import fish.focus.uvms.plugins.iridium.StartupBean;
 import fish.focus.uvms.plugins.iridium.producer.PluginMessageProducer;
 
-import javax.enterprise.context.RequestScoped;
+import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import javax.jms.CompletionListener;
 import javax.jms.JMSException;
 import java.time.Instant;
+import java.util.List;
 
-@RequestScoped
+/**
+ * Movement reports to Exchange. Marshalling and sending are separate steps so that the ingest pipeline can run them
+ * on different threads, this bean is called concurrently and keeps no state.
+ */
+@ApplicationScoped
 public class ExchangeService {
 
     @Inject
@@ -33,7 +39,28 @@ public class ExchangeService {
     PluginMessageProducer producer;
 
     public void sendMovementReportToExchange(SetReportMovementType reportType) throws JMSException {
-        String text = ExchangeModuleRequestMapper.createSetMovementReportRequest(reportType, "SIRIUSONE", null, Instant.now(), PluginType.SATELLITE_RECEIVER, "SIRIUSONE", null);
-        producer.sendMessageToExchange(text, ExchangeModuleMethod.SET_MOVEMENT_REPORT.value());
+        sendMovementReportRequest(createMovementReportRequest(reportType));
+    }
+
+    public String createMovementReportRequest(SetReportMovementType reportType) {
+        return ExchangeModuleRequestMapper.createSetMovementReportRequest(reportType, "SIRIUSONE", null, Instant.now(), PluginType.SATELLITE_RECEIVER, "SIRIUSONE", null);
+    }
+
+    public void sendMovementReportRequest(String request) throws JMSException {
+        producer.sendMessageToExchange(request, ExchangeModuleMethod.SET_MOVEMENT_REPORT.value());
+    }
+
+    /**
+     * Send a marshalled request without waiting for the broker, the outcome is reported to the listener.
+     */
+    public void sendMovementReportRequest(String request, CompletionListener listener) throws JMSException {
+        producer.sendMessageToExchange(request, ExchangeModuleMethod.SET_MOVEMENT_REPORT.value(), listener);
+    }
+
+    /**
+     * Send marshalled requests in one transaction, either all of them reach the Exchange queue or none.
+     */
+    public void sendMovementReportRequests(List<String> requests) throws JMSException {
+        producer.sendMessagesToExchange(requests, ExchangeModuleMethod.SET_MOVEMENT_REPORT.value());
     }
 }
\ No newline at end of file
@@ -18,11 +18,14 @@ import fish.focus.schema.exchange.plugin.types.v1.EmailType;
 import fish.focus.schema.exchange.plugin.types.v1.PollType;
 import fish.focus.schema.exchange.service.v1.SettingListType;
 import fish.focus.uvms.plugins.iridium.StartupBean;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.MailboxConnectionManager;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.MailboxSettings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
+import java.util.Objects;
 
 @RequestScoped
 public class PluginService {
@@ -32,6 +35,9 @@ public class PluginService {
     @Inject
     StartupBean startupBean;
 
+    @Inject
+    MailboxConnectionManager mailbox;
+
     /**
      * TODO implement
      *
@@ -81,9 +87,14 @@ public class PluginService {
     public AcknowledgeTypeType setConfig(SettingListType settings) {
         LOG.info("{}.setConfig()", startupBean.getRegisterClassName());
         try {
+            boolean mailboxChanged = false;
             for (KeyValueType values : settings.getSetting()) {
                 LOG.debug("Setting [ {} : {}]", values.getKey(), values.getValue());
-                startupBean.getSettings().put(values.getKey(), values.getValue());
+                String previous = startupBean.getSettings().put(values.getKey(), values.getValue());
+                mailboxChanged |= MailboxSettings.isMailboxSetting(values.getKey()) && !Objects.equals(previous, values.getValue());
+            }
+            if (mailboxChanged) {
+                mailbox.invalidate();
             }
             return AcknowledgeTypeType.OK;
         } catch (Exception e) {
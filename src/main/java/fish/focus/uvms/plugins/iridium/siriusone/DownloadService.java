@@ -11,93 +11,284 @@ copy of the GNU General Public License along with the IFDM Suite. If not, see <h
  */
 package fish.focus.uvms.plugins.iridium.siriusone;
 
-import fish.focus.schema.exchange.movement.mobileterminal.v1.IdList;
-import fish.focus.schema.exchange.movement.mobileterminal.v1.IdType;
-import fish.focus.schema.exchange.movement.mobileterminal.v1.MobileTerminalId;
-import fish.focus.schema.exchange.movement.v1.*;
-import fish.focus.schema.exchange.plugin.types.v1.PluginType;
 import fish.focus.uvms.plugins.iridium.StartupBean;
-import fish.focus.uvms.plugins.iridium.service.ExchangeService;
-import fish.focus.uvms.plugins.iridium.siriusone.xml.Device;
-import fish.focus.uvms.plugins.iridium.siriusone.xml.Devices;
-import fish.focus.uvms.plugins.iridium.siriusone.xml.Position;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.AttachmentJournal;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.MailProgress;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.MailboxConnectionManager;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.MailboxSettings;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.ProcessedMails;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.UidCheckpoint;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.UidCheckpointStore;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.IngestPipeline;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.MailTicket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
-import javax.jms.JMSException;
 import javax.mail.*;
 import javax.mail.Flags.Flag;
 import javax.mail.search.FlagTerm;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
 import java.io.IOException;
-import java.io.InputStream;
-import java.time.ZoneOffset;
-import java.util.Date;
-import java.util.Properties;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 @RequestScoped
 public class DownloadService {
 
     private static final Logger LOG = LoggerFactory.getLogger(DownloadService.class);
 
+    public static final String SYNC_MODE = "SYNC_MODE";
+    public static final String SYNC_MODE_UID = "UID";
+
+    private static final long SEND_TIMEOUT_MINUTES = 5;
+
+    /**
+     * Failed downloads of a message after which UID sync gives up on it and moves past it, so that one message that
+     * can never be processed does not hold back the mailbox.
+     */
+    static final int MAX_UID_ATTEMPTS = 5;
+
+    private static final FetchProfile PREFETCH_PROFILE = new FetchProfile();
+
+    static {
+        PREFETCH_PROFILE.add(FetchProfile.Item.ENVELOPE);
+        PREFETCH_PROFILE.add(FetchProfile.Item.CONTENT_INFO);
+        PREFETCH_PROFILE.add(UIDFolder.FetchProfileItem.UID);
+        PREFETCH_PROFILE.add(FetchProfile.Item.FLAGS);
+    }
+
     @Inject
     StartupBean startUp;
 
     @Inject
-    ExchangeService service;
+    IngestPipeline pipeline;
 
-    public void download() {
+    @Inject
+    MailboxConnectionManager mailbox;
+
+    @Inject
+    UidCheckpointStore checkpoints;
+
+    @Inject
+    AttachmentJournal journal;
+
+    @Resource
+    ManagedExecutorService executor;
+
+    /**
+     * Download from every configured mailbox source, several sources concurrently. A failing source is logged and
+     * does not affect the others.
+     *
+     * @return the number of new messages handled
+     */
+    public int download() {
         LOG.debug("Download invoked");
+        List<MailboxSettings> mailboxes = MailboxSettings.all(startUp);
+        if (mailboxes.size() == 1) {
+            return download(mailboxes.get(0));
+        }
+        List<Future<Integer>> downloads = new ArrayList<>(mailboxes.size());
+        for (MailboxSettings settings : mailboxes) {
+            downloads.add(executor.submit(() -> download(settings)));
+        }
+        int messages = 0;
+        for (Future<Integer> download : downloads) {
+            try {
+                messages += download.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                LOG.error("Could not get messages", e.getCause());
+            }
+        }
+        return messages;
+    }
+
+    private int download(MailboxSettings settings) {
         try {
-            getMessages();
+            return getMessages(settings);
         } catch (Exception e) {
-            LOG.error("Could not get messages", e);
+            LOG.error("Could not get messages from {}", settings, e);
+            return 0;
         }
     }
 
-    private void getMessages() throws IOException, MessagingException {
-        try (Store store = getConnectedStore(startUp.getSetting("MAILHOST"), startUp.getSetting("MAILPORT"),
-                startUp.getSetting("USERNAME"), startUp.getSetting("PSW"));
-
-             Folder inbox = openFolder(store, startUp.getSetting("SUBFOLDER"))) {
-            Message[] mails = getUnseenMessages(inbox);
+    private int getMessages(MailboxSettings settings) throws IOException, MessagingException {
+        return mailbox.withFolder(settings, inbox -> getMessages(settings, inbox));
+    }
 
-            LOG.info("New messages: {}", mails.length);
+    private int getMessages(MailboxSettings settings, Folder inbox) throws IOException, MessagingException {
+        String syncMode = MailboxSettings.getSetting(startUp, settings.getSource(), SYNC_MODE);
+        if (SYNC_MODE_UID.equalsIgnoreCase(syncMode) && inbox instanceof UIDFolder) {
+            return syncByUid(settings, inbox, (UIDFolder) inbox);
+        }
+        Message[] mails = getUnseenMessages(inbox);
 
-            for (Message message : mails) {
-                Multipart multipart = (Multipart) message.getContent();
+        LOG.info("New messages in {}: {}", settings, mails.length);
 
-                parseMail(message, multipart);
-            }
+        prefetch(inbox, mails);
+        List<PendingMail> pending = new ArrayList<>(mails.length);
+        for (Message message : mails) {
+            pending.add(parseMail(settings, inbox, message, 0));
+        }
+        long deadline = sendDeadline();
+        for (PendingMail mail : pending) {
+            mail.complete(deadline);
         }
+        // mails without reports and failed mails stay unseen and are not counted, they come back on every poll
+        return finish(settings, inbox, pending);
     }
 
-    private Store getConnectedStore(String host, String port, String user, String password) throws MessagingException {
-        Properties props = System.getProperties();
-
-        props.setProperty("mail.imap.starttls.enable", "true");
-        props.setProperty("mail.imap.port", port);
-
-        Session session = Session.getInstance(props, null);
+    /**
+     * Fetch only the messages above the checkpoint instead of searching the whole folder. The checkpoint advances
+     * past a message once all its reports are sent, a failed message is retried on the next download together with
+     * the messages after it. Decoding stops at a message with a broken attachment, the messages before it are
+     * already in the pipeline and are completed first. After {@value #MAX_UID_ATTEMPTS} failed downloads of the same
+     * message the checkpoint moves past it anyway, the message is logged and stays unseen. When the first sync
+     * failed on an unseen message, the seen messages between it and the newest message of the first sync are
+     * skipped.
+     *
+     * @return the number of messages the checkpoint advanced past
+     */
+    int syncByUid(MailboxSettings settings, Folder inbox, UIDFolder uidFolder) throws IOException, MessagingException {
+        long uidValidity = uidFolder.getUIDValidity();
+        UidCheckpoint checkpoint = checkpoints.load(settings);
+
+        if (checkpoint == null || checkpoint.getUidValidity() != uidValidity) {
+            // no usable checkpoint, take the unseen messages once and continue by UID from the newest message
+            long lastUid = lastUid(inbox, uidFolder);
+            LOG.info("No UID checkpoint for {} with UIDVALIDITY {}, processing unseen messages up to UID {}", settings, uidValidity, lastUid);
+            Message[] unseen = getUnseenMessages(inbox);
+            prefetch(inbox, unseen);
+            List<PendingMail> pending = new ArrayList<>(unseen.length);
+            for (Message message : unseen) {
+                long uid = uidFolder.getUID(message);
+                if (uid <= lastUid) {
+                    pending.add(parseMail(settings, inbox, message, uid));
+                }
+            }
+            long failedUid = 0;
+            long deadline = sendDeadline();
+            for (PendingMail mail : pending) {
+                // UID mode never searches for unseen messages again, so continue from below the first failed one
+                if (!mail.complete(deadline) && failedUid == 0) {
+                    LOG.warn("Could not process UID {} of {}, continuing by UID from there on next download", mail.uid, settings);
+                    failedUid = mail.uid;
+                }
+            }
+            finish(settings, inbox, pending);
+            if (failedUid == 0) {
+                checkpoints.save(settings, new UidCheckpoint(uidValidity, lastUid));
+            } else {
+                // the messages up to lastUid that are seen now were handled by this or an earlier download
+                checkpoints.save(settings, new UidCheckpoint(uidValidity, failedUid - 1, failedUid, 1, lastUid));
+            }
+            return pending.size();
+        }
 
-        Store store = session.getStore("imap");
-        store.connect(host, user, password);
+        long lastUid = checkpoint.getLastUid();
+        long unseenOnlyUpTo = checkpoint.getUnseenOnlyUpTo();
+        Message[] mails = uidFolder.getMessagesByUID(lastUid + 1, UIDFolder.LASTUID);
+        prefetch(inbox, mails);
+        List<PendingMail> pending = new ArrayList<>(mails.length);
+        for (Message message : mails) {
+            long uid = uidFolder.getUID(message);
+            if (uid <= lastUid) {
+                continue; // "n:*" always includes the newest message
+            }
+            if (uid <= unseenOnlyUpTo && message.isSet(Flag.SEEN)) {
+                // handled before, by the first sync, the old plugin or a person
+                pending.add(new PendingMail(message, uid, null, null));
+                continue;
+            }
+            PendingMail mail = parseMail(settings, inbox, message, uid);
+            pending.add(mail);
+            if (mail.ticket != null && mail.ticket.isFailed()) {
+                break;
+            }
+        }
+        int processed = 0;
+        boolean contiguous = true;
+        long deadline = sendDeadline();
+        for (PendingMail mail : pending) {
+            boolean sent = mail.complete(deadline);
+            if (!contiguous) {
+                continue;
+            }
+            if (sent) {
+                processed++;
+            } else {
+                int attempts = checkpoint.attemptsAfterFailureOf(mail.uid);
+                if (attempts < MAX_UID_ATTEMPTS) {
+                    LOG.warn("Stopping UID sync of {} at UID {} after {} failed attempts, retrying on next download", settings, mail.uid, attempts);
+                    checkpoints.save(settings, new UidCheckpoint(uidValidity, lastUid, mail.uid, attempts, unseenOnlyUpTo));
+                    contiguous = false;
+                    continue;
+                }
+                LOG.error("Giving up on UID {} of {} after {} failed attempts, leaving it unseen", mail.uid, settings, attempts);
+            }
+            lastUid = mail.uid;
+            checkpoints.save(settings, new UidCheckpoint(uidValidity, lastUid, 0, 0, unseenOnlyUpTo));
+        }
+        finish(settings, inbox, pending);
+        LOG.info("New messages in {}: {}", settings, processed);
+        return processed;
+    }
 
-        return store;
+    /**
+     * Journal the progress of the completed mails with reports, then flag them in bulk, as seen when all their
+     * reports were sent and as unseen otherwise, and archive the sent ones when an archive folder is configured.
+     *
+     * @return the number of mails whose reports were all sent
+     */
+    private int finish(MailboxSettings settings, Folder inbox, List<PendingMail> pending) throws MessagingException {
+        List<Message> sent = new ArrayList<>(pending.size());
+        List<Message> failed = new ArrayList<>();
+        List<MailProgress> progress = new ArrayList<>();
+        for (PendingMail mail : pending) {
+            if (mail.ticket != null) {
+                (mail.sent ? sent : failed).add(mail.message);
+                if (mail.progress != null) {
+                    mail.progress.completed(mail.sent);
+                    progress.add(mail.progress);
+                }
+            }
+        }
+        try {
+            journal.commit(settings, progress);
+        } catch (RuntimeException e) {
+            LOG.warn("Could not journal the attachments of {}, failed mails are decoded from the start again", settings, e);
+        }
+        ProcessedMails.setSeen(inbox, sent, true);
+        ProcessedMails.setSeen(inbox, failed, false);
+        String archiveFolder = MailboxSettings.getSetting(startUp, settings.getSource(), ProcessedMails.ARCHIVE_FOLDER);
+        if (archiveFolder != null && !archiveFolder.trim().isEmpty()) {
+            ProcessedMails.archive(inbox, sent, archiveFolder.trim());
+        }
+        return sent.size();
     }
 
-    private Folder openFolder(Store store, String inboxSubfolder) throws MessagingException {
-        Folder inbox = store.getFolder("INBOX");
+    /**
+     * @return the time until which a poll waits for the reports of all its mails together
+     */
+    private static long sendDeadline() {
+        return System.nanoTime() + TimeUnit.MINUTES.toNanos(SEND_TIMEOUT_MINUTES);
+    }
 
-        if (inboxSubfolder != null) {
-            inbox = inbox.getFolder(inboxSubfolder);
+    private static long lastUid(Folder inbox, UIDFolder uidFolder) throws MessagingException {
+        long uidNext = uidFolder.getUIDNext();
+        if (uidNext > 0) {
+            return uidNext - 1;
         }
-        inbox.open(Folder.READ_WRITE);
-        return inbox;
+        int count = inbox.getMessageCount();
+        return count > 0 ? uidFolder.getUID(inbox.getMessage(count)) : 0;
     }
 
     private static Message[] getUnseenMessages(Folder inbox) throws MessagingException {
@@ -108,140 +299,93 @@ public class DownloadService {
         return inbox.search(unseenFlagTerm);
     }
 
-    private void parseMail(Message message, Multipart multipart) throws MessagingException {
-        for (int i = 0; i < multipart.getCount(); i++) {
-            BodyPart bodyPart = multipart.getBodyPart(i);
-            if (!Part.ATTACHMENT.equalsIgnoreCase(bodyPart.getDisposition()) && (bodyPart.getFileName() == null || bodyPart.getFileName().isEmpty())) {
-                continue; // dealing with attachments only
-            }
-
-            try (InputStream is = bodyPart.getInputStream()) {
-                String fileName = bodyPart.getFileName();
-                if (fileName.endsWith(".xml")) {
-                    handleXmlReport(is);
-                } else {
-                    handle10BytesReport(fileName, is);
-                }
-                message.setFlag(Flag.SEEN, true);
-            } catch (Exception e) {
-                LOG.error("Could not handle report", e);
-                message.setFlag(Flag.SEEN, false);
-            }
+    /**
+     * Load the envelope, body structure and UID of all messages with one FETCH command. The attachments are then
+     * selected from the structure alone and only their content is downloaded.
+     */
+    private static void prefetch(Folder inbox, Message[] mails) throws MessagingException {
+        if (mails.length > 0) {
+            inbox.fetch(mails, PREFETCH_PROFILE);
         }
     }
 
-    private void handle10BytesReport(String fileName, InputStream is) throws JMSException, IOException {
-        fileName = fileName.substring(0, fileName.indexOf('.'));
-        String[] splittedFilename = fileName.split("_");
-
-        if (splittedFilename.length == 2) {
-            byte[] buf = new byte[100];
-            SiriusOneMessage mes = null;
-            while (is.read(buf) != -1) {
-                mes = new SiriusOneMessage(buf, Long.parseLong(splittedFilename[0]), Long.parseLong(splittedFilename[1]));
-                if (mes.isValid()) {
-                    SetReportMovementType reportType = mapToSetReportMovementType(mes);
-                    service.sendMovementReportToExchange(reportType);
-                    LOG.debug("Sending movement to Exchange");
-                }
+    /**
+     * Decode the report attachments of a message into the pipeline, resuming from the attachment journal when the
+     * message was downloaded before.
+     *
+     * @return the message with the sealed ticket of its reports, or without a ticket when it has no report attachments.
+     * A message that cannot be read has a failed ticket, so it stays unseen while the other messages are handled.
+     */
+    private PendingMail parseMail(MailboxSettings settings, Folder inbox, Message message, long uid) {
+        MailTicket ticket = new MailTicket();
+        MailProgress progress = null;
+        try {
+            if (!message.isMimeType("multipart/*")) {
+                LOG.debug("Skipping message without attachments: {}", message.getSubject());
+                return new PendingMail(message, uid, null, null);
             }
+            String mailKey = mailKey(inbox, message);
+            progress = mailKey != null ? journal.open(settings, mailKey) : null;
+            // only the report attachments selected from the prefetched body structure are downloaded
+            int attachments = ReportDecoder.decodeParts(pipeline, ticket, (Multipart) message.getContent(), progress);
+            ticket.seal();
+            return attachments > 0 ? new PendingMail(message, uid, ticket, progress) : new PendingMail(message, uid, null, null);
+        } catch (IOException | MessagingException | RuntimeException e) {
+            LOG.error("Could not read message {} of {}", uid > 0 ? "UID " + uid : message.getMessageNumber(), settings, e);
+            // reports decoded before the failure are still completed on the ticket
+            ticket.fail();
+            ticket.seal();
+            return new PendingMail(message, uid, ticket, progress);
         }
     }
 
-    private SetReportMovementType mapToSetReportMovementType(SiriusOneMessage msg) {
-        MovementBaseType movement = new MovementBaseType();
-        movement.setComChannelType(MovementComChannelType.MOBILE_TERMINAL);
-        MobileTerminalId mobTermId = new MobileTerminalId();
-
-        IdList deviceId = new IdList();
-        deviceId.setType(IdType.SERIAL_NUMBER);
-        deviceId.setValue("" + msg.getDeviceId());
-
-        mobTermId.getMobileTerminalIdList().add(deviceId);
-
-        movement.setMobileTerminalId(mobTermId);
-
-        movement.setMovementType(MovementTypeType.POS);
-
-        MovementPoint mp = new MovementPoint();
-        mp.setAltitude(0.0);
-        mp.setLatitude(msg.getLatitude());
-        mp.setLongitude(msg.getLongitude());
-        movement.setPosition(mp);
-
-        movement.setPositionTime(msg.getDateTime().toGregorianCalendar().getTime());
-
-        movement.setReportedCourse(msg.getCourse());
-
-        movement.setReportedSpeed(msg.getSpeed());
-
-        movement.setSource(MovementSourceType.IRIDIUM);
-
-        movement.setStatus("11");
-
-        SetReportMovementType reportType = new SetReportMovementType();
-        reportType.setMovement(movement);
-
-        reportType.setPluginName(startUp.getRegisterClassName() + "." + startUp.getApplicationName());
-
-        reportType.setTimestamp(new Date());
-
-        reportType.setPluginType(PluginType.SATELLITE_RECEIVER);
-
-        LOG.debug("LONGITUDE GET {}", msg.getLongitude());
-        LOG.debug("LATITUDE GET {}", msg.getLatitude());
-
-        return reportType;
-    }
-
-    private void handleXmlReport(InputStream is) throws JAXBException, JMSException {
-        Unmarshaller marshaller = JAXBContext.newInstance(Devices.class).createUnmarshaller();
-        Devices devices = (Devices) marshaller.unmarshal(is);
-        SetReportMovementType reportType = mapToSetReportMovementType(devices.getDevice().get(0));
-        service.sendMovementReportToExchange(reportType);
-        LOG.debug("Sending movement to Exchange");
+    /**
+     * @return the identity of a message across downloads, its UIDVALIDITY and UID, or its Message-ID when the folder
+     * has no UIDs, or null
+     */
+    private static String mailKey(Folder inbox, Message message) throws MessagingException {
+        if (inbox instanceof UIDFolder) {
+            UIDFolder uidFolder = (UIDFolder) inbox;
+            return uidFolder.getUIDValidity() + "." + uidFolder.getUID(message);
+        }
+        String[] messageId = message.getHeader("Message-ID");
+        return messageId != null && messageId.length > 0 ? messageId[0].trim().replaceAll("\\s", "_") : null;
     }
 
-    private SetReportMovementType mapToSetReportMovementType(Device device) {
-        MovementBaseType movement = new MovementBaseType();
-
-        movement.setComChannelType(MovementComChannelType.MOBILE_TERMINAL);
-
-        MobileTerminalId mobTermId = new MobileTerminalId();
-        IdList deviceId = new IdList();
-        deviceId.setType(IdType.SERIAL_NUMBER);
-        deviceId.setValue(device.getSerial());
-        mobTermId.getMobileTerminalIdList().add(deviceId);
-        movement.setMobileTerminalId(mobTermId);
-
-        movement.setMovementType(MovementTypeType.POS);
-
-        Position position = device.getPositions().getPosition().get(0);
-        MovementPoint mp = new MovementPoint();
-        mp.setAltitude(position.getAltitude());
-        mp.setLatitude(position.getLatitude());
-        mp.setLongitude(position.getLongitude());
-        movement.setPosition(mp);
-
-        movement.setPositionTime(Date.from(position.getGps().toInstant(ZoneOffset.UTC)));
-
-        movement.setReportedCourse(position.getCourse());
-
-        movement.setReportedSpeed(position.getSpeed().getKnots());
-
-        movement.setSource(MovementSourceType.IRIDIUM);
-
-        movement.setLesReportTime(Date.from(position.getTimestamp().toInstant(ZoneOffset.UTC)));
-
-        SetReportMovementType reportType = new SetReportMovementType();
-        reportType.setMovement(movement);
-
-        reportType.setPluginName(startUp.getRegisterClassName() + "." + startUp.getApplicationName());
-
-        reportType.setTimestamp(new Date());
-
-        reportType.setPluginType(PluginType.SATELLITE_RECEIVER);
+    /**
+     * A message whose reports are in the pipeline.
+     */
+    private static class PendingMail {
+
+        private final Message message;
+        private final long uid;
+        private final MailTicket ticket;
+        private final MailProgress progress;
+        private boolean sent;
+
+        PendingMail(Message message, long uid, MailTicket ticket, MailProgress progress) {
+            this.message = message;
+            this.uid = uid;
+            this.ticket = ticket;
+            this.progress = progress;
+        }
 
-        return reportType;
+        /**
+         * Wait for the reports of the message, until the deadline of the poll.
+         *
+         * @return false when a report could not be handled
+         */
+        boolean complete(long deadline) {
+            if (ticket == null) {
+                return true;
+            }
+            try {
+                sent = ticket.awaitSent(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                sent = false;
+            }
+            return sent;
+        }
     }
-}
\ No newline at end of file
+}
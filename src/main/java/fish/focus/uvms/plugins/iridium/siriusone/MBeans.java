@@ -0,0 +1,53 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registration of the plugin gauges with the platform MBean server. Failures are logged only, the gauges are not
+ * worth failing a deployment for.
+ */
+public class MBeans {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MBeans.class);
+
+    private MBeans() {
+    }
+
+    public static void register(Object mbean, String objectName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(objectName);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name); // left behind by a previous deployment
+            }
+            server.registerMBean(mbean, name);
+        } catch (JMException e) {
+            LOG.warn("Could not register {}", objectName, e);
+        }
+    }
+
+    public static void unregister(String objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(objectName));
+        } catch (JMException e) {
+            LOG.debug("Could not unregister {}", objectName, e);
+        }
+    }
+}
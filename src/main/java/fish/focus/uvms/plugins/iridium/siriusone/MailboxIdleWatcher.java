@@ -0,0 +1,242 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import fish.focus.uvms.plugins.iridium.StartupBean;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.MailboxConnection;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.MailboxSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.inject.Inject;
+import javax.mail.Folder;
+import javax.mail.MessagingException;
+import javax.mail.event.MessageCountAdapter;
+import javax.mail.event.MessageCountEvent;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Push mode for the report mailboxes, enabled with the setting {@code RECEIVE_MODE=IDLE}.
+ * <p>
+ * For each mailbox source a dedicated connection waits in IMAP IDLE on the report folder and requests a download from
+ * {@link RetriverBean} as soon as the server announces new messages. The IDLE command is renewed with a NOOP every few
+ * minutes, well within the 29 minutes servers allow and the idle timeout of NAT gateways. When the server does not
+ * advertise IDLE the watcher of that mailbox stops and its reports are picked up by the scheduled poll, which keeps
+ * running in both modes.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MailboxIdleWatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MailboxIdleWatcher.class);
+
+    public static final String RECEIVE_MODE = "RECEIVE_MODE";
+    public static final String IDLE_MODE = "IDLE";
+
+    static final long KEEP_ALIVE_MINUTES = 4;
+    private static final long IDLE_READ_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2 * KEEP_ALIVE_MINUTES);
+    private static final long RETRY_DELAY_MILLIS = 5_000;
+
+    @Resource
+    ManagedScheduledExecutorService executor;
+
+    @Inject
+    StartupBean startupBean;
+
+    @Inject
+    RetriverBean retriever;
+
+    private final MessageCountAdapter newMailListener = new MessageCountAdapter() {
+        @Override
+        public void messagesAdded(MessageCountEvent e) {
+            LOG.debug("{} new messages announced", e.getMessages().length);
+            retriever.triggerDownload();
+        }
+    };
+
+    private final Map<String, SourceWatch> watches = new ConcurrentHashMap<>();
+    private final Set<MailboxSettings> idleUnsupported = ConcurrentHashMap.newKeySet();
+    private Future<?> keepAlive;
+
+    public boolean isEnabled() {
+        return IDLE_MODE.equalsIgnoreCase(startupBean.getSetting(RECEIVE_MODE));
+    }
+
+    public synchronized boolean isRunning() {
+        return watches.values().stream().anyMatch(SourceWatch::isRunning);
+    }
+
+    /**
+     * Start watching every configured mailbox unless already watching it or its server is known not to support
+     * IDLE, and stop watching mailboxes no longer configured.
+     */
+    public synchronized void start() {
+        List<String> sources = MailboxSettings.sources(startupBean);
+        watches.values().removeIf(watch -> {
+            if (sources.contains(watch.source)) {
+                return !watch.isRunning();
+            }
+            watch.stop();
+            return true;
+        });
+        for (String source : sources) {
+            if (watches.containsKey(source) || idleUnsupported.contains(MailboxSettings.from(startupBean, source))) {
+                continue;
+            }
+            LOG.info("Starting IMAP IDLE watcher for mailbox source '{}'", source);
+            SourceWatch watch = new SourceWatch(source);
+            watches.put(source, watch);
+            watch.start();
+        }
+        if (watches.isEmpty()) {
+            cancelKeepAlive();
+        } else if (keepAlive == null) {
+            keepAlive = executor.scheduleWithFixedDelay(this::breakIdle, KEEP_ALIVE_MINUTES, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES);
+        }
+    }
+
+    public synchronized void stop() {
+        if (watches.isEmpty()) {
+            return;
+        }
+        LOG.info("Stopping IMAP IDLE watcher");
+        cancelKeepAlive();
+        for (SourceWatch watch : watches.values()) {
+            watch.stop();
+        }
+        watches.clear();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stop();
+    }
+
+    private synchronized void cancelKeepAlive() {
+        if (keepAlive != null) {
+            keepAlive.cancel(false);
+            keepAlive = null;
+        }
+    }
+
+    private void breakIdle() {
+        for (SourceWatch watch : watches.values()) {
+            watch.breakIdle();
+        }
+    }
+
+    /**
+     * The IDLE connection of one mailbox source.
+     */
+    private class SourceWatch {
+
+        private final String source;
+        private volatile boolean running;
+        private volatile IMAPFolder idleFolder;
+        private Future<?> future;
+
+        SourceWatch(String source) {
+            this.source = source;
+        }
+
+        void start() {
+            running = true;
+            future = executor.submit(this::watch);
+        }
+
+        boolean isRunning() {
+            return running && future != null && !future.isDone();
+        }
+
+        void stop() {
+            running = false;
+            breakIdle();
+        }
+
+        private void watch() {
+            MailboxConnection connection = new MailboxConnection(IDLE_READ_TIMEOUT_MILLIS);
+            try {
+                while (running) {
+                    MailboxSettings settings = MailboxSettings.from(startupBean, source);
+                    try {
+                        Folder folder = connection.open(settings);
+                        if (!supportsIdle(folder)) {
+                            LOG.warn("{} does not support IMAP IDLE, falling back to polling", settings);
+                            idleUnsupported.add(settings);
+                            return;
+                        }
+                        if (folder != idleFolder) {
+                            folder.addMessageCountListener(newMailListener);
+                            idleFolder = (IMAPFolder) folder;
+                            // pick up whatever arrived while the previous connection was down
+                            retriever.triggerDownload();
+                        }
+                        idleFolder.idle(true);
+                    } catch (MessagingException | RuntimeException e) {
+                        LOG.warn("IMAP IDLE on {} failed: {}", settings, e.getMessage());
+                        idleFolder = null;
+                        pause();
+                    }
+                }
+            } finally {
+                running = false;
+                idleFolder = null;
+                connection.close();
+            }
+        }
+
+        /**
+         * Make {@link IMAPFolder#idle(boolean)} return by sending a command on its connection, which also keeps the
+         * connection alive.
+         */
+        private void breakIdle() {
+            IMAPFolder folder = idleFolder;
+            if (folder == null) {
+                return;
+            }
+            try {
+                folder.doCommand(protocol -> {
+                    protocol.simpleCommand("NOOP", null);
+                    return null;
+                });
+            } catch (MessagingException | RuntimeException e) {
+                LOG.debug("Could not send NOOP to idle connection", e);
+            }
+        }
+
+        private void pause() {
+            try {
+                Thread.sleep(RETRY_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+    }
+
+    private static boolean supportsIdle(Folder folder) throws MessagingException {
+        return folder instanceof IMAPFolder && ((IMAPStore) folder.getStore()).hasCapability("IDLE");
+    }
+}
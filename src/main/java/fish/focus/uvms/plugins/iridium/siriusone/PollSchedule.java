@@ -0,0 +1,109 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+/**
+ * The delay between mailbox polls. After a poll that handled new messages the next poll follows immediately, every
+ * poll without new messages doubles the delay from the minimum up to the maximum interval.
+ */
+public class PollSchedule implements PollScheduleMXBean {
+
+    public static final String OBJECT_NAME = "fish.focus.uvms.plugins.iridium.siriusone:type=PollSchedule";
+
+    private static final long LOWEST_INTERVAL_MILLIS = 1_000;
+    static final long DEFAULT_MIN_INTERVAL_MILLIS = 10_000;
+    static final long DEFAULT_MAX_INTERVAL_MILLIS = 300_000;
+
+    private long minIntervalMillis = DEFAULT_MIN_INTERVAL_MILLIS;
+    private long maxIntervalMillis = DEFAULT_MAX_INTERVAL_MILLIS;
+    private long idleIntervalMillis = DEFAULT_MIN_INTERVAL_MILLIS;
+    private long intervalMillis = DEFAULT_MIN_INTERVAL_MILLIS;
+
+    private long runs;
+    private int lastRunMessages;
+    private long lastRunMillis;
+    private long maxRunMillis;
+    private long totalRunMillis;
+
+    public synchronized void setIntervals(long minIntervalMillis, long maxIntervalMillis) {
+        long min = Math.max(LOWEST_INTERVAL_MILLIS, minIntervalMillis);
+        if (min != this.minIntervalMillis) {
+            idleIntervalMillis = min;
+        }
+        this.minIntervalMillis = min;
+        this.maxIntervalMillis = Math.max(min, maxIntervalMillis);
+        idleIntervalMillis = Math.min(idleIntervalMillis, this.maxIntervalMillis);
+    }
+
+    /**
+     * Record a finished poll.
+     *
+     * @param messages the new messages the poll handled
+     * @return the delay before the next poll
+     */
+    public synchronized long completed(long durationMillis, int messages) {
+        runs++;
+        lastRunMessages = messages;
+        lastRunMillis = durationMillis;
+        maxRunMillis = Math.max(maxRunMillis, durationMillis);
+        totalRunMillis += durationMillis;
+
+        if (messages > 0) {
+            idleIntervalMillis = minIntervalMillis;
+            intervalMillis = 0;
+        } else {
+            intervalMillis = idleIntervalMillis;
+            idleIntervalMillis = Math.min(maxIntervalMillis, idleIntervalMillis * 2);
+        }
+        return intervalMillis;
+    }
+
+    @Override
+    public synchronized long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public synchronized long getMinIntervalMillis() {
+        return minIntervalMillis;
+    }
+
+    @Override
+    public synchronized long getMaxIntervalMillis() {
+        return maxIntervalMillis;
+    }
+
+    @Override
+    public synchronized long getRuns() {
+        return runs;
+    }
+
+    @Override
+    public synchronized int getLastRunMessages() {
+        return lastRunMessages;
+    }
+
+    @Override
+    public synchronized long getLastRunMillis() {
+        return lastRunMillis;
+    }
+
+    @Override
+    public synchronized long getMaxRunMillis() {
+        return maxRunMillis;
+    }
+
+    @Override
+    public synchronized long getMeanRunMillis() {
+        return runs == 0 ? 0 : totalRunMillis / runs;
+    }
+}
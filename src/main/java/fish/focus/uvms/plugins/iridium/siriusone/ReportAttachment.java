@@ -0,0 +1,71 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import java.util.Locale;
+
+/**
+ * A mail attachment recognized as a SiriusOne report by its file name alone, so that other parts are never
+ * downloaded: {@code *.xml} exports, or binary reports named {@code <device serial>_<sequence>.<extension>}.
+ */
+public class ReportAttachment {
+
+    private final String fileName;
+    private final boolean xml;
+    private final long serialNumber;
+
+    private ReportAttachment(String fileName, boolean xml, long serialNumber) {
+        this.fileName = fileName;
+        this.xml = xml;
+        this.serialNumber = serialNumber;
+    }
+
+    /**
+     * @return the report the file name stands for, or null when it is not a SiriusOne report
+     */
+    public static ReportAttachment of(String fileName) {
+        if (fileName == null || fileName.isEmpty()) {
+            return null;
+        }
+        if (fileName.toLowerCase(Locale.ROOT).endsWith(".xml")) {
+            return new ReportAttachment(fileName, true, 0);
+        }
+        int dot = fileName.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        String[] name = fileName.substring(0, dot).split("_", -1);
+        if (name.length != 2 || name[1].isEmpty()) {
+            return null;
+        }
+        try {
+            return new ReportAttachment(fileName, false, Long.parseLong(name[0]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public boolean isXml() {
+        return xml;
+    }
+
+    /**
+     * @return the device serial number of a binary report
+     */
+    public long getSerialNumber() {
+        return serialNumber;
+    }
+}
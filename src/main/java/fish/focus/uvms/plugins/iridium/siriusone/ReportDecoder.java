@@ -0,0 +1,231 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import fish.focus.uvms.plugins.iridium.siriusone.mail.AttachmentJournal;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.MailProgress;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.BinaryReportChunk;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.IngestPipeline;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.MailTicket;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.ReportSink;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.XmlReportChunk;
+import fish.focus.uvms.plugins.iridium.siriusone.xml.SiriusOneXmlReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.mail.BodyPart;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes SiriusOne reports in chunks into the {@link IngestPipeline}, or any other {@link ReportSink}, whatever
+ * source they were read from: mail attachments are streamed, spool files are mapped into memory.
+ */
+public class ReportDecoder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReportDecoder.class);
+
+    static final int REPORT_BATCH_CAPACITY = 256;
+    static final int HASH_LIMIT = 1024 * 1024;
+
+    private ReportDecoder() {
+    }
+
+    /**
+     * Decode the report attachments of a multipart, nested multiparts included. Parts are selected by file name, so
+     * only the report attachments are downloaded, each streamed section by section into its decoder. An attachment
+     * that cannot be decoded fails the ticket.
+     *
+     * @return the number of report attachments
+     */
+    public static int decodeParts(ReportSink pipeline, MailTicket ticket, Multipart multipart) throws IOException, MessagingException {
+        return decodeParts(pipeline, ticket, multipart, null, "");
+    }
+
+    /**
+     * Decode the report attachments of a multipart as far as they were not sent by earlier downloads of the mail.
+     * Attachments sent completely are not downloaded again, the others resume after their reports already sent. An
+     * attachment of at most {@value #HASH_LIMIT} bytes is read into memory first and skipped when an attachment with
+     * the same name and content was sent before.
+     *
+     * @param progress the mail as journaled, or null to decode every attachment from the start
+     * @return the number of report attachments
+     */
+    public static int decodeParts(ReportSink pipeline, MailTicket ticket, Multipart multipart, MailProgress progress) throws IOException, MessagingException {
+        return decodeParts(pipeline, ticket, multipart, progress, "");
+    }
+
+    private static int decodeParts(ReportSink pipeline, MailTicket ticket, Multipart multipart, MailProgress progress, String prefix) throws IOException, MessagingException {
+        int attachments = 0;
+        for (int i = 0; i < multipart.getCount(); i++) {
+            BodyPart bodyPart = multipart.getBodyPart(i);
+            // numbered like IMAP body sections
+            String part = prefix + (i + 1);
+            if (bodyPart.isMimeType("multipart/*")) {
+                attachments += decodeParts(pipeline, ticket, (Multipart) bodyPart.getContent(), progress, part + ".");
+                continue;
+            }
+            ReportAttachment attachment = ReportAttachment.of(bodyPart.getFileName());
+            if (attachment == null) {
+                continue; // mail bodies, signatures and other attachments
+            }
+
+            attachments++;
+            long offset = progress != null ? progress.offset(part) : 0;
+            if (offset == MailProgress.DONE) {
+                LOG.debug("Skipping report {}, sent before", attachment.getFileName());
+                continue;
+            }
+            try (InputStream content = bodyPart.getInputStream()) {
+                // encoded size, so never less than the decoded content
+                long size = bodyPart.getSize();
+                if (progress == null) {
+                    decode(pipeline, ticket, attachment, content, 0, size);
+                    continue;
+                }
+                InputStream is = content;
+                String hash = null;
+                if (size >= 0 && size <= HASH_LIMIT) {
+                    byte[] bytes = content.readAllBytes();
+                    hash = AttachmentJournal.hash(attachment.getFileName(), bytes);
+                    if (progress.isSent(hash)) {
+                        LOG.info("Skipping report {}, identical to a report sent before", attachment.getFileName());
+                        continue;
+                    }
+                    is = new ByteArrayInputStream(bytes);
+                    size = bytes.length;
+                }
+                if (offset > 0) {
+                    LOG.info("Resuming report {} after {} reports sent before", attachment.getFileName(), offset);
+                }
+                MailProgress.Attachment tracked = progress.attachment(part, pipeline, hash);
+                decode(tracked, ticket, attachment, is, offset, size);
+                tracked.decoded();
+            } catch (Exception e) {
+                LOG.error("Could not handle report {}", attachment.getFileName(), e);
+                ticket.fail();
+            }
+        }
+        return attachments;
+    }
+
+    private static void decode(ReportSink pipeline, MailTicket ticket, ReportAttachment attachment, InputStream is, long skip, long size) throws IOException, XMLStreamException {
+        if (attachment.isXml()) {
+            decodeXml(pipeline, ticket, is, skip);
+        } else {
+            decodeBinary(pipeline, ticket, attachment, is, skip, size);
+        }
+    }
+
+    public static void decodeBinary(ReportSink pipeline, MailTicket ticket, ReportAttachment report, InputStream is) throws IOException {
+        decodeBinary(pipeline, ticket, report, is, 0);
+    }
+
+    /**
+     * @param skip the reports at the start of the stream not to decode
+     */
+    public static void decodeBinary(ReportSink pipeline, MailTicket ticket, ReportAttachment report, InputStream is, long skip) throws IOException {
+        decodeBinary(pipeline, ticket, report, is, skip, -1);
+    }
+
+    /**
+     * @param skip the reports at the start of the stream not to decode
+     * @param size the bytes of the stream, or an upper bound, -1 when unknown; batches are sized to fit
+     */
+    public static void decodeBinary(ReportSink pipeline, MailTicket ticket, ReportAttachment report, InputStream is, long skip, long size) throws IOException {
+        long start = skip * SiriusOneFrame.FRAME_LENGTH;
+        skipBytes(is, start);
+        SiriusOneFrameReader reader = new SiriusOneFrameReader(is);
+        SiriusOneReportBatch batch = batchFor(size < 0 ? -1 : size - start);
+        while (reader.read(batch) > 0) {
+            // the batch now belongs to the pipeline
+            pipeline.submit(new BinaryReportChunk(batch, report.getSerialNumber()), ticket);
+            batch = batchFor(size < 0 ? -1 : size - start - reader.getFramesRead() * SiriusOneFrame.FRAME_LENGTH);
+        }
+        if (reader.getTrailingBytes() > 0) {
+            LOG.warn("Ignoring {} trailing bytes after {} reports in {}", reader.getTrailingBytes(), reader.getFramesRead(), report.getFileName());
+        }
+    }
+
+    private static void skipBytes(InputStream is, long bytes) throws IOException {
+        while (bytes > 0) {
+            long skipped = is.skip(bytes);
+            if (skipped <= 0) {
+                if (is.read() < 0) {
+                    return;
+                }
+                skipped = 1;
+            }
+            bytes -= skipped;
+        }
+    }
+
+    /**
+     * Decode the frames between the position and limit of {@code buffer}, without copying them first.
+     */
+    public static void decodeBinary(ReportSink pipeline, MailTicket ticket, ReportAttachment report, ByteBuffer buffer) {
+        long frames = 0;
+        while (buffer.remaining() >= SiriusOneFrame.FRAME_LENGTH) {
+            SiriusOneReportBatch batch = batchFor(buffer.remaining());
+            frames += batch.decode(buffer);
+            pipeline.submit(new BinaryReportChunk(batch, report.getSerialNumber()), ticket);
+        }
+        if (buffer.hasRemaining()) {
+            LOG.warn("Ignoring {} trailing bytes after {} reports in {}", buffer.remaining(), frames, report.getFileName());
+        }
+    }
+
+    /**
+     * @param bytes the bytes left to decode, -1 when unknown
+     * @return a batch just large enough for the frames in {@code bytes}, at most {@value #REPORT_BATCH_CAPACITY}
+     * reports, so a typical attachment of a single report does not allocate a full batch
+     */
+    static SiriusOneReportBatch batchFor(long bytes) {
+        if (bytes < 0) {
+            return new SiriusOneReportBatch(REPORT_BATCH_CAPACITY);
+        }
+        long frames = (bytes + SiriusOneFrame.FRAME_LENGTH - 1) / SiriusOneFrame.FRAME_LENGTH;
+        return new SiriusOneReportBatch((int) Math.max(1, Math.min(REPORT_BATCH_CAPACITY, frames)));
+    }
+
+    public static void decodeXml(ReportSink pipeline, MailTicket ticket, InputStream is) throws XMLStreamException {
+        decodeXml(pipeline, ticket, is, 0);
+    }
+
+    /**
+     * @param skip the positions at the start of the document not to submit
+     */
+    public static void decodeXml(ReportSink pipeline, MailTicket ticket, InputStream is, long skip) throws XMLStreamException {
+        try (SiriusOneXmlReader reader = new SiriusOneXmlReader(is)) {
+            XmlReportChunk chunk = new XmlReportChunk(REPORT_BATCH_CAPACITY);
+            long skipped = 0;
+            while (reader.next()) {
+                if (skipped < skip) {
+                    skipped++;
+                    continue;
+                }
+                chunk.add(reader.getDeviceSerial(), reader.getPosition());
+                if (chunk.isFull()) {
+                    pipeline.submit(chunk, ticket);
+                    chunk = new XmlReportChunk(REPORT_BATCH_CAPACITY);
+                }
+            }
+            pipeline.submit(chunk, ticket);
+            LOG.debug("Read {} positions from xml report", reader.getPositionCount());
+        }
+    }
+}
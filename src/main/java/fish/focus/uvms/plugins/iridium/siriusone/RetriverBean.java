@@ -12,27 +12,171 @@ copy of the GNU General Public License along with the IFDM Suite. If not, see <h
 package fish.focus.uvms.plugins.iridium.siriusone;
 
 import fish.focus.uvms.plugins.iridium.StartupBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import javax.ejb.Schedule;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
 import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Polls the report mailboxes on an adaptive schedule, see {@link PollSchedule}. Each poll schedules the next one
+ * when it has finished, and polls and downloads triggered by the IDLE watcher hold the same lock, so no two
+ * downloads ever overlap. The interval bounds are the settings {@code POLL_MIN_INTERVAL} and
+ * {@code POLL_MAX_INTERVAL}, in seconds. The IDLE and spool directory watchers are started and stopped with the plugin
+ * on each poll.
+ */
 @Singleton
 @Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 public class RetriverBean {
 
+    private static final Logger LOG = LoggerFactory.getLogger(RetriverBean.class);
+
+    public static final String POLL_MIN_INTERVAL = "POLL_MIN_INTERVAL";
+    public static final String POLL_MAX_INTERVAL = "POLL_MAX_INTERVAL";
+
+    static final String POLL = "poll";
+
     @Inject
     DownloadService downloadService;
 
     @Inject
     StartupBean startupBean;
 
-    @Schedule(minute = "*/1", hour = "*", persistent = false)
-    public void download() {
-        if (startupBean.isIsEnabled()) {
-            downloadService.download();
+    @Inject
+    MailboxIdleWatcher idleWatcher;
+
+    @Inject
+    SpoolWatcher spoolWatcher;
+
+    @Resource
+    TimerService timerService;
+
+    final PollSchedule schedule = new PollSchedule();
+
+    private final ReentrantLock downloadLock = new ReentrantLock();
+    private final AtomicBoolean downloadRequested = new AtomicBoolean();
+    private Timer pollTimer;
+
+    @PostConstruct
+    public void init() {
+        MBeans.register(schedule, PollSchedule.OBJECT_NAME);
+        schedulePoll(schedule.getMinIntervalMillis());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        MBeans.unregister(PollSchedule.OBJECT_NAME);
+    }
+
+    @Timeout
+    public void timeout(Timer timer) {
+        if (POLL.equals(timer.getInfo())) {
+            synchronized (this) {
+                if (timer.equals(pollTimer)) {
+                    pollTimer = null;
+                }
+            }
+            poll();
+        } else {
+            triggeredDownload();
         }
     }
 
-}
\ No newline at end of file
+    void poll() {
+        long delay = schedule.getMinIntervalMillis();
+        try {
+            if (startupBean.isIsEnabled()) {
+                delay = runDownload();
+            }
+            if (startupBean.isIsEnabled() && idleWatcher.isEnabled()) {
+                idleWatcher.start();
+            } else {
+                idleWatcher.stop();
+            }
+            if (startupBean.isIsEnabled() && spoolWatcher.isEnabled()) {
+                spoolWatcher.start();
+            } else {
+                spoolWatcher.stop();
+            }
+        } finally {
+            schedulePoll(delay);
+        }
+    }
+
+    /**
+     * Download as soon as possible instead of waiting for the schedule. Requests made before the pending download
+     * has started are coalesced into it.
+     */
+    public void triggerDownload() {
+        if (downloadRequested.compareAndSet(false, true)) {
+            timerService.createSingleActionTimer(0, new TimerConfig(null, false));
+        }
+    }
+
+    void triggeredDownload() {
+        downloadRequested.set(false);
+        if (startupBean.isIsEnabled() && runDownload() == 0) {
+            // messages keep coming, poll again right away instead of after the idle interval
+            schedulePoll(0);
+        }
+    }
+
+    /**
+     * @return the delay before the next poll
+     */
+    private long runDownload() {
+        downloadLock.lock();
+        try {
+            schedule.setIntervals(intervalSetting(POLL_MIN_INTERVAL, PollSchedule.DEFAULT_MIN_INTERVAL_MILLIS),
+                    intervalSetting(POLL_MAX_INTERVAL, PollSchedule.DEFAULT_MAX_INTERVAL_MILLIS));
+            long start = System.nanoTime();
+            int messages = downloadService.download();
+            long delay = schedule.completed(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), messages);
+            LOG.debug("Downloaded {} messages, next poll in {} ms", messages, delay);
+            return delay;
+        } finally {
+            downloadLock.unlock();
+        }
+    }
+
+    /**
+     * Replace the pending poll, there is never more than one.
+     */
+    private synchronized void schedulePoll(long delayMillis) {
+        if (pollTimer != null) {
+            try {
+                pollTimer.cancel();
+            } catch (RuntimeException e) {
+                LOG.debug("Could not cancel poll timer", e);
+            }
+        }
+        pollTimer = timerService.createSingleActionTimer(delayMillis, new TimerConfig(POLL, false));
+    }
+
+    private long intervalSetting(String key, long defaultMillis) {
+        String seconds = startupBean.getSetting(key);
+        if (seconds == null || seconds.trim().isEmpty()) {
+            return defaultMillis;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(seconds.trim()));
+        } catch (NumberFormatException e) {
+            LOG.warn("Ignoring invalid {} '{}'", key, seconds);
+            return defaultMillis;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Reusable view over one 10 byte (80 bit) SiriusOne report.
+ * <p>
+ * The frame is read straight from the backing array with a big-endian long load for the first 64 bits and two byte
+ * reads for the remaining 16, so decoding a report creates no objects. Call {@link #wrap(byte[], int)} to move the view
+ * to the next report.
+ * <p>
+ * Bit layout, most significant bit first:
+ * <pre>
+ *  0      report type (0 = normal report)
+ *  1      gps valid
+ *  2-24   minutes since 2015-01-01 00:01
+ *  25     longitude hemisphere (1 = west)
+ *  26-44  longitude, 0.000344 degrees per unit
+ *  45     latitude hemisphere (1 = south)
+ *  46-63  latitude, 0.000344 degrees per unit
+ *  64-71  speed, 0.2 knots per unit
+ *  72-79  course, 1.5 degrees per unit
+ * </pre>
+ */
+public class SiriusOneFrame {
+
+    public static final int FRAME_LENGTH = 10;
+
+    private static final VarHandle LONG_BIG_ENDIAN = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private static final double DEGREES_PER_UNIT = 0.000344;
+
+    private long high;
+    private int low;
+
+    /**
+     * Point this view at the report starting at {@code offset}.
+     *
+     * @param buffer array holding at least {@link #FRAME_LENGTH} bytes from {@code offset}
+     * @param offset index of the first byte of the report
+     * @return this view
+     */
+    public SiriusOneFrame wrap(byte[] buffer, int offset) {
+        if (offset < 0 || offset > buffer.length - FRAME_LENGTH) {
+            throw new IndexOutOfBoundsException("No complete frame at offset " + offset + " in buffer of length " + buffer.length);
+        }
+        high = high(buffer, offset);
+        low = low(buffer, offset);
+        return this;
+    }
+
+    public boolean isNormalReport() {
+        return isNormalReport(high);
+    }
+
+    public boolean isGpsValid() {
+        return isGpsValid(high);
+    }
+
+    /**
+     * @return minutes since 2015-01-01 00:01
+     */
+    public int getTime() {
+        return time(high);
+    }
+
+    public boolean isWest() {
+        return ((high >>> 38) & 1) == 1;
+    }
+
+    public boolean isSouth() {
+        return ((high >>> 18) & 1) == 1;
+    }
+
+    public double getLongitude() {
+        return longitude(high);
+    }
+
+    public double getLatitude() {
+        return latitude(high);
+    }
+
+    public double getSpeed() {
+        return speed(low);
+    }
+
+    public double getCourse() {
+        return course(low);
+    }
+
+    static long high(byte[] buffer, int offset) {
+        return (long) LONG_BIG_ENDIAN.get(buffer, offset);
+    }
+
+    static int low(byte[] buffer, int offset) {
+        return ((buffer[offset + 8] & 0xFF) << 8) | (buffer[offset + 9] & 0xFF);
+    }
+
+    static boolean isNormalReport(long high) {
+        return (high >>> 63) == 0;
+    }
+
+    static boolean isGpsValid(long high) {
+        return ((high >>> 62) & 1) == 1;
+    }
+
+    static int time(long high) {
+        return (int) ((high >>> 39) & 0x7FFFFF);
+    }
+
+    static double longitude(long high) {
+        double longitude = (double) ((int) ((high >>> 19) & 0x7FFFF)) * DEGREES_PER_UNIT;
+        return ((high >>> 38) & 1) == 1 ? -longitude : longitude;
+    }
+
+    static double latitude(long high) {
+        double latitude = (double) ((int) (high & 0x3FFFF)) * DEGREES_PER_UNIT;
+        return ((high >>> 18) & 1) == 1 ? -latitude : latitude;
+    }
+
+    static double speed(int low) {
+        return (double) (low >>> 8) / 5;
+    }
+
+    static double course(int low) {
+        return (double) (low & 0xFF) * 1.5;
+    }
+}
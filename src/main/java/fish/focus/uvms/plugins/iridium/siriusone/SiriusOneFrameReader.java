@@ -0,0 +1,114 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Buffered reader splitting a binary attachment into 10 byte SiriusOne frames.
+ * <p>
+ * Short reads are accumulated until a complete frame is available, and bytes left over from one read are carried over
+ * to the next, so every frame of the stream is returned no matter how the underlying stream chunks its data. Only the
+ * internal buffer is held in memory. Bytes after the last complete frame are counted in {@link #getTrailingBytes()}
+ * once the end of the stream has been reached.
+ */
+public class SiriusOneFrameReader {
+
+    public static final int DEFAULT_BUFFER_FRAMES = 819;
+
+    private final InputStream in;
+    private final byte[] buffer;
+
+    private int start;
+    private int end;
+    private boolean endOfStream;
+    private long framesRead;
+
+    public SiriusOneFrameReader(InputStream in) {
+        this(in, DEFAULT_BUFFER_FRAMES);
+    }
+
+    public SiriusOneFrameReader(InputStream in, int bufferFrames) {
+        if (bufferFrames < 1) {
+            throw new IllegalArgumentException("Buffer must hold at least one frame: " + bufferFrames);
+        }
+        this.in = in;
+        this.buffer = new byte[bufferFrames * SiriusOneFrame.FRAME_LENGTH];
+    }
+
+    /**
+     * Point {@code frame} at the next complete frame. The view is only valid until the next call on this reader.
+     *
+     * @return false when the stream holds no further complete frame
+     */
+    public boolean next(SiriusOneFrame frame) throws IOException {
+        if (!fill()) {
+            return false;
+        }
+        frame.wrap(buffer, start);
+        start += SiriusOneFrame.FRAME_LENGTH;
+        framesRead++;
+        return true;
+    }
+
+    /**
+     * Decode frames into {@code batch} until it is full or the stream holds no further complete frame.
+     *
+     * @return number of frames added to the batch, 0 at the end of the stream
+     */
+    public int read(SiriusOneReportBatch batch) throws IOException {
+        int frames = 0;
+        while (!batch.isFull() && fill()) {
+            int decoded = batch.decode(buffer, start, end - start);
+            start += decoded * SiriusOneFrame.FRAME_LENGTH;
+            frames += decoded;
+        }
+        framesRead += frames;
+        return frames;
+    }
+
+    /**
+     * @return true if at least one complete frame is buffered
+     */
+    private boolean fill() throws IOException {
+        while (end - start < SiriusOneFrame.FRAME_LENGTH && !endOfStream) {
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            int read = in.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                endOfStream = true;
+            } else {
+                end += read;
+            }
+        }
+        return end - start >= SiriusOneFrame.FRAME_LENGTH;
+    }
+
+    public long getFramesRead() {
+        return framesRead;
+    }
+
+    /**
+     * @return number of bytes after the last complete frame, only known once the end of the stream has been reached
+     */
+    public int getTrailingBytes() {
+        return endOfStream ? end - start : 0;
+    }
+
+    public boolean isEndOfStream() {
+        return endOfStream;
+    }
+}
@@ -14,12 +14,8 @@ package fish.focus.uvms.plugins.iridium.siriusone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.xml.datatype.DatatypeConfigurationException;
-import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.GregorianCalendar;
 
 public class SiriusOneMessage {
 
@@ -94,17 +90,7 @@ public class SiriusOneMessage {
     }
 
     public XMLGregorianCalendar getDateTime() {
-        XMLGregorianCalendar xmlGregorianCalendar = null;
-        DatatypeFactory df;
-        GregorianCalendar cal = new GregorianCalendar(2015, Calendar.JANUARY, 1, 0, 1);
-        cal.add(Calendar.MINUTE, time);
-        try {
-            df = DatatypeFactory.newInstance();
-            xmlGregorianCalendar = df.newXMLGregorianCalendar(cal);
-        } catch (DatatypeConfigurationException ex) {
-
-        }
-        return xmlGregorianCalendar;
+        return SiriusOneTime.toXmlGregorianCalendar(time);
     }
 
     private void setLonHemis(String strMsg) {
@@ -0,0 +1,163 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Struct-of-arrays holder for decoded SiriusOne reports.
+ * <p>
+ * A batch is allocated once with a fixed capacity and refilled with {@link #decode(byte[], int, int)} or
+ * {@link #decode(ByteBuffer)}, so a whole attachment is decoded into primitive columns in a single pass without
+ * creating an object per report. See {@link SiriusOneFrame} for the bit layout.
+ */
+public class SiriusOneReportBatch {
+
+    public static final byte NORMAL_REPORT = 1;
+    public static final byte GPS_VALID = 1 << 1;
+
+    private final int[] time;
+    private final double[] latitude;
+    private final double[] longitude;
+    private final double[] speed;
+    private final double[] course;
+    private final byte[] flags;
+
+    private int size;
+
+    public SiriusOneReportBatch(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        time = new int[capacity];
+        latitude = new double[capacity];
+        longitude = new double[capacity];
+        speed = new double[capacity];
+        course = new double[capacity];
+        flags = new byte[capacity];
+    }
+
+    /**
+     * Append every complete frame in {@code bytes[offset, offset + length)} until the batch is full.
+     *
+     * @return number of frames decoded, multiply with {@link SiriusOneFrame#FRAME_LENGTH} for the bytes consumed
+     */
+    public int decode(byte[] bytes, int offset, int length) {
+        int frames = Math.min(length / SiriusOneFrame.FRAME_LENGTH, remaining());
+        for (int i = 0; i < frames; i++, offset += SiriusOneFrame.FRAME_LENGTH) {
+            add(SiriusOneFrame.high(bytes, offset), SiriusOneFrame.low(bytes, offset));
+        }
+        return frames;
+    }
+
+    /**
+     * Append every complete frame between the position and limit of {@code buffer} until the batch is full. The
+     * position is advanced past the decoded frames, any trailing partial frame is left in the buffer.
+     *
+     * @return number of frames decoded
+     */
+    public int decode(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            int frames = decode(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.position() + frames * SiriusOneFrame.FRAME_LENGTH);
+            return frames;
+        }
+        ByteBuffer bigEndian = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int frames = Math.min(buffer.remaining() / SiriusOneFrame.FRAME_LENGTH, remaining());
+        int position = buffer.position();
+        for (int i = 0; i < frames; i++, position += SiriusOneFrame.FRAME_LENGTH) {
+            add(bigEndian.getLong(position), bigEndian.getShort(position + 8) & 0xFFFF);
+        }
+        buffer.position(position);
+        return frames;
+    }
+
+    private void add(long high, int low) {
+        int i = size++;
+        time[i] = SiriusOneFrame.time(high);
+        latitude[i] = SiriusOneFrame.latitude(high);
+        longitude[i] = SiriusOneFrame.longitude(high);
+        speed[i] = SiriusOneFrame.speed(low);
+        course[i] = SiriusOneFrame.course(low);
+        byte flag = 0;
+        if (SiriusOneFrame.isNormalReport(high)) {
+            flag |= NORMAL_REPORT;
+        }
+        if (SiriusOneFrame.isGpsValid(high)) {
+            flag |= GPS_VALID;
+        }
+        flags[i] = flag;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return time.length;
+    }
+
+    public int remaining() {
+        return time.length - size;
+    }
+
+    public boolean isFull() {
+        return size == time.length;
+    }
+
+    /**
+     * @return minutes since 2015-01-01 00:01
+     */
+    public int getTime(int index) {
+        return time[checkIndex(index)];
+    }
+
+    public double getLatitude(int index) {
+        return latitude[checkIndex(index)];
+    }
+
+    public double getLongitude(int index) {
+        return longitude[checkIndex(index)];
+    }
+
+    public double getSpeed(int index) {
+        return speed[checkIndex(index)];
+    }
+
+    public double getCourse(int index) {
+        return course[checkIndex(index)];
+    }
+
+    public byte getFlags(int index) {
+        return flags[checkIndex(index)];
+    }
+
+    public boolean isNormalReport(int index) {
+        return (getFlags(index) & NORMAL_REPORT) != 0;
+    }
+
+    public boolean isGpsValid(int index) {
+        return (getFlags(index) & GPS_VALID) != 0;
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside batch of size " + size);
+        }
+        return index;
+    }
+}
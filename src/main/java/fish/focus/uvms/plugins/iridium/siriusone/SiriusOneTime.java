@@ -0,0 +1,65 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+/**
+ * Conversion of the 23 bit report time, minutes since 2015-01-01 00:01, to absolute time.
+ * <p>
+ * The epoch is resolved once in the default time zone, the same way the reports have always been interpreted, and
+ * every conversion after that is plain arithmetic.
+ */
+public class SiriusOneTime {
+
+    static final long EPOCH_MILLIS = LocalDateTime.of(2015, 1, 1, 0, 1).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+
+    private static final DatatypeFactory DATATYPE_FACTORY = newDatatypeFactory();
+
+    private SiriusOneTime() {
+    }
+
+    public static long toEpochMillis(int minutes) {
+        return EPOCH_MILLIS + minutes * MILLIS_PER_MINUTE;
+    }
+
+    public static Instant toInstant(int minutes) {
+        return Instant.ofEpochMilli(toEpochMillis(minutes));
+    }
+
+    public static Date toDate(int minutes) {
+        return new Date(toEpochMillis(minutes));
+    }
+
+    public static XMLGregorianCalendar toXmlGregorianCalendar(int minutes) {
+        GregorianCalendar calendar = new GregorianCalendar();
+        calendar.setTimeInMillis(toEpochMillis(minutes));
+        return DATATYPE_FACTORY.newXMLGregorianCalendar(calendar);
+    }
+
+    private static DatatypeFactory newDatatypeFactory() {
+        try {
+            return DatatypeFactory.newInstance();
+        } catch (DatatypeConfigurationException e) {
+            throw new IllegalStateException("Could not create DatatypeFactory", e);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import fish.focus.uvms.plugins.iridium.StartupBean;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.IngestPipeline;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.MailTicket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.inject.Inject;
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads report files dropped into a local spool directory, for example by SFTP, as an alternative to the mailboxes.
+ * Enabled by the setting {@code SPOOL_DIRECTORY}.
+ * <p>
+ * Files are named like report attachments, {@code <device serial>_<sequence>.<extension>} for binary reports and
+ * {@code *.xml} for exports. A file is picked up once it has not changed for a second, so uploads in progress are not
+ * read; hidden files and the {@code .part}, {@code .filepart} and {@code .tmp} files of upload clients are ignored.
+ * Binary files are mapped into memory and decoded in place, XML files are streamed, both into the same
+ * {@link IngestPipeline} as mail attachments. When all reports of a file are sent it is moved to
+ * {@code SPOOL_DONE_DIRECTORY}, by default {@code done} in the spool directory. A file that cannot be decoded is
+ * moved to {@code failed}, a file whose reports could not be sent is retried later. A file whose name is taken there
+ * already gets a number, {@code 12345678_1-1.sbd}, so that earlier files are kept.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class SpoolWatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpoolWatcher.class);
+
+    public static final String SPOOL_DIRECTORY = "SPOOL_DIRECTORY";
+    public static final String SPOOL_DONE_DIRECTORY = "SPOOL_DONE_DIRECTORY";
+
+    static final String DONE = "done";
+    static final String FAILED = "failed";
+    static final long DEFAULT_SETTLE_MILLIS = 1_000;
+    private static final long RETRY_DELAY_MILLIS = 30_000;
+    private static final long SEND_TIMEOUT_MINUTES = 5;
+    private static final String[] PARTIAL_SUFFIXES = {".part", ".filepart", ".tmp"};
+
+    @Resource
+    ManagedExecutorService executor;
+
+    @Inject
+    StartupBean startupBean;
+
+    @Inject
+    IngestPipeline pipeline;
+
+    long settleMillis = DEFAULT_SETTLE_MILLIS;
+
+    private DirectoryWatch watch;
+
+    public boolean isEnabled() {
+        return setting(SPOOL_DIRECTORY) != null;
+    }
+
+    public synchronized boolean isRunning() {
+        return watch != null && watch.isRunning();
+    }
+
+    /**
+     * Start watching the configured spool directory, or the newly configured one if it has changed.
+     */
+    public synchronized void start() {
+        Path spool = Paths.get(setting(SPOOL_DIRECTORY));
+        if (isRunning() && spool.equals(watch.spool)) {
+            return;
+        }
+        stop();
+        String done = setting(SPOOL_DONE_DIRECTORY);
+        LOG.info("Watching spool directory {}", spool);
+        watch = new DirectoryWatch(spool, done != null ? Paths.get(done) : spool.resolve(DONE), spool.resolve(FAILED));
+        watch.start();
+    }
+
+    public synchronized void stop() {
+        if (watch == null) {
+            return;
+        }
+        LOG.info("Stopping spool directory watcher");
+        watch.stop();
+        watch = null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stop();
+    }
+
+    static boolean accept(Path file) {
+        String name = file.getFileName().toString();
+        if (name.startsWith(".") || !Files.isRegularFile(file)) {
+            return false;
+        }
+        String lowerCase = name.toLowerCase(Locale.ROOT);
+        for (String suffix : PARTIAL_SUFFIXES) {
+            if (lowerCase.endsWith(suffix)) {
+                return false;
+            }
+        }
+        if (ReportAttachment.of(name) == null) {
+            LOG.debug("Ignoring spool file {}", name);
+            return false;
+        }
+        return true;
+    }
+
+    private SpoolFile decode(Path file) {
+        ReportAttachment report = ReportAttachment.of(file.getFileName().toString());
+        SpoolFile spoolFile = new SpoolFile(file);
+        try {
+            if (report.isXml()) {
+                try (InputStream is = Files.newInputStream(file)) {
+                    ReportDecoder.decodeXml(pipeline, spoolFile.ticket, is);
+                }
+            } else {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    // the frames are copied into report batches, the mapping is not kept after decoding
+                    ReportDecoder.decodeBinary(pipeline, spoolFile.ticket, report, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                }
+            }
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            LOG.error("Could not handle report {}", file.getFileName(), e);
+            spoolFile.ticket.fail();
+            spoolFile.unreadable = true;
+        }
+        spoolFile.ticket.seal();
+        return spoolFile;
+    }
+
+    /**
+     * Move a file into a directory, keeping a file of the same name moved there before by numbering the new one.
+     */
+    private static void move(Path file, Path directory) {
+        String name = file.getFileName().toString();
+        try {
+            for (int copy = 0; ; copy++) {
+                try {
+                    Files.move(file, directory.resolve(numbered(name, copy)));
+                    return;
+                } catch (FileAlreadyExistsException e) {
+                    // a file of the same name was uploaded again, try the next number
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("Could not move {} to {}", file, directory, e);
+        }
+    }
+
+    /**
+     * @return the name with the number before its extension, {@code 12345678_1-2.sbd}, or the name itself for 0
+     */
+    static String numbered(String name, int number) {
+        if (number == 0) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) + "-" + number + name.substring(dot) : name + "-" + number;
+    }
+
+    private String setting(String key) {
+        String value = startupBean.getSetting(key);
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    /**
+     * The watch of one spool directory, run on a thread of its own until stopped.
+     */
+    private class DirectoryWatch {
+
+        private final Path spool;
+        private final Path done;
+        private final Path failed;
+        // file to the time it may be read, in System.nanoTime()
+        private final Map<Path, Long> pending = new HashMap<>();
+        private volatile boolean running;
+        private volatile WatchService watchService;
+        private Future<?> future;
+
+        DirectoryWatch(Path spool, Path done, Path failed) {
+            this.spool = spool;
+            this.done = done;
+            this.failed = failed;
+        }
+
+        void start() {
+            running = true;
+            future = executor.submit(this::watch);
+        }
+
+        boolean isRunning() {
+            return running && future != null && !future.isDone();
+        }
+
+        void stop() {
+            running = false;
+            WatchService watcher = watchService;
+            if (watcher != null) {
+                try {
+                    watcher.close();
+                } catch (IOException e) {
+                    LOG.debug("Could not close spool watch service", e);
+                }
+            }
+        }
+
+        private void watch() {
+            while (running) {
+                try (WatchService watcher = spool.getFileSystem().newWatchService()) {
+                    watchService = watcher;
+                    if (!running) {
+                        return;
+                    }
+                    Files.createDirectories(done);
+                    Files.createDirectories(failed);
+                    spool.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    // files dropped while nobody was watching
+                    scan();
+                    while (running) {
+                        WatchKey key = watcher.poll(settleMillis, TimeUnit.MILLISECONDS);
+                        if (key != null) {
+                            for (WatchEvent<?> event : key.pollEvents()) {
+                                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                                    scan();
+                                } else {
+                                    pending.put(spool.resolve((Path) event.context()), settleTime());
+                                }
+                            }
+                            if (!key.reset()) {
+                                throw new IOException("Spool directory " + spool + " is no longer accessible");
+                            }
+                        }
+                        process(settled());
+                    }
+                } catch (ClosedWatchServiceException e) {
+                    // stopped
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                } catch (IOException | RuntimeException e) {
+                    LOG.warn("Watching spool directory {} failed: {}", spool, e.getMessage());
+                    pause();
+                } finally {
+                    watchService = null;
+                }
+            }
+        }
+
+        private void scan() throws IOException {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(spool)) {
+                for (Path file : files) {
+                    pending.putIfAbsent(file, settleTime());
+                }
+            }
+        }
+
+        private long settleTime() {
+            return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settleMillis);
+        }
+
+        private List<Path> settled() {
+            long now = System.nanoTime();
+            List<Path> files = new ArrayList<>();
+            for (Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Path, Long> entry = it.next();
+                if (now - entry.getValue() >= 0) {
+                    it.remove();
+                    if (accept(entry.getKey())) {
+                        files.add(entry.getKey());
+                    }
+                }
+            }
+            return files;
+        }
+
+        /**
+         * Decode all settled files into the pipeline, then wait for their reports and move them out of the spool.
+         */
+        private void process(List<Path> files) {
+            if (files.isEmpty()) {
+                return;
+            }
+            List<SpoolFile> submitted = new ArrayList<>(files.size());
+            for (Path file : files) {
+                submitted.add(decode(file));
+            }
+            int sent = 0;
+            for (SpoolFile file : submitted) {
+                if (file.awaitSent()) {
+                    move(file.path, done);
+                    sent++;
+                } else if (file.unreadable) {
+                    move(file.path, failed);
+                } else {
+                    LOG.warn("Could not send all reports of {}, retrying in {} s", file.path.getFileName(), TimeUnit.MILLISECONDS.toSeconds(RETRY_DELAY_MILLIS));
+                    pending.put(file.path, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RETRY_DELAY_MILLIS));
+                }
+            }
+            LOG.info("Handled {} of {} spool files", sent, files.size());
+        }
+
+        private void pause() {
+            try {
+                Thread.sleep(RETRY_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * A spool file whose reports are in the pipeline.
+     */
+    private static class SpoolFile {
+
+        private final Path path;
+        private final MailTicket ticket = new MailTicket();
+        private boolean unreadable;
+
+        SpoolFile(Path path) {
+            this.path = path;
+        }
+
+        boolean awaitSent() {
+            try {
+                return ticket.awaitSent(SEND_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.mail;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local journal of the report attachments handled per mailbox, next to the {@link UidCheckpointStore} files, so that
+ * a mail downloaded again after a partial failure is not decoded and sent again from the start, see
+ * {@link MailProgress}. It also remembers the content hashes of the attachments whose reports were all sent, and an
+ * identical attachment in another mail is skipped.
+ * <p>
+ * Each mailbox has an append-only file of one line per change, forced to disk once per download and compacted when
+ * it has grown to several times its live entries. The entries of a mail are dropped when the mail is sent
+ * completely. At most {@value #MAX_MAILS} unfinished mails and {@value #MAX_HASHES} hashes are kept, the oldest are
+ * forgotten first.
+ */
+@ApplicationScoped
+public class AttachmentJournal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AttachmentJournal.class);
+
+    private static final String DATA_DIR_PROPERTY = "jboss.server.data.dir";
+    private static final String DIRECTORY = "siriusone";
+    private static final String SUFFIX = ".journal";
+
+    static final int MAX_MAILS = 10_000;
+    static final int MAX_HASHES = 100_000;
+    private static final int MIN_COMPACT_LINES = 1_000;
+
+    private static final char OFFSET = 'O';
+    private static final char DONE = 'D';
+    private static final char FINISHED = 'F';
+    private static final char HASH = 'H';
+
+    private final Map<String, MailboxJournal> journals = new ConcurrentHashMap<>();
+    private Path directory;
+
+    public AttachmentJournal() {
+    }
+
+    AttachmentJournal(Path directory) {
+        this.directory = directory;
+    }
+
+    @PostConstruct
+    public void init() {
+        String dataDir = System.getProperty(DATA_DIR_PROPERTY, System.getProperty("java.io.tmpdir"));
+        directory = Paths.get(dataDir, DIRECTORY);
+    }
+
+    /**
+     * @param mailKey identifies the mail in its mailbox across downloads, such as its UIDVALIDITY and UID
+     */
+    public MailProgress open(MailboxSettings mailbox, String mailKey) {
+        return new MailProgress(this, mailbox, mailKey, journal(mailbox).offsets(mailKey));
+    }
+
+    /**
+     * @return true when the reports of an attachment with this content were all sent before
+     */
+    public boolean isSent(MailboxSettings mailbox, String hash) {
+        return journal(mailbox).isSent(hash);
+    }
+
+    /**
+     * Record the progress of completed mails with a single write.
+     */
+    public void commit(MailboxSettings mailbox, List<MailProgress> mails) {
+        if (mails.isEmpty()) {
+            return;
+        }
+        try {
+            journal(mailbox).commit(mails);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write attachment journal of " + mailbox, e);
+        }
+    }
+
+    /**
+     * @return the SHA-256 of an attachment, in hex, of its file name as well since binary reports name their device
+     * only there
+     */
+    public static String hash(String fileName, byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(fileName.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest(content)) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private MailboxJournal journal(MailboxSettings mailbox) {
+        return journals.computeIfAbsent(mailbox.toString(), key -> new MailboxJournal(
+                directory.resolve(key.replaceAll("[^A-Za-z0-9@._-]", "_") + SUFFIX)));
+    }
+
+    /**
+     * The entries of one mailbox, loaded from its file on first use.
+     */
+    private static class MailboxJournal {
+
+        private final Path file;
+        private final Map<String, Map<String, Long>> mails = new LinkedHashMap<String, Map<String, Long>>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, Long>> eldest) {
+                return size() > MAX_MAILS;
+            }
+        };
+        private final Set<String> hashes = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_HASHES;
+            }
+        });
+        private boolean loaded;
+        private int lines;
+
+        MailboxJournal(Path file) {
+            this.file = file;
+        }
+
+        synchronized Map<String, Long> offsets(String mailKey) {
+            load();
+            return new HashMap<>(mails.getOrDefault(mailKey, Collections.emptyMap()));
+        }
+
+        synchronized boolean isSent(String hash) {
+            load();
+            return hashes.contains(hash);
+        }
+
+        synchronized void commit(List<MailProgress> progress) throws IOException {
+            load();
+            StringBuilder entries = new StringBuilder();
+            for (MailProgress mail : progress) {
+                String mailKey = mail.getMailKey();
+                for (MailProgress.Attachment attachment : mail.getAttachments()) {
+                    if (attachment.isSent() && attachment.getHash() != null && !hashes.contains(attachment.getHash())) {
+                        apply(entries, HASH, attachment.getHash());
+                    }
+                    if (mail.isSent()) {
+                        continue;
+                    }
+                    if (attachment.isSent()) {
+                        apply(entries, DONE, mailKey, attachment.getPart());
+                    } else if (attachment.sentOffset() > attachment.getStart()) {
+                        apply(entries, OFFSET, mailKey, attachment.getPart(), Long.toString(attachment.sentOffset()));
+                    }
+                }
+                if (mail.isSent() && mails.containsKey(mailKey)) {
+                    apply(entries, FINISHED, mailKey);
+                }
+            }
+            if (entries.length() == 0) {
+                return;
+            }
+            if (lines > MIN_COMPACT_LINES && lines > 4 * liveEntries()) {
+                compact();
+            } else {
+                append(entries);
+            }
+        }
+
+        private void apply(StringBuilder entries, char type, String... fields) {
+            entries.append(type);
+            for (String field : fields) {
+                entries.append(' ').append(field);
+            }
+            entries.append('\n');
+            apply(type, fields);
+            lines++;
+        }
+
+        private void apply(char type, String[] fields) {
+            switch (type) {
+                case OFFSET:
+                    mails.computeIfAbsent(fields[0], key -> new HashMap<>()).put(fields[1], Long.parseLong(fields[2]));
+                    break;
+                case DONE:
+                    mails.computeIfAbsent(fields[0], key -> new HashMap<>()).put(fields[1], MailProgress.DONE);
+                    break;
+                case FINISHED:
+                    mails.remove(fields[0]);
+                    break;
+                case HASH:
+                    hashes.add(fields[0]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown journal entry " + type);
+            }
+        }
+
+        private void load() {
+            if (loaded) {
+                return;
+            }
+            loaded = true;
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    String[] fields = line.split(" ");
+                    try {
+                        String[] values = new String[fields.length - 1];
+                        System.arraycopy(fields, 1, values, 0, values.length);
+                        apply(line.charAt(0), values);
+                        lines++;
+                    } catch (RuntimeException e) {
+                        // a line cut short by a crash, at worst some reports are decoded again
+                        LOG.warn("Ignoring corrupt attachment journal entry '{}' in {}", line, file);
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                // nothing journaled yet
+            } catch (IOException e) {
+                LOG.warn("Ignoring unreadable attachment journal {}", file, e);
+            }
+        }
+
+        private int liveEntries() {
+            return hashes.size() + mails.values().stream().mapToInt(Map::size).sum();
+        }
+
+        private void append(CharSequence entries) throws IOException {
+            Files.createDirectories(file.getParent());
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                write(channel, entries);
+            }
+        }
+
+        /**
+         * Rewrite the file with only the live entries, through a temporary file renamed over it.
+         */
+        private void compact() throws IOException {
+            StringBuilder entries = new StringBuilder();
+            for (String hash : hashes) {
+                entries.append(HASH).append(' ').append(hash).append('\n');
+            }
+            mails.forEach((mailKey, parts) -> parts.forEach((part, offset) -> {
+                if (offset == MailProgress.DONE) {
+                    entries.append(DONE).append(' ').append(mailKey).append(' ').append(part).append('\n');
+                } else {
+                    entries.append(OFFSET).append(' ').append(mailKey).append(' ').append(part).append(' ').append(offset).append('\n');
+                }
+            }));
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.createDirectories(file.getParent());
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(channel, entries);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lines = liveEntries();
+        }
+
+        private static void write(FileChannel channel, CharSequence entries) throws IOException {
+            ByteBuffer buffer = StandardCharsets.US_ASCII.encode(entries.toString());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.mail;
+
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.MailTicket;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.ReportChunk;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.ReportSink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The progress of one mail through a download, read from and committed to the {@link AttachmentJournal}. Each report
+ * attachment is identified by its MIME part number, {@code 2} or {@code 1.3} for nested parts, and its reports are
+ * tracked in the chunks they were submitted in, so that a retry of the mail skips the attachments that were sent
+ * completely and resumes the others after the last of their reports that were sent without a gap.
+ */
+public class MailProgress {
+
+    /**
+     * Offset of an attachment whose reports were all sent.
+     */
+    public static final long DONE = -1;
+
+    private final AttachmentJournal journal;
+    private final MailboxSettings mailbox;
+    private final String mailKey;
+    private final Map<String, Long> offsets;
+    private final List<Attachment> attachments = new ArrayList<>();
+    private boolean sent;
+
+    MailProgress(AttachmentJournal journal, MailboxSettings mailbox, String mailKey, Map<String, Long> offsets) {
+        this.journal = journal;
+        this.mailbox = mailbox;
+        this.mailKey = mailKey;
+        this.offsets = offsets;
+    }
+
+    String getMailKey() {
+        return mailKey;
+    }
+
+    /**
+     * @return the reports of an attachment already sent by earlier downloads, or {@link #DONE}
+     */
+    public long offset(String part) {
+        return offsets.getOrDefault(part, 0L);
+    }
+
+    /**
+     * @return true when an attachment with this content hash was sent completely before, in any mail of the mailbox
+     */
+    public boolean isSent(String hash) {
+        return journal.isSent(mailbox, hash);
+    }
+
+    /**
+     * Start tracking the reports of an attachment from its offset.
+     *
+     * @param sink where the reports go
+     * @param hash content hash of the attachment, or null when it was not hashed
+     */
+    public Attachment attachment(String part, ReportSink sink, String hash) {
+        Attachment attachment = new Attachment(part, offset(part), sink, hash);
+        attachments.add(attachment);
+        return attachment;
+    }
+
+    /**
+     * Record the outcome of the mail once its ticket has completed.
+     */
+    public void completed(boolean sent) {
+        this.sent = sent;
+    }
+
+    boolean isSent() {
+        return sent;
+    }
+
+    List<Attachment> getAttachments() {
+        return attachments;
+    }
+
+    /**
+     * The reports of one attachment, submitted through it to keep track of which were sent.
+     */
+    public static class Attachment implements ReportSink {
+
+        private final String part;
+        private final long start;
+        private final ReportSink sink;
+        private final String hash;
+        private final List<MailTicket> chunks = new ArrayList<>();
+        private final List<Long> ends = new ArrayList<>();
+        private long submitted;
+        private boolean decoded;
+
+        Attachment(String part, long start, ReportSink sink, String hash) {
+            this.part = part;
+            this.start = start;
+            this.sink = sink;
+            this.hash = hash;
+            this.submitted = start;
+        }
+
+        @Override
+        public void submit(ReportChunk chunk, MailTicket ticket) {
+            MailTicket chunkTicket = new MailTicket(ticket);
+            sink.submit(chunk, chunkTicket);
+            chunkTicket.seal();
+            submitted += chunk.size();
+            chunks.add(chunkTicket);
+            ends.add(submitted);
+        }
+
+        /**
+         * All reports of the attachment were decoded and submitted.
+         */
+        public void decoded() {
+            decoded = true;
+        }
+
+        String getPart() {
+            return part;
+        }
+
+        String getHash() {
+            return hash;
+        }
+
+        long getStart() {
+            return start;
+        }
+
+        boolean isSent() {
+            return decoded && chunks.stream().allMatch(MailTicket::isSent);
+        }
+
+        /**
+         * @return the reports sent without a gap from the start of the attachment
+         */
+        long sentOffset() {
+            long offset = start;
+            for (int i = 0; i < chunks.size() && chunks.get(i).isSent(); i++) {
+                offset = ends.get(i);
+            }
+            return offset;
+        }
+    }
+}
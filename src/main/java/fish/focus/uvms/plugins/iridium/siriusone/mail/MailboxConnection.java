@@ -0,0 +1,168 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.mail;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.mail.Folder;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Store;
+import java.util.function.LongSupplier;
+
+/**
+ * An IMAP store and folder kept open between polls.
+ * <p>
+ * The connection is checked before it is handed out, {@link Folder#isOpen()} and {@link Store#isConnected()} send a
+ * NOOP to the server when the connection has been idle. A dead connection is closed and opened again, failed
+ * attempts are retried with an exponential backoff so that a broken mailbox does not hit the login rate limit of
+ * the provider. Not thread safe.
+ */
+public class MailboxConnection implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MailboxConnection.class);
+
+    static final long MIN_BACKOFF_MILLIS = 5_000;
+    static final long MAX_BACKOFF_MILLIS = 300_000;
+
+    private final StoreConnector connector;
+    private final LongSupplier clock;
+
+    private MailboxSettings settings;
+    private Store store;
+    private Folder folder;
+    private int failures;
+    private long retryAt;
+
+    public MailboxConnection() {
+        this(MailboxSettings.READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param readTimeoutMillis socket read timeout, a connection waiting in IMAP IDLE needs one longer than the
+     *                          interval it is kept alive with
+     */
+    public MailboxConnection(long readTimeoutMillis) {
+        this(settings -> connectStore(settings, readTimeoutMillis), System::currentTimeMillis);
+    }
+
+    MailboxConnection(StoreConnector connector, LongSupplier clock) {
+        this.connector = connector;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the open folder of the mailbox, connecting first when there is no live connection or when the
+     * settings differ from the ones the current connection was opened with
+     * @throws MessagingException when connecting fails or a previous failure is still backed off
+     */
+    public Folder open(MailboxSettings settings) throws MessagingException {
+        if (!settings.equals(this.settings)) {
+            if (this.settings != null) {
+                LOG.info("Mailbox settings changed, reconnecting to {}", settings);
+            }
+            close();
+            this.settings = settings;
+            failures = 0;
+            retryAt = 0;
+        }
+        if (folder != null && isAlive()) {
+            return folder;
+        }
+        close();
+
+        long now = clock.getAsLong();
+        if (now < retryAt) {
+            throw new MessagingException("Not reconnecting to " + settings + " for another " + (retryAt - now) + " ms after " + failures + " failed attempts");
+        }
+        try {
+            store = connector.connect(settings);
+            folder = openFolder(store, settings.getSubfolder());
+            failures = 0;
+            retryAt = 0;
+            LOG.info("Connected to {}", settings);
+            return folder;
+        } catch (MessagingException | RuntimeException e) {
+            close();
+            failures++;
+            retryAt = now + backoff(failures);
+            throw e;
+        }
+    }
+
+    public boolean isOpen() {
+        return folder != null;
+    }
+
+    /**
+     * Close the folder and the store, the next {@link #open(MailboxSettings)} connects again.
+     */
+    @Override
+    public void close() {
+        if (folder != null) {
+            try {
+                if (folder.isOpen()) {
+                    folder.close(false);
+                }
+            } catch (MessagingException | RuntimeException e) {
+                LOG.debug("Could not close folder", e);
+            }
+            folder = null;
+        }
+        if (store != null) {
+            try {
+                store.close();
+            } catch (MessagingException | RuntimeException e) {
+                LOG.debug("Could not close store", e);
+            }
+            store = null;
+        }
+    }
+
+    static long backoff(int failures) {
+        return Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(failures - 1, 16));
+    }
+
+    private boolean isAlive() {
+        try {
+            return folder.isOpen() && store.isConnected();
+        } catch (RuntimeException e) {
+            LOG.debug("Connection check failed", e);
+            return false;
+        }
+    }
+
+    private static Folder openFolder(Store store, String subfolder) throws MessagingException {
+        Folder inbox = store.getFolder("INBOX");
+
+        if (subfolder != null) {
+            inbox = inbox.getFolder(subfolder);
+        }
+        inbox.open(Folder.READ_WRITE);
+        return inbox;
+    }
+
+    private static Store connectStore(MailboxSettings settings, long readTimeoutMillis) throws MessagingException {
+        Session session = Session.getInstance(settings.sessionProperties(readTimeoutMillis), null);
+
+        Store store = session.getStore("imap");
+        store.connect(settings.getHost(), settings.getUsername(), settings.getPassword());
+
+        return store;
+    }
+
+    @FunctionalInterface
+    interface StoreConnector {
+        Store connect(MailboxSettings settings) throws MessagingException;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.mail;
+
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.mail.Folder;
+import javax.mail.MessagingException;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Application wide connections to the report mailboxes, replacing the connect and login on every poll. Each mailbox
+ * source has its own connection, so a slow or failing mailbox neither blocks nor backs off the others.
+ * <p>
+ * A poll holds the connection of its source while it uses the folder. {@link #invalidate()} does not wait for it,
+ * a connection in use is closed by its poll when the poll is done.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MailboxConnectionManager {
+
+    private final Map<String, Source> connections = new ConcurrentHashMap<>();
+    private final Supplier<MailboxConnection> connectionFactory;
+
+    public MailboxConnectionManager() {
+        this(MailboxConnection::new);
+    }
+
+    MailboxConnectionManager(Supplier<MailboxConnection> connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * Run a task with the open report folder of the mailbox source, reconnected when needed and with the current
+     * settings. The folder stays open until the task returns.
+     */
+    public <T> T withFolder(MailboxSettings settings, FolderTask<T> task) throws IOException, MessagingException {
+        Source source = connections.computeIfAbsent(settings.getSource(), name -> new Source(connectionFactory.get()));
+        source.inUse.acquireUninterruptibly();
+        try {
+            return task.run(source.connection.open(settings));
+        } finally {
+            source.inUse.release();
+            source.closeIfRetired();
+        }
+    }
+
+    /**
+     * Drop all connections, the next {@link #withFolder(MailboxSettings, FolderTask)} of each source connects again.
+     */
+    public void invalidate() {
+        for (String name : connections.keySet()) {
+            Source source = connections.remove(name);
+            if (source != null) {
+                source.retired = true;
+                source.closeIfRetired();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        invalidate();
+    }
+
+    @FunctionalInterface
+    public interface FolderTask<T> {
+        T run(Folder folder) throws IOException, MessagingException;
+    }
+
+    private static final class Source {
+
+        private final MailboxConnection connection;
+        // not reentrant, so that an invalidate from within a poll leaves the connection to the poll
+        private final Semaphore inUse = new Semaphore(1);
+        private volatile boolean retired;
+
+        private Source(MailboxConnection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Close a dropped connection unless a poll uses it, which then closes it once it has released it.
+         */
+        private void closeIfRetired() {
+            if (retired && inUse.tryAcquire()) {
+                try {
+                    connection.close();
+                } finally {
+                    inUse.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.mail;
+
+import fish.focus.uvms.plugins.iridium.StartupBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * The plugin settings needed to connect to a mailbox the SiriusOne reports are delivered to.
+ * <p>
+ * Without the {@code MAILBOXES} setting there is a single mailbox configured by the plain keys, {@code MAILHOST},
+ * {@code USERNAME} and so on. {@code MAILBOXES} lists the ids of several mailbox sources instead, for example
+ * {@code fleet1,fleet2}, each configured by keys prefixed with its id, {@code fleet1.MAILHOST},
+ * {@code fleet1.SUBFOLDER}. A source can also override other settings such as {@code fleet1.SYNC_MODE}, see
+ * {@link #getSetting(StartupBean, String, String)}.
+ */
+public class MailboxSettings {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MailboxSettings.class);
+
+    public static final String MAILBOXES = "MAILBOXES";
+    public static final String DEFAULT_SOURCE = "";
+
+    public static final String HOST = "MAILHOST";
+    public static final String PORT = "MAILPORT";
+    public static final String USERNAME = "USERNAME";
+    public static final String PASSWORD = "PSW";
+    public static final String SUBFOLDER = "SUBFOLDER";
+
+    private static final List<String> KEYS = Arrays.asList(MAILBOXES, HOST, PORT, USERNAME, PASSWORD, SUBFOLDER);
+    private static final Pattern SOURCE_ID = Pattern.compile("[A-Za-z0-9_-]+");
+
+    static final long CONNECTION_TIMEOUT_MILLIS = 30_000;
+    static final long READ_TIMEOUT_MILLIS = 60_000;
+    private static final int FETCH_SIZE = 65_536;
+
+    private final String source;
+    private final String host;
+    private final String port;
+    private final String username;
+    private final String password;
+    private final String subfolder;
+
+    public MailboxSettings(String host, String port, String username, String password, String subfolder) {
+        this(DEFAULT_SOURCE, host, port, username, password, subfolder);
+    }
+
+    public MailboxSettings(String source, String host, String port, String username, String password, String subfolder) {
+        this.source = source;
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.subfolder = subfolder;
+    }
+
+    /**
+     * @return the settings of every configured mailbox source
+     */
+    public static List<MailboxSettings> all(StartupBean startupBean) {
+        List<MailboxSettings> mailboxes = new ArrayList<>();
+        for (String source : sources(startupBean)) {
+            mailboxes.add(from(startupBean, source));
+        }
+        return mailboxes;
+    }
+
+    /**
+     * @return the ids listed in {@code MAILBOXES}, or only {@link #DEFAULT_SOURCE} when it is empty
+     */
+    public static List<String> sources(StartupBean startupBean) {
+        String mailboxes = startupBean.getSetting(MAILBOXES);
+        if (mailboxes == null || mailboxes.trim().isEmpty()) {
+            return Collections.singletonList(DEFAULT_SOURCE);
+        }
+        List<String> sources = new ArrayList<>();
+        for (String source : mailboxes.split(",")) {
+            source = source.trim();
+            if (source.isEmpty()) {
+                continue;
+            }
+            if (!SOURCE_ID.matcher(source).matches()) {
+                LOG.warn("Ignoring mailbox source '{}', ids may only contain letters, digits, '_' and '-'", source);
+            } else if (!sources.contains(source)) {
+                sources.add(source);
+            }
+        }
+        return sources;
+    }
+
+    public static MailboxSettings from(StartupBean startupBean, String source) {
+        String prefix = prefix(source);
+        return new MailboxSettings(source, startupBean.getSetting(prefix + HOST), startupBean.getSetting(prefix + PORT),
+                startupBean.getSetting(prefix + USERNAME), startupBean.getSetting(prefix + PASSWORD),
+                startupBean.getSetting(prefix + SUBFOLDER));
+    }
+
+    /**
+     * @return the setting of a mailbox source, or the plugin wide setting when the source does not override it
+     */
+    public static String getSetting(StartupBean startupBean, String source, String key) {
+        String value = source.isEmpty() ? null : startupBean.getSetting(prefix(source) + key);
+        return value != null ? value : startupBean.getSetting(key);
+    }
+
+    private static String prefix(String source) {
+        return source.isEmpty() ? "" : source + ".";
+    }
+
+    /**
+     * @param key a namespaced setting key as received in a SetConfig request
+     */
+    public static boolean isMailboxSetting(String key) {
+        if (key == null) {
+            return false;
+        }
+        String name = key.substring(key.lastIndexOf('.') + 1);
+        return KEYS.contains(name);
+    }
+
+    /**
+     * Session properties for the IMAP store, system wide {@code mail.*} properties apply unless overridden here.
+     */
+    Properties sessionProperties(long readTimeoutMillis) {
+        Properties props = new Properties(System.getProperties());
+        props.setProperty("mail.imap.starttls.enable", "true");
+        if (port != null) {
+            props.setProperty("mail.imap.port", port);
+        }
+        props.setProperty("mail.imap.connectiontimeout", Long.toString(CONNECTION_TIMEOUT_MILLIS));
+        props.setProperty("mail.imap.timeout", Long.toString(readTimeoutMillis));
+        // attachments are fetched by section in chunks and decoded while they stream in
+        props.setProperty("mail.imap.partialfetch", "true");
+        props.setProperty("mail.imap.fetchsize", Integer.toString(FETCH_SIZE));
+        return props;
+    }
+
+    /**
+     * @return the id of the mailbox source, {@link #DEFAULT_SOURCE} for the unprefixed settings
+     */
+    public String getSource() {
+        return source;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getPort() {
+        return port;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public String getSubfolder() {
+        return subfolder;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        MailboxSettings that = (MailboxSettings) o;
+        return Objects.equals(source, that.source)
+                && Objects.equals(host, that.host)
+                && Objects.equals(port, that.port)
+                && Objects.equals(username, that.username)
+                && Objects.equals(password, that.password)
+                && Objects.equals(subfolder, that.subfolder);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(source, host, port, username, password, subfolder);
+    }
+
+    @Override
+    public String toString() {
+        return username + "@" + host + ":" + port + "/INBOX" + (subfolder != null ? "/" + subfolder : "");
+    }
+}
@@ -0,0 +1,113 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.mail;
+
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.mail.Flags;
+import javax.mail.Flags.Flag;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Store;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bulk updates of the mails handled in a poll, one STORE command for all of them instead of one per mail.
+ * <p>
+ * With the setting {@code ARCHIVE_FOLDER}, for example {@code Archive/SiriusOne}, handled mails are moved into a
+ * folder per month below it, {@code Archive/SiriusOne/2020/09}, by the date the server received them. The path
+ * is relative to the root of the store with {@code /} as separator. Mails are moved with the IMAP MOVE extension
+ * when the server supports it, otherwise they are copied, flagged as deleted and expunged by UID with UIDPLUS.
+ * Without UIDPLUS the copied mails are left flagged as deleted for the next expunge of any client, as a plain
+ * EXPUNGE would also remove the mails other clients flagged as deleted.
+ */
+public class ProcessedMails {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProcessedMails.class);
+
+    public static final String ARCHIVE_FOLDER = "ARCHIVE_FOLDER";
+
+    private ProcessedMails() {
+    }
+
+    public static void setSeen(Folder folder, List<Message> messages, boolean seen) throws MessagingException {
+        if (!messages.isEmpty()) {
+            folder.setFlags(messages.toArray(new Message[0]), new Flags(Flag.SEEN), seen);
+        }
+    }
+
+    /**
+     * Move the messages into the monthly folders below {@code archiveFolder}, creating them when needed. Messages
+     * that cannot be moved stay where they are.
+     */
+    public static void archive(Folder folder, List<Message> messages, String archiveFolder) {
+        Map<String, List<Message>> partitions = new TreeMap<>();
+        for (Message message : messages) {
+            try {
+                partitions.computeIfAbsent(partition(archiveFolder, message.getReceivedDate()), p -> new ArrayList<>()).add(message);
+            } catch (MessagingException e) {
+                LOG.warn("Not archiving message without received date", e);
+            }
+        }
+        for (Map.Entry<String, List<Message>> partition : partitions.entrySet()) {
+            try {
+                Folder target = openArchive(folder.getStore(), partition.getKey(), folder.getSeparator());
+                move(folder, partition.getValue().toArray(new Message[0]), target);
+                LOG.info("Archived {} messages to {}", partition.getValue().size(), target.getFullName());
+            } catch (MessagingException | RuntimeException e) {
+                LOG.warn("Could not archive {} messages to {}", partition.getValue().size(), partition.getKey(), e);
+            }
+        }
+    }
+
+    static String partition(String archiveFolder, Date receivedDate) {
+        ZonedDateTime received = (receivedDate != null ? receivedDate.toInstant() : new Date().toInstant()).atZone(ZoneOffset.UTC);
+        return String.format("%s/%04d/%02d", archiveFolder, received.getYear(), received.getMonthValue());
+    }
+
+    private static Folder openArchive(Store store, String path, char separator) throws MessagingException {
+        Folder target = store.getFolder(path.replace('/', separator));
+        if (!target.exists() && !target.create(Folder.HOLDS_MESSAGES)) {
+            throw new MessagingException("Could not create " + target.getFullName());
+        }
+        return target;
+    }
+
+    private static void move(Folder folder, Message[] messages, Folder target) throws MessagingException {
+        if (hasCapability(folder, "MOVE")) {
+            ((IMAPFolder) folder).moveMessages(messages, target);
+            return;
+        }
+        folder.copyMessages(messages, target);
+        folder.setFlags(messages, new Flags(Flag.DELETED), true);
+        if (hasCapability(folder, "UIDPLUS")) {
+            ((IMAPFolder) folder).expunge(messages);
+        } else {
+            LOG.info("Server supports neither MOVE nor UIDPLUS, leaving {} archived messages flagged as deleted in {}",
+                    messages.length, folder.getFullName());
+        }
+    }
+
+    private static boolean hasCapability(Folder folder, String capability) throws MessagingException {
+        return folder instanceof IMAPFolder && ((IMAPStore) folder.getStore()).hasCapability(capability);
+    }
+}
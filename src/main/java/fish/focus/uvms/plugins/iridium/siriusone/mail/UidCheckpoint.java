@@ -0,0 +1,91 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.mail;
+
+/**
+ * Position of the incremental sync in a folder: every message up to and including {@code lastUid} has been
+ * processed. UIDs are only comparable while the UIDVALIDITY of the folder is unchanged. When the sync stopped at a
+ * failed message, its UID and the number of downloads that failed on it are kept as well.
+ * <p>
+ * The first sync of a folder only takes its unseen messages. When it fails on one of them, the sync continues below
+ * that message, and up to the newest message of the first sync the messages already seen are skipped, so that the
+ * mails handled before UID mode or read by a person are not sent again.
+ */
+public class UidCheckpoint {
+
+    private final long uidValidity;
+    private final long lastUid;
+    private final long failedUid;
+    private final int attempts;
+    private final long unseenOnlyUpTo;
+
+    public UidCheckpoint(long uidValidity, long lastUid) {
+        this(uidValidity, lastUid, 0, 0, 0);
+    }
+
+    public UidCheckpoint(long uidValidity, long lastUid, long failedUid, int attempts) {
+        this(uidValidity, lastUid, failedUid, attempts, 0);
+    }
+
+    /**
+     * @param unseenOnlyUpTo the newest message of the first sync, dropped once {@code lastUid} reaches it
+     */
+    public UidCheckpoint(long uidValidity, long lastUid, long failedUid, int attempts, long unseenOnlyUpTo) {
+        this.uidValidity = uidValidity;
+        this.lastUid = lastUid;
+        this.failedUid = failedUid;
+        this.attempts = attempts;
+        this.unseenOnlyUpTo = unseenOnlyUpTo > lastUid ? unseenOnlyUpTo : 0;
+    }
+
+    public long getUidValidity() {
+        return uidValidity;
+    }
+
+    public long getLastUid() {
+        return lastUid;
+    }
+
+    /**
+     * @return the UID of the message the sync stopped at, 0 when it did not stop at a failed message
+     */
+    public long getFailedUid() {
+        return failedUid;
+    }
+
+    /**
+     * @return the number of downloads that failed on {@link #getFailedUid()}
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return the UID up to which seen messages are skipped, 0 when none are
+     */
+    public long getUnseenOnlyUpTo() {
+        return unseenOnlyUpTo;
+    }
+
+    /**
+     * @return the failed downloads of the message so far, including the one that failed now
+     */
+    public int attemptsAfterFailureOf(long uid) {
+        return uid == failedUid ? attempts + 1 : 1;
+    }
+
+    @Override
+    public String toString() {
+        return "UIDVALIDITY " + uidValidity + " UID " + lastUid + (failedUid > 0 ? " failed UID " + failedUid + " " + attempts + " times" : "")
+                + (unseenOnlyUpTo > 0 ? " unseen only up to UID " + unseenOnlyUpTo : "");
+    }
+}
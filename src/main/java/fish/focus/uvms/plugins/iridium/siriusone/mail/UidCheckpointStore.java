@@ -0,0 +1,112 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.mail;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Local files holding the {@link UidCheckpoint} of each mailbox, one file per mailbox in the {@code siriusone}
+ * directory of the server data directory, or of the temporary directory outside WildFly.
+ * <p>
+ * A checkpoint is written to a temporary file, forced to disk and renamed over the previous one, so a crash leaves
+ * either the old or the new checkpoint.
+ */
+@ApplicationScoped
+public class UidCheckpointStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UidCheckpointStore.class);
+
+    private static final String DATA_DIR_PROPERTY = "jboss.server.data.dir";
+    private static final String DIRECTORY = "siriusone";
+    private static final String SUFFIX = ".uid";
+
+    private Path directory;
+
+    public UidCheckpointStore() {
+    }
+
+    UidCheckpointStore(Path directory) {
+        this.directory = directory;
+    }
+
+    @PostConstruct
+    public void init() {
+        String dataDir = System.getProperty(DATA_DIR_PROPERTY, System.getProperty("java.io.tmpdir"));
+        directory = Paths.get(dataDir, DIRECTORY);
+        LOG.info("UID checkpoints are stored in {}", directory);
+    }
+
+    /**
+     * @return the stored checkpoint, or null when there is none or it cannot be read
+     */
+    public UidCheckpoint load(MailboxSettings mailbox) {
+        Path file = file(mailbox);
+        try {
+            String[] fields = new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim().split(" ");
+            if (fields.length >= 5) {
+                return new UidCheckpoint(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]), Integer.parseInt(fields[3]),
+                        Long.parseLong(fields[4]));
+            }
+            if (fields.length >= 4) {
+                return new UidCheckpoint(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]), Integer.parseInt(fields[3]));
+            }
+            return new UidCheckpoint(Long.parseLong(fields[0]), Long.parseLong(fields[1]));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Ignoring unreadable UID checkpoint {}", file, e);
+            return null;
+        }
+    }
+
+    public void save(MailboxSettings mailbox, UidCheckpoint checkpoint) {
+        Path file = file(mailbox);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        String line = checkpoint.getUidValidity() + " " + checkpoint.getLastUid();
+        if (checkpoint.getFailedUid() > 0 || checkpoint.getUnseenOnlyUpTo() > 0) {
+            line += " " + checkpoint.getFailedUid() + " " + checkpoint.getAttempts();
+        }
+        if (checkpoint.getUnseenOnlyUpTo() > 0) {
+            line += " " + checkpoint.getUnseenOnlyUpTo();
+        }
+        byte[] content = (line + "\n").getBytes(StandardCharsets.US_ASCII);
+        try {
+            Files.createDirectories(directory);
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.write(ByteBuffer.wrap(content));
+                channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not save UID checkpoint " + file, e);
+        }
+    }
+
+    private Path file(MailboxSettings mailbox) {
+        return directory.resolve(mailbox.toString().replaceAll("[^A-Za-z0-9@._-]", "_") + SUFFIX);
+    }
+}
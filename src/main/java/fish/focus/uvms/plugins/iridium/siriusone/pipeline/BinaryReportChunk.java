@@ -0,0 +1,47 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.pipeline;
+
+import fish.focus.schema.exchange.movement.v1.SetReportMovementType;
+import fish.focus.uvms.plugins.iridium.mapper.MovementMapper;
+import fish.focus.uvms.plugins.iridium.siriusone.SiriusOneReportBatch;
+import fish.focus.uvms.plugins.iridium.siriusone.SiriusOneTime;
+
+/**
+ * A batch of reports decoded from a binary attachment of one device.
+ */
+public class BinaryReportChunk implements ReportChunk {
+
+    private final SiriusOneReportBatch batch;
+    private final long serialNumber;
+
+    public BinaryReportChunk(SiriusOneReportBatch batch, long serialNumber) {
+        this.batch = batch;
+        this.serialNumber = serialNumber;
+    }
+
+    @Override
+    public int size() {
+        return batch.size();
+    }
+
+    @Override
+    public long key(int index) {
+        return ReportDeduplicator.key(serialNumber, SiriusOneTime.toEpochMillis(batch.getTime(index)) / 1000,
+                batch.getLatitude(index), batch.getLongitude(index));
+    }
+
+    @Override
+    public SetReportMovementType map(int index, String pluginName) {
+        return MovementMapper.mapToSetReportMovementType(batch, index, serialNumber, pluginName);
+    }
+}
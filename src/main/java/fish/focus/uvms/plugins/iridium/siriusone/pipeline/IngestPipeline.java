@@ -0,0 +1,559 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.pipeline;
+
+import fish.focus.uvms.plugins.iridium.StartupBean;
+import fish.focus.uvms.plugins.iridium.service.ExchangeService;
+import fish.focus.uvms.plugins.iridium.siriusone.MBeans;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.jms.CompletionListener;
+import javax.jms.Message;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Staged handling of decoded reports, so that the download thread only fetches and decodes attachments.
+ * <p>
+ * The download thread submits {@link ReportChunk}s to a pool of mapping workers, which map and marshal each report
+ * into a movement report request, and hand the requests to a pool of senders, which send them to Exchange. Both
+ * stages have a bounded queue, a full queue blocks the submitting thread, so a slow Exchange queue slows the mapping
+ * workers and in turn the download. The outcome of each report is recorded on the {@link MailTicket} of its mail.
+ * <p>
+ * With the setting {@code BATCH_SIZE} above one a sender collects up to that many requests, waiting at most
+ * {@code BATCH_LINGER_MILLIS} for more after the first, and sends them in one transaction, so a backlog costs a
+ * commit per batch instead of one per report. A failed batch fails all its reports.
+ * <p>
+ * With {@code SEND_MODE=ASYNC} the senders do not wait for the broker: each report is handed to the provider with a
+ * {@link CompletionListener}, which completes it on the ticket of its mail once the broker has acknowledged it, so the
+ * mail is still only marked as seen after all its reports are safely on the queue. At most {@code SEND_WINDOW}
+ * reports are unacknowledged at a time, a sender waits for room before the next send. Batching does not apply.
+ * <p>
+ * Reports sent within the last day are remembered by the {@link ReportDeduplicator}, the mapping workers drop a report
+ * sent before without mapping and marshalling it, and count it as handled.
+ */
+@ApplicationScoped
+public class IngestPipeline implements ReportSink, IngestPipelineMXBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IngestPipeline.class);
+
+    public static final String OBJECT_NAME = "fish.focus.uvms.plugins.iridium.siriusone:type=IngestPipeline";
+
+    static final int MAP_WORKERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    static final int MAP_QUEUE_CAPACITY = 16;
+    static final int SEND_WORKERS = 4;
+    static final int SEND_QUEUE_CAPACITY = 1024;
+    static final int MAX_BATCH_SIZE = 500;
+    static final long DEFAULT_LINGER_MILLIS = 20;
+    static final int DEFAULT_SEND_WINDOW = 256;
+    static final int DEDUP_CAPACITY = 1 << 18;
+    static final long DEDUP_TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    public static final String BATCH_SIZE = "BATCH_SIZE";
+    public static final String BATCH_LINGER_MILLIS = "BATCH_LINGER_MILLIS";
+    public static final String SEND_MODE = "SEND_MODE";
+    public static final String SEND_MODE_ASYNC = "ASYNC";
+    public static final String SEND_WINDOW = "SEND_WINDOW";
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+    private static final long SENDER_POLL_MILLIS = 100;
+
+    private static final long QUEUE_OFFER_MILLIS = 100;
+
+    /**
+     * Backpressure: wait for room in the queue instead of rejecting the task. A task queued while the stage shuts
+     * down may find no worker left to run it, so it is taken back and rejected.
+     */
+    static final RejectedExecutionHandler BLOCK_WHEN_FULL = (task, executor) -> {
+        try {
+            do {
+                if (executor.isShutdown()) {
+                    throw new RejectedExecutionException("Ingest pipeline is stopped");
+                }
+            } while (!executor.getQueue().offer(task, QUEUE_OFFER_MILLIS, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the ingest pipeline", e);
+        }
+        if (executor.isShutdown() && executor.getQueue().remove(task)) {
+            throw new RejectedExecutionException("Ingest pipeline is stopped");
+        }
+    };
+
+    @Resource
+    ManagedThreadFactory threadFactory;
+
+    @Inject
+    StartupBean startupBean;
+
+    @Inject
+    ExchangeService exchange;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedReports = new LongAdder();
+    private final ReportDeduplicator recent = new ReportDeduplicator(DEDUP_CAPACITY, DEDUP_TTL_MILLIS);
+    private final InFlightWindow inFlight = new InFlightWindow();
+    // tickets of duplicates waiting for the outcome of the report claimed before them, guarded by recent
+    private final Map<Long, List<MailTicket>> waiting = new HashMap<>();
+
+    private ThreadPoolExecutor mappers;
+    private ThreadPoolExecutor senders;
+    private BlockingQueue<PendingReport> outgoing;
+    private volatile boolean stopping;
+    // the senders were stopped without sending the queue
+    private volatile boolean abandoned;
+
+    @PostConstruct
+    public void init() {
+        start(threadFactory);
+        MBeans.register(this, OBJECT_NAME);
+    }
+
+    void start(ThreadFactory threads) {
+        stopping = false;
+        abandoned = false;
+        outgoing = new ArrayBlockingQueue<>(SEND_QUEUE_CAPACITY);
+        mappers = stage(MAP_WORKERS, MAP_QUEUE_CAPACITY, threads);
+        // the senders take requests from the outgoing queue themselves, to batch them
+        senders = new ThreadPoolExecutor(SEND_WORKERS, SEND_WORKERS, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), threads);
+        for (int i = 0; i < SEND_WORKERS; i++) {
+            senders.execute(this::sendLoop);
+        }
+        LOG.info("Ingest pipeline started with {} mapping workers and {} senders", MAP_WORKERS, SEND_WORKERS);
+    }
+
+    private static ThreadPoolExecutor stage(int workers, int capacity, ThreadFactory threads) {
+        ThreadPoolExecutor stage = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity), threads, BLOCK_WHEN_FULL);
+        stage.prestartAllCoreThreads();
+        return stage;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        MBeans.unregister(OBJECT_NAME);
+        stop();
+    }
+
+    void stop() {
+        // mapping workers first, they still hand requests to the senders
+        mappers.shutdown();
+        if (!awaitTermination(mappers)) {
+            failDropped(mappers.shutdownNow());
+        }
+        // the senders finish once the outgoing queue is empty
+        stopping = true;
+        senders.shutdown();
+        if (!awaitTermination(senders)) {
+            abandoned = true;
+            senders.shutdownNow();
+        }
+        failQueued();
+        try {
+            if (!inFlight.awaitEmpty(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT_SECONDS))) {
+                LOG.warn("{} reports still unacknowledged by the broker after {} seconds", inFlight.size(), SHUTDOWN_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return false when the stage did not finish in time and its queued reports are to be dropped
+     */
+    private static boolean awaitTermination(ExecutorService stage) {
+        try {
+            if (stage.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                return true;
+            }
+            LOG.warn("Ingest pipeline did not finish within {} seconds, dropping queued reports", SHUTDOWN_TIMEOUT_SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Fail the reports of the mapping tasks that never ran, so that their mails do not wait for them.
+     */
+    private void failDropped(List<Runnable> tasks) {
+        for (Runnable task : tasks) {
+            if (task instanceof MapTask) {
+                MapTask dropped = (MapTask) task;
+                int reports = dropped.chunk.size();
+                failed.add(reports);
+                dropped.ticket.fail();
+                dropped.ticket.complete(reports);
+            }
+        }
+    }
+
+    /**
+     * Fail the reports left in the outgoing queue when the senders are gone.
+     */
+    private void failQueued() {
+        PendingReport report;
+        while ((report = outgoing.poll()) != null) {
+            failed(report.ticket, report.key);
+        }
+    }
+
+    /**
+     * Hand a chunk of decoded reports to the mapping workers, blocking while their queue is full.
+     */
+    @Override
+    public void submit(ReportChunk chunk, MailTicket ticket) {
+        int reports = chunk.size();
+        if (reports == 0) {
+            return;
+        }
+        String pluginName = startupBean.getRegisterClassName() + "." + startupBean.getApplicationName();
+        ticket.add(reports);
+        try {
+            mappers.execute(new MapTask(chunk, pluginName, ticket));
+        } catch (RejectedExecutionException e) {
+            LOG.error("Could not submit {} reports", reports, e);
+            failed.add(reports);
+            ticket.fail();
+            ticket.complete(reports);
+        }
+    }
+
+    private void map(ReportChunk chunk, String pluginName, MailTicket ticket) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < chunk.size(); i++) {
+            long key = chunk.key(i);
+            if (!claim(key, now, ticket)) {
+                continue;
+            }
+            String request;
+            try {
+                request = exchange.createMovementReportRequest(chunk.map(i, pluginName));
+            } catch (RuntimeException e) {
+                LOG.error("Could not map report", e);
+                failed(ticket, key);
+                continue;
+            }
+            try {
+                outgoing.put(new PendingReport(request, key, ticket));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.error("Interrupted while queueing report for Exchange");
+                failed(ticket, key);
+            }
+        }
+    }
+
+    private void sendLoop() {
+        List<PendingReport> batch = new ArrayList<>();
+        try {
+            // a send may swallow the interrupt of shutdownNow, so the senders also look at the flag
+            while (!abandoned) {
+                PendingReport first = outgoing.poll(SENDER_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (stopping) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                if (isAsync()) {
+                    inFlight.acquire(sendWindow());
+                    sendAsync(first);
+                } else {
+                    int batchSize = batchSize();
+                    if (batchSize > 1) {
+                        collect(batch, batchSize, lingerMillis());
+                    }
+                    send(batch);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            for (PendingReport report : batch) {
+                failed(report.ticket, report.key);
+            }
+        }
+        // shut down without sending the queue
+        failQueued();
+    }
+
+    /**
+     * Add queued requests to the batch until it is full or the linger time after its first request is over.
+     */
+    private void collect(List<PendingReport> batch, int batchSize, long lingerMillis) throws InterruptedException {
+        outgoing.drainTo(batch, batchSize - batch.size());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        while (batch.size() < batchSize) {
+            long wait = deadline - System.nanoTime();
+            PendingReport next = wait > 0 ? outgoing.poll(wait, TimeUnit.NANOSECONDS) : null;
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            outgoing.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    private void send(List<PendingReport> batch) {
+        try {
+            if (batch.size() == 1) {
+                exchange.sendMovementReportRequest(batch.get(0).request);
+            } else {
+                List<String> requests = new ArrayList<>(batch.size());
+                for (PendingReport report : batch) {
+                    requests.add(report.request);
+                }
+                exchange.sendMovementReportRequests(requests);
+            }
+            LOG.debug("Sent {} movements to Exchange", batch.size());
+        } catch (Exception e) {
+            LOG.error("Could not send {} reports to Exchange", batch.size(), e);
+            for (PendingReport report : batch) {
+                failed(report.ticket, report.key);
+            }
+            return;
+        }
+        sent.add(batch.size());
+        batches.increment();
+        batchedReports.add(batch.size());
+        for (PendingReport report : batch) {
+            sent(report.ticket, report.key);
+        }
+    }
+
+    /**
+     * @return true when the report is to be sent, false when it was sent before or waits for an earlier copy of it
+     *         that is being sent
+     */
+    private boolean claim(long key, long now, MailTicket ticket) {
+        synchronized (recent) {
+            switch (recent.claim(key, now)) {
+                case NEW:
+                    return true;
+                case SENDING:
+                    waiting.computeIfAbsent(key, k -> new ArrayList<>()).add(ticket);
+                    return false;
+                default:
+                    break;
+            }
+        }
+        // sent before, by an earlier download of the same mail or by another mail
+        duplicates.increment();
+        ticket.complete(1);
+        return false;
+    }
+
+    private void sent(MailTicket ticket, long key) {
+        List<MailTicket> copies;
+        synchronized (recent) {
+            recent.sent(key);
+            copies = waiting.isEmpty() ? null : waiting.remove(key);
+        }
+        ticket.complete(1);
+        if (copies != null) {
+            for (MailTicket copy : copies) {
+                duplicates.increment();
+                copy.complete(1);
+            }
+        }
+    }
+
+    private void failed(MailTicket ticket, long key) {
+        List<MailTicket> copies;
+        synchronized (recent) {
+            // not sent, so not a duplicate when it comes again
+            recent.remove(key);
+            copies = waiting.isEmpty() ? null : waiting.remove(key);
+        }
+        failed.increment();
+        ticket.fail();
+        ticket.complete(1);
+        if (copies != null) {
+            // the copies were not sent either, their mails are downloaded again
+            for (MailTicket copy : copies) {
+                failed.increment();
+                copy.fail();
+                copy.complete(1);
+            }
+        }
+    }
+
+    /**
+     * Send without waiting for the broker, the window slot taken for the report is released by its outcome.
+     */
+    private void sendAsync(PendingReport report) {
+        try {
+            exchange.sendMovementReportRequest(report.request, new CompletionListener() {
+                @Override
+                public void onCompletion(Message message) {
+                    inFlight.release();
+                    sent.increment();
+                    batches.increment();
+                    batchedReports.increment();
+                    sent(report.ticket, report.key);
+                }
+
+                @Override
+                public void onException(Message message, Exception e) {
+                    inFlight.release();
+                    LOG.error("Broker did not accept report for Exchange", e);
+                    failed(report.ticket, report.key);
+                }
+            });
+        } catch (Exception e) {
+            inFlight.release();
+            LOG.error("Could not send report to Exchange", e);
+            failed(report.ticket, report.key);
+        }
+    }
+
+    private boolean isAsync() {
+        return SEND_MODE_ASYNC.equalsIgnoreCase(startupBean.getSetting(SEND_MODE));
+    }
+
+    private int sendWindow() {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, setting(SEND_WINDOW, DEFAULT_SEND_WINDOW)));
+    }
+
+    private int batchSize() {
+        return (int) Math.min(MAX_BATCH_SIZE, Math.max(1, setting(BATCH_SIZE, 1)));
+    }
+
+    private long lingerMillis() {
+        return Math.max(0, setting(BATCH_LINGER_MILLIS, DEFAULT_LINGER_MILLIS));
+    }
+
+    private long setting(String key, long defaultValue) {
+        String value = startupBean.getSetting(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("Ignoring invalid {} '{}'", key, value);
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public int getMapQueueDepth() {
+        return mappers.getQueue().size();
+    }
+
+    @Override
+    public int getSendQueueDepth() {
+        return outgoing.size();
+    }
+
+    @Override
+    public int getMapWorkers() {
+        return MAP_WORKERS;
+    }
+
+    @Override
+    public int getSendWorkers() {
+        return SEND_WORKERS;
+    }
+
+    @Override
+    public long getReportsSent() {
+        return sent.sum();
+    }
+
+    @Override
+    public long getReportsFailed() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getDuplicatesDropped() {
+        return duplicates.sum();
+    }
+
+    @Override
+    public int getRecentReports() {
+        return recent.size();
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    @Override
+    public int getSendWindow() {
+        return sendWindow();
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize();
+    }
+
+    @Override
+    public long getBatchesSent() {
+        return batches.sum();
+    }
+
+    @Override
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) batchedReports.sum() / count;
+    }
+
+    private final class MapTask implements Runnable {
+
+        private final ReportChunk chunk;
+        private final String pluginName;
+        private final MailTicket ticket;
+
+        private MapTask(ReportChunk chunk, String pluginName, MailTicket ticket) {
+            this.chunk = chunk;
+            this.pluginName = pluginName;
+            this.ticket = ticket;
+        }
+
+        @Override
+        public void run() {
+            map(chunk, pluginName, ticket);
+        }
+    }
+
+    private static final class PendingReport {
+
+        private final String request;
+        private final long key;
+        private final MailTicket ticket;
+
+        private PendingReport(String request, long key, MailTicket ticket) {
+            this.request = request;
+            this.key = key;
+            this.ticket = ticket;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.pipeline;
+
+/**
+ * Gauges of the {@link IngestPipeline}, registered as {@value IngestPipeline#OBJECT_NAME}.
+ */
+public interface IngestPipelineMXBean {
+
+    /**
+     * @return decoded chunks waiting for a mapping worker
+     */
+    int getMapQueueDepth();
+
+    /**
+     * @return marshalled requests waiting for a sender
+     */
+    int getSendQueueDepth();
+
+    int getMapWorkers();
+
+    int getSendWorkers();
+
+    long getReportsSent();
+
+    long getReportsFailed();
+
+    /**
+     * @return reports not sent because they were sent before
+     */
+    long getDuplicatesDropped();
+
+    /**
+     * @return reports remembered for duplicate suppression
+     */
+    int getRecentReports();
+
+    /**
+     * @return reports sent asynchronously and not yet acknowledged by the broker
+     */
+    int getInFlight();
+
+    /**
+     * @return the configured maximum of {@link #getInFlight()}
+     */
+    int getSendWindow();
+
+    /**
+     * @return the configured maximum number of reports sent in one transaction, 1 when batching is off
+     */
+    int getBatchSize();
+
+    /**
+     * @return successful sends to Exchange, each of a single report or of a batch
+     */
+    long getBatchesSent();
+
+    /**
+     * @return reports per successful send
+     */
+    double getAverageBatchSize();
+}
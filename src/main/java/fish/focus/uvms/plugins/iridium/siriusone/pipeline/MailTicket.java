@@ -0,0 +1,94 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.pipeline;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the reports of one mail or spool file through the {@link IngestPipeline}. The fetch stage seals the ticket
+ * once all attachments are decoded, it completes when every submitted report has been sent or has failed. Only then
+ * is the mail marked as seen or the UID checkpoint advanced past it.
+ */
+public class MailTicket {
+
+    // one extra for the fetch stage, released by seal()
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final MailTicket parent;
+    private volatile boolean failed;
+
+    public MailTicket() {
+        this(null);
+    }
+
+    /**
+     * A ticket for some of the reports of another ticket, which counts them as its own. Sealing this ticket does not
+     * seal the other one.
+     */
+    public MailTicket(MailTicket parent) {
+        this.parent = parent;
+    }
+
+    void add(int reports) {
+        pending.addAndGet(reports);
+        if (parent != null) {
+            parent.add(reports);
+        }
+    }
+
+    void complete(int reports) {
+        countDown(reports);
+        if (parent != null) {
+            parent.complete(reports);
+        }
+    }
+
+    private void countDown(int reports) {
+        if (pending.addAndGet(-reports) == 0) {
+            done.countDown();
+        }
+    }
+
+    public void fail() {
+        failed = true;
+        if (parent != null) {
+            parent.fail();
+        }
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * No further reports will be submitted for the mail.
+     */
+    public void seal() {
+        countDown(1);
+    }
+
+    /**
+     * @return true when the ticket has completed and all its reports were sent
+     */
+    public boolean isSent() {
+        return done.getCount() == 0 && !failed;
+    }
+
+    /**
+     * @return true when the ticket completed within the timeout and all its reports were sent
+     */
+    public boolean awaitSent(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit) && !failed;
+    }
+}
@@ -0,0 +1,30 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.pipeline;
+
+import fish.focus.schema.exchange.movement.v1.SetReportMovementType;
+
+/**
+ * Decoded reports handed from the fetch stage to the mapping workers of the {@link IngestPipeline}. A chunk is owned
+ * by the pipeline once submitted and is not touched by the fetch stage again.
+ */
+public interface ReportChunk {
+
+    int size();
+
+    /**
+     * @return the identity of a report for {@link ReportDeduplicator}, or {@link ReportDeduplicator#NO_KEY}
+     */
+    long key(int index);
+
+    SetReportMovementType map(int index, String pluginName);
+}
@@ -0,0 +1,226 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.pipeline;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The reports sent recently, so that a report is not sent to Exchange twice when its mail is downloaded again after
+ * a partial failure, or arrives again as a forwarded or resent mail.
+ * <p>
+ * A report is identified by a 64 bit key of its device, position time and position, see
+ * {@link #key(long, long, double, double)}. The keys are held in an open addressing hash table of primitive longs,
+ * linear probing with backward shift deletion, and in a ring in insertion order from which the oldest key is evicted
+ * once it is older than the time to live or when the ring is full. Nothing is allocated per report.
+ * <p>
+ * A report is claimed before it is sent and only counts as sent once {@link #sent(long)} confirms it, so that a
+ * duplicate arriving meanwhile can wait for the outcome of the original instead of being dropped.
+ */
+public class ReportDeduplicator {
+
+    /**
+     * Key of a report that cannot be identified, never suppressed.
+     */
+    public static final long NO_KEY = 0;
+
+    /**
+     * What became of a report claimed for sending.
+     */
+    public enum Claim {
+        /** Not seen recently, the caller sends it. */
+        NEW,
+        /** Claimed by an earlier report that is still being sent. */
+        SENDING,
+        /** Sent before, a duplicate. */
+        SENT
+    }
+
+    private final int capacity;
+    private final long ttlMillis;
+
+    // hash table, NO_KEY marks a free slot
+    private final long[] keys;
+    private final long[] sequences;
+    private final boolean[] sending;
+    private final int mask;
+
+    // insertion order, sequence number modulo capacity
+    private final long[] ringKeys;
+    private final long[] ringTimes;
+    private long head;
+    private long tail;
+    private int size;
+
+    public ReportDeduplicator(int capacity, long ttlMillis) {
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+        keys = new long[tableSize];
+        sequences = new long[tableSize];
+        sending = new boolean[tableSize];
+        mask = tableSize - 1;
+        ringKeys = new long[capacity];
+        ringTimes = new long[capacity];
+    }
+
+    /**
+     * Binary reports carry their time in whole minutes, so the position tells apart the reports of a device within
+     * one minute.
+     *
+     * @return the key of a report of a device at a time and position, never {@link #NO_KEY}
+     */
+    public static long key(long device, long epochSecond, double latitude, double longitude) {
+        long key = mix(device * 0x9E3779B97F4A7C15L + epochSecond);
+        key = mix(key ^ Double.doubleToLongBits(latitude));
+        key = mix(key ^ Double.doubleToLongBits(longitude));
+        return key == NO_KEY ? 1 : key;
+    }
+
+    /**
+     * @return an id for a device serial, its number when it is numeric, as for binary reports
+     */
+    public static long device(String serial) {
+        try {
+            return Long.parseLong(serial);
+        } catch (NumberFormatException e) {
+            // FNV-1a
+            long hash = 0xCBF29CE484222325L;
+            for (byte b : serial.getBytes(StandardCharsets.UTF_8)) {
+                hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+            }
+            return hash;
+        }
+    }
+
+    /**
+     * Claim a report about to be sent, to be confirmed by {@link #sent(long)} or given up by {@link #remove(long)}.
+     */
+    public synchronized Claim claim(long key, long nowMillis) {
+        if (key == NO_KEY) {
+            return Claim.NEW;
+        }
+        expire(nowMillis);
+        int index = indexOf(key);
+        if (index >= 0) {
+            return sending[index] ? Claim.SENDING : Claim.SENT;
+        }
+        insert(key, nowMillis);
+        return Claim.NEW;
+    }
+
+    /**
+     * Confirm that a claimed report was sent, so that it is a duplicate when it comes again.
+     */
+    public synchronized void sent(long key) {
+        int index = key == NO_KEY ? -1 : indexOf(key);
+        if (index >= 0) {
+            sending[index] = false;
+        }
+    }
+
+    private void expire(long nowMillis) {
+        while (head < tail && nowMillis - ringTimes[ring(head)] >= ttlMillis) {
+            evictOldest();
+        }
+    }
+
+    private void insert(long key, long nowMillis) {
+        if (tail - head == capacity) {
+            evictOldest();
+        }
+        int slot = slot(key);
+        while (keys[slot] != NO_KEY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        sequences[slot] = tail;
+        sending[slot] = true;
+        size++;
+        ringKeys[ring(tail)] = key;
+        ringTimes[ring(tail)] = nowMillis;
+        tail++;
+    }
+
+    /**
+     * Forget a report that could not be sent, so that it is sent when it comes again.
+     */
+    public synchronized void remove(long key) {
+        int index = key == NO_KEY ? -1 : indexOf(key);
+        if (index >= 0) {
+            delete(index);
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void evictOldest() {
+        long sequence = head++;
+        int index = indexOf(ringKeys[ring(sequence)]);
+        // the key may have been removed, or removed and added again with a later sequence
+        if (index >= 0 && sequences[index] == sequence) {
+            delete(index);
+        }
+    }
+
+    private int indexOf(long key) {
+        int slot = slot(key);
+        while (keys[slot] != NO_KEY) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Free a slot and move back the keys after it that would otherwise no longer be found from their home slot.
+     */
+    private void delete(int free) {
+        int slot = free;
+        while (true) {
+            slot = (slot + 1) & mask;
+            long key = keys[slot];
+            if (key == NO_KEY) {
+                break;
+            }
+            int home = slot(key);
+            // the key stays when its home slot lies cyclically in (free, slot]
+            boolean stays = free <= slot ? free < home && home <= slot : free < home || home <= slot;
+            if (!stays) {
+                keys[free] = key;
+                sequences[free] = sequences[slot];
+                sending[free] = sending[slot];
+                free = slot;
+            }
+        }
+        keys[free] = NO_KEY;
+        size--;
+    }
+
+    private int slot(long key) {
+        return (int) mix(key) & mask;
+    }
+
+    private int ring(long sequence) {
+        return (int) (sequence % capacity);
+    }
+
+    private static long mix(long x) {
+        // finalizer of MurmurHash3
+        x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+        x = (x ^ (x >>> 33)) * 0xC4CEB93FE1A85EC3L;
+        return x ^ (x >>> 33);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.pipeline;
+
+import fish.focus.schema.exchange.movement.v1.SetReportMovementType;
+import fish.focus.uvms.plugins.iridium.mapper.MovementMapper;
+import fish.focus.uvms.plugins.iridium.siriusone.xml.PositionRecord;
+
+/**
+ * Copies of the positions read from an xml report, the reader itself reuses a single record.
+ */
+public class XmlReportChunk implements ReportChunk {
+
+    private final String[] serials;
+    private final PositionRecord[] positions;
+    private int size;
+
+    public XmlReportChunk(int capacity) {
+        serials = new String[capacity];
+        positions = new PositionRecord[capacity];
+    }
+
+    public void add(String serial, PositionRecord position) {
+        PositionRecord copy = new PositionRecord();
+        copy.copyFrom(position);
+        serials[size] = serial;
+        positions[size] = copy;
+        size++;
+    }
+
+    public boolean isFull() {
+        return size == positions.length;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Positions are identified by their GPS time and coordinates, a position without a GPS time is never suppressed.
+     */
+    @Override
+    public long key(int index) {
+        PositionRecord position = positions[index];
+        if (serials[index] == null || position.getGps() == PositionRecord.NO_TIME) {
+            return ReportDeduplicator.NO_KEY;
+        }
+        return ReportDeduplicator.key(ReportDeduplicator.device(serials[index]), position.getGps(),
+                position.getLatitude(), position.getLongitude());
+    }
+
+    @Override
+    public SetReportMovementType map(int index, String pluginName) {
+        return MovementMapper.mapToSetReportMovementType(serials[index], positions[index], pluginName);
+    }
+}
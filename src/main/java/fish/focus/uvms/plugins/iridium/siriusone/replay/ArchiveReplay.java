@@ -0,0 +1,362 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.replay;
+
+import fish.focus.uvms.plugins.iridium.siriusone.MBeans;
+import fish.focus.uvms.plugins.iridium.siriusone.ReportDecoder;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.IngestPipeline;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.MailTicket;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.ReportSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.inject.Inject;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Re-ingests archived SiriusOne mails from local mbox or EML files, for example after an outage, without passing
+ * them through a mailbox again. Started and followed through the {@value #OBJECT_NAME} MBean.
+ * <p>
+ * A reader splits the archive into raw mails and queues them for a pool of workers, which parse the mails and
+ * decode their report attachments in parallel into the {@link IngestPipeline}, the normal path to Exchange. Reader
+ * and workers run on threads of their own, so a replay never takes the executor threads of the downloads. The
+ * reports handed to the pipeline are capped at a rate per second, and progress is logged every ten seconds. A
+ * directory is replayed file by file in name order: {@code *.eml} files hold one mail, any other file is read as
+ * mbox, hidden files and Thunderbird {@code .msf} indexes are skipped.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ArchiveReplay implements ArchiveReplayMXBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ArchiveReplay.class);
+
+    public static final String OBJECT_NAME = "fish.focus.uvms.plugins.iridium.siriusone:type=ArchiveReplay";
+
+    static final int WORKERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final int QUEUE_CAPACITY = 256;
+    // mails a worker decodes ahead of the oldest one it has not seen sent
+    private static final int TICKET_WINDOW = 64;
+    private static final long SEND_TIMEOUT_MINUTES = 5;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long POLL_SECONDS = 1;
+    private static final byte[] END = new byte[0];
+
+    @Resource
+    ManagedThreadFactory threadFactory;
+
+    @Inject
+    IngestPipeline pipeline;
+
+    private final Session session = Session.getInstance(new Properties());
+
+    private final LongAdder mailsRead = new LongAdder();
+    private final LongAdder mailsSent = new LongAdder();
+    private final LongAdder mailsFailed = new LongAdder();
+    private final LongAdder mailsWithoutReports = new LongAdder();
+    private final LongAdder reportsSubmitted = new LongAdder();
+
+    private volatile boolean running;
+    private volatile boolean cancelled;
+    private volatile String archive;
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private long lastProgressNanos;
+
+    @PostConstruct
+    public void init() {
+        MBeans.register(this, OBJECT_NAME);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cancel();
+        MBeans.unregister(OBJECT_NAME);
+    }
+
+    @Override
+    public synchronized void replay(String path, int maxReportsPerSecond) {
+        if (running) {
+            throw new IllegalStateException("Already replaying " + archive);
+        }
+        Path root = Paths.get(path);
+        if (!Files.exists(root)) {
+            throw new IllegalArgumentException("No such archive: " + path);
+        }
+        LOG.info("Replaying {} with {} workers, at most {} reports/s", root, WORKERS, maxReportsPerSecond > 0 ? maxReportsPerSecond : "unlimited");
+        mailsRead.reset();
+        mailsSent.reset();
+        mailsFailed.reset();
+        mailsWithoutReports.reset();
+        reportsSubmitted.reset();
+        cancelled = false;
+        running = true;
+        archive = root.toString();
+        startNanos = System.nanoTime();
+        lastProgressNanos = startNanos;
+
+        RateLimiter limiter = new RateLimiter(maxReportsPerSecond);
+        ReportSink sink = (chunk, ticket) -> {
+            try {
+                limiter.acquire(chunk.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the rate limit", e);
+            }
+            pipeline.submit(chunk, ticket);
+            reportsSubmitted.add(chunk.size());
+        };
+        BlockingQueue<byte[]> mails = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        List<Thread> workers = new ArrayList<>(WORKERS);
+        try {
+            for (int i = 0; i < WORKERS; i++) {
+                workers.add(threadFactory.newThread(() -> work(mails, sink)));
+            }
+            Thread reader = threadFactory.newThread(() -> read(root, mails, workers));
+            workers.forEach(Thread::start);
+            reader.start();
+        } catch (RuntimeException e) {
+            // workers already started find the queue empty and stop
+            cancelled = true;
+            running = false;
+            throw e;
+        }
+    }
+
+    @Override
+    public void cancel() {
+        if (running) {
+            LOG.info("Cancelling replay of {}", archive);
+            cancelled = true;
+        }
+    }
+
+    private void read(Path root, BlockingQueue<byte[]> mails, List<Thread> workers) {
+        try {
+            for (Path file : archiveFiles(root)) {
+                if (cancelled) {
+                    break;
+                }
+                archive = file.toString();
+                readArchive(file, mails);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled = true;
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Replay of {} failed", root, e);
+        } finally {
+            finish(mails, workers);
+        }
+    }
+
+    private static List<Path> archiveFiles(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> {
+                        String name = file.getFileName().toString();
+                        return !name.startsWith(".") && !name.endsWith(".msf");
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private void readArchive(Path file, BlockingQueue<byte[]> mails) throws IOException, InterruptedException {
+        if (file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".eml")) {
+            queue(Files.readAllBytes(file), mails);
+            return;
+        }
+        try (MboxReader reader = new MboxReader(Files.newInputStream(file))) {
+            byte[] mail;
+            while (!cancelled && (mail = reader.next()) != null) {
+                queue(mail, mails);
+            }
+        }
+    }
+
+    private void queue(byte[] mail, BlockingQueue<byte[]> mails) throws InterruptedException {
+        mails.put(mail);
+        mailsRead.increment();
+        long now = System.nanoTime();
+        if (now - lastProgressNanos >= PROGRESS_INTERVAL_NANOS) {
+            lastProgressNanos = now;
+            LOG.info("Replay of {}: {} mails read, {} sent, {} failed, {} reports at {} reports/s", archive, getMailsRead(),
+                    getMailsSent(), getMailsFailed(), getReportsSubmitted(), String.format(Locale.ROOT, "%.0f", getReportsPerSecond()));
+        }
+    }
+
+    /**
+     * Stop the workers once they have taken every queued mail and wait for their last mails to be sent.
+     */
+    private void finish(BlockingQueue<byte[]> mails, List<Thread> workers) {
+        try {
+            for (Thread worker : workers) {
+                while (worker.isAlive() && !mails.offer(END, POLL_SECONDS, TimeUnit.SECONDS)) {
+                    // the workers are still busy with queued mails
+                }
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.forEach(Thread::interrupt);
+        }
+        endNanos = System.nanoTime();
+        running = false;
+        LOG.info("Replay {} after {} s: {} mails read, {} sent, {} failed, {} without reports, {} reports",
+                cancelled ? "cancelled" : "completed", getElapsedSeconds(), getMailsRead(), getMailsSent(), getMailsFailed(),
+                getMailsWithoutReports(), getReportsSubmitted());
+    }
+
+    private void work(BlockingQueue<byte[]> mails, ReportSink sink) {
+        ArrayDeque<MailTicket> window = new ArrayDeque<>(TICKET_WINDOW + 1);
+        try {
+            byte[] mail;
+            while ((mail = mails.poll(POLL_SECONDS, TimeUnit.SECONDS)) != END) {
+                if (mail == null) {
+                    if (cancelled) {
+                        break;
+                    }
+                    continue;
+                }
+                if (cancelled) {
+                    continue; // drain, so the reader is not blocked
+                }
+                MailTicket ticket = decode(mail, sink);
+                if (ticket != null) {
+                    window.add(ticket);
+                    if (window.size() > TICKET_WINDOW) {
+                        complete(window.poll());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            while (!window.isEmpty()) {
+                complete(window.poll());
+            }
+        }
+    }
+
+    /**
+     * @return the sealed ticket of the mail, or null when it has no report attachments
+     */
+    private MailTicket decode(byte[] mail, ReportSink sink) {
+        MailTicket ticket = new MailTicket();
+        try {
+            MimeMessage message = new MimeMessage(session, new ByteArrayInputStream(mail));
+            if (!message.isMimeType("multipart/*") || ReportDecoder.decodeParts(sink, ticket, (Multipart) message.getContent()) == 0) {
+                mailsWithoutReports.increment();
+                return null;
+            }
+        } catch (IOException | MessagingException | RuntimeException e) {
+            LOG.warn("Could not read archived mail: {}", e.getMessage());
+            ticket.fail();
+        }
+        ticket.seal();
+        return ticket;
+    }
+
+    private void complete(MailTicket ticket) {
+        boolean sent;
+        try {
+            sent = ticket.awaitSent(SEND_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sent = false;
+        }
+        (sent ? mailsSent : mailsFailed).increment();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public String getArchive() {
+        return archive;
+    }
+
+    @Override
+    public long getMailsRead() {
+        return mailsRead.sum();
+    }
+
+    @Override
+    public long getMailsSent() {
+        return mailsSent.sum();
+    }
+
+    @Override
+    public long getMailsFailed() {
+        return mailsFailed.sum();
+    }
+
+    @Override
+    public long getMailsWithoutReports() {
+        return mailsWithoutReports.sum();
+    }
+
+    @Override
+    public long getReportsSubmitted() {
+        return reportsSubmitted.sum();
+    }
+
+    @Override
+    public long getElapsedSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(elapsedNanos());
+    }
+
+    @Override
+    public double getReportsPerSecond() {
+        long elapsed = elapsedNanos();
+        return elapsed > 0 ? getReportsSubmitted() * 1e9 / elapsed : 0;
+    }
+
+    private long elapsedNanos() {
+        if (startNanos == 0) {
+            return 0;
+        }
+        return (running ? System.nanoTime() : endNanos) - startNanos;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.replay;
+
+/**
+ * Control and progress of the {@link ArchiveReplay}, registered as {@value ArchiveReplay#OBJECT_NAME}.
+ */
+public interface ArchiveReplayMXBean {
+
+    /**
+     * Replay an mbox file, an EML file or a directory of them in the background.
+     *
+     * @param path the archive on the server file system
+     * @param maxReportsPerSecond ceiling of the reports sent to Exchange per second, 0 for none
+     */
+    void replay(String path, int maxReportsPerSecond);
+
+    /**
+     * Stop reading the archive, reports already decoded are still sent.
+     */
+    void cancel();
+
+    boolean isRunning();
+
+    /**
+     * @return the archive file being read
+     */
+    String getArchive();
+
+    long getMailsRead();
+
+    /**
+     * @return mails whose reports were all sent
+     */
+    long getMailsSent();
+
+    /**
+     * @return mails that could not be parsed or of which a report could not be decoded or sent
+     */
+    long getMailsFailed();
+
+    long getMailsWithoutReports();
+
+    long getReportsSubmitted();
+
+    long getElapsedSeconds();
+
+    double getReportsPerSecond();
+}
@@ -0,0 +1,137 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.replay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits an mbox file into the raw messages it holds. A message starts after a line beginning with {@code From },
+ * the lines of the mboxrd format quoted as {@code >From } are unquoted, and anything before the first separator is
+ * skipped. Lines are scanned in a buffer of their own, one message at a time is held in memory.
+ */
+public class MboxReader implements Closeable {
+
+    private static final byte[] FROM = {'F', 'r', 'o', 'm', ' '};
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteArrayOutputStream message = new ByteArrayOutputStream(BUFFER_SIZE);
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private int position;
+    private int limit;
+    private boolean started;
+    private boolean endOfStream;
+
+    public MboxReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * @return the next message without its separator line, or null when the file holds no further message
+     */
+    public byte[] next() throws IOException {
+        while (!started) {
+            if (!readLine()) {
+                return null;
+            }
+            started = isSeparator();
+        }
+        if (endOfStream) {
+            return null;
+        }
+        message.reset();
+        while (readLine()) {
+            if (isSeparator()) {
+                return message.toByteArray();
+            }
+            int quote = isQuotedFrom() ? 1 : 0;
+            message.write(line, quote, lineLength - quote);
+        }
+        return message.toByteArray();
+    }
+
+    private boolean isSeparator() {
+        return startsWith(0);
+    }
+
+    private boolean isQuotedFrom() {
+        int quotes = 0;
+        while (quotes < lineLength && line[quotes] == '>') {
+            quotes++;
+        }
+        return quotes > 0 && startsWith(quotes);
+    }
+
+    private boolean startsWith(int offset) {
+        if (lineLength - offset < FROM.length) {
+            return false;
+        }
+        for (int i = 0; i < FROM.length; i++) {
+            if (line[offset + i] != FROM[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the next line, its terminator included.
+     *
+     * @return false at the end of the file
+     */
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        while (true) {
+            if (position == limit) {
+                int read = in.read(buffer);
+                if (read < 0) {
+                    endOfStream = true;
+                    return lineLength > 0;
+                }
+                position = 0;
+                limit = read;
+            }
+            int end = position;
+            while (end < limit && buffer[end] != '\n') {
+                end++;
+            }
+            boolean complete = end < limit;
+            if (complete) {
+                end++;
+            }
+            append(end - position);
+            position = end;
+            if (complete) {
+                return true;
+            }
+        }
+    }
+
+    private void append(int length) {
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(2 * line.length, lineLength + length));
+        }
+        System.arraycopy(buffer, position, line, lineLength, length);
+        lineLength += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,49 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.replay;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces out permits evenly to a ceiling per second, shared by any number of threads. A request is granted whole,
+ * the requests after it wait for its share of time.
+ */
+public class RateLimiter {
+
+    private final long nanosPerPermit;
+    private long next = System.nanoTime();
+
+    /**
+     * @param permitsPerSecond the ceiling, 0 or less for no limit
+     */
+    public RateLimiter(int permitsPerSecond) {
+        this.nanosPerPermit = permitsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / permitsPerSecond : 0;
+    }
+
+    public void acquire(int permits) throws InterruptedException {
+        if (nanosPerPermit == 0) {
+            return;
+        }
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (next - now < 0) {
+                next = now; // no credit for idle time
+            }
+            wait = next - now;
+            next += permits * nanosPerPermit;
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+}
@@ -13,20 +13,17 @@ package fish.focus.uvms.plugins.iridium.siriusone.xml;
 
 import javax.xml.bind.annotation.adapters.XmlAdapter;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 public class LocalDateTimeAdapter extends XmlAdapter<String, LocalDateTime> {
 
-    private DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-
     @Override
     public String marshal(LocalDateTime dateTime) {
-        return dateTime.format(dateFormat);
+        return SiriusOneTimestamp.format(dateTime);
     }
 
     @Override
     public LocalDateTime unmarshal(String dateTime) {
-        return LocalDateTime.parse(dateTime, dateFormat);
+        return SiriusOneTimestamp.parse(dateTime);
     }
 
 }
@@ -0,0 +1,145 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.xml;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Cursor decoder reading a SiriusOne {@code position} element straight into a {@link PositionRecord}, without the
+ * reflection and boxing of the JAXB {@link Position} and {@link Speed} classes. Unknown elements are skipped.
+ * <p>
+ * Not thread safe, the element text is collected in a buffer reused between calls.
+ */
+class PositionDecoder {
+
+    private final StringBuilder text = new StringBuilder(32);
+
+    /**
+     * Decode the position element the reader is positioned on. The reader is left on the end of that element.
+     */
+    void decode(XMLStreamReader reader, PositionRecord record) throws XMLStreamException {
+        record.clear();
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if (depth == 1 && "speed".equals(name)) {
+                    depth++;
+                } else if (depth == 1) {
+                    readText(reader);
+                    positionField(reader, record, name);
+                } else if (depth == 2) {
+                    readText(reader);
+                    speedField(reader, record, name);
+                } else {
+                    readText(reader);
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private void positionField(XMLStreamReader reader, PositionRecord record, String name) throws XMLStreamException {
+        try {
+            switch (name) {
+                case "serial":
+                    record.serial = text.length() == 0 ? 0 : Long.parseLong(text, 0, text.length(), 10);
+                    break;
+                case "csp":
+                    record.csp = parseTime();
+                    break;
+                case "timestamp":
+                    record.timestamp = parseTime();
+                    break;
+                case "gps":
+                    record.gps = parseTime();
+                    break;
+                case "course":
+                    record.course = parseDouble();
+                    break;
+                case "latitude":
+                    record.latitude = parseDouble();
+                    break;
+                case "longitude":
+                    record.longitude = parseDouble();
+                    break;
+                case "altitude":
+                    record.altitude = parseDouble();
+                    break;
+                default:
+                    break;
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new XMLStreamException("Invalid value of " + name + ": " + text, reader.getLocation(), e);
+        }
+    }
+
+    private void speedField(XMLStreamReader reader, PositionRecord record, String name) throws XMLStreamException {
+        try {
+            if ("knots".equals(name)) {
+                record.knots = parseDouble();
+            } else if ("km".equals(name)) {
+                record.km = parseDouble();
+            }
+        } catch (NumberFormatException e) {
+            throw new XMLStreamException("Invalid value of speed/" + name + ": " + text, reader.getLocation(), e);
+        }
+    }
+
+    private long parseTime() {
+        return text.length() == 0 ? PositionRecord.NO_TIME : SiriusOneTimestamp.parseEpochSecond(text);
+    }
+
+    private double parseDouble() {
+        return text.length() == 0 ? Double.NaN : Double.parseDouble(text.toString());
+    }
+
+    /**
+     * Collect the trimmed text of the current element, skipping any nested element, and move to its end.
+     */
+    private void readText(XMLStreamReader reader) throws XMLStreamException {
+        text.setLength(0);
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (depth == 1 && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE)) {
+                text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            }
+        }
+        trim();
+    }
+
+    private void trim() {
+        int end = text.length();
+        while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        text.setLength(end);
+        int start = 0;
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        if (start > 0) {
+            text.delete(0, start);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.xml;
+
+/**
+ * The fields of a SiriusOne {@code position} element that are forwarded to Exchange, as primitives.
+ * <p>
+ * A record is reused for every position of a document. Timestamps are seconds since the epoch with the report time
+ * read as UTC, {@link #NO_TIME} when the element is missing or empty. Missing numbers are {@link Double#NaN}.
+ */
+public class PositionRecord {
+
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    long serial;
+    long csp;
+    long timestamp;
+    long gps;
+    double knots;
+    double km;
+    double course;
+    double latitude;
+    double longitude;
+    double altitude;
+
+    public PositionRecord() {
+        clear();
+    }
+
+    public void clear() {
+        serial = 0;
+        csp = NO_TIME;
+        timestamp = NO_TIME;
+        gps = NO_TIME;
+        knots = Double.NaN;
+        km = Double.NaN;
+        course = Double.NaN;
+        latitude = Double.NaN;
+        longitude = Double.NaN;
+        altitude = Double.NaN;
+    }
+
+    /**
+     * Copy the fields of a record, to keep a position after its reader has moved on to the next one.
+     */
+    public void copyFrom(PositionRecord other) {
+        serial = other.serial;
+        csp = other.csp;
+        timestamp = other.timestamp;
+        gps = other.gps;
+        knots = other.knots;
+        km = other.km;
+        course = other.course;
+        latitude = other.latitude;
+        longitude = other.longitude;
+        altitude = other.altitude;
+    }
+
+    public long getSerial() {
+        return serial;
+    }
+
+    public long getCsp() {
+        return csp;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getGps() {
+        return gps;
+    }
+
+    public double getKnots() {
+        return knots;
+    }
+
+    public double getKm() {
+        return km;
+    }
+
+    public double getCourse() {
+        return course;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public double getAltitude() {
+        return altitude;
+    }
+}
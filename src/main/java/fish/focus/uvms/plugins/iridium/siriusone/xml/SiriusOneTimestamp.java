@@ -0,0 +1,117 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.xml;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Parser for the {@code yyyy-MM-dd HH:mm:ss} timestamps of the SiriusOne XML reports.
+ * <p>
+ * Well formed values are read digit by digit at their fixed offsets. Anything else, such as a different length or an
+ * out of range field, is handed to the {@link DateTimeFormatter} so that the result, or the exception, is the same as
+ * with the formatter alone.
+ */
+public class SiriusOneTimestamp {
+
+    public static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final int LENGTH = 19;
+    private static final long INVALID = Long.MIN_VALUE;
+    private static final long SECONDS_PER_DAY = 86_400L;
+    private static final long DAYS_0000_TO_1970 = 719_468L;
+
+    private SiriusOneTimestamp() {
+    }
+
+    public static LocalDateTime parse(CharSequence text) {
+        long epochSecond = fastEpochSecond(text);
+        if (epochSecond != INVALID) {
+            return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+        }
+        return LocalDateTime.parse(text, FORMAT);
+    }
+
+    /**
+     * @return the timestamp read as UTC, in seconds since 1970-01-01T00:00:00
+     */
+    public static long parseEpochSecond(CharSequence text) {
+        long epochSecond = fastEpochSecond(text);
+        if (epochSecond != INVALID) {
+            return epochSecond;
+        }
+        return LocalDateTime.parse(text, FORMAT).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    public static String format(LocalDateTime dateTime) {
+        return dateTime.format(FORMAT);
+    }
+
+    private static long fastEpochSecond(CharSequence text) {
+        if (text.length() != LENGTH
+                || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != ' '
+                || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            return INVALID;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID;
+        }
+        return epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+    }
+
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date with a positive year, counted in 400 year eras starting
+     * on March 1st so that the leap day is the last day of the year.
+     */
+    static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - DAYS_0000_TO_1970;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.plugins.iridium.siriusone.xml;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+
+/**
+ * Streaming reader returning every {@code devices/device/positions/position} of a SiriusOne XML report one at a time.
+ * <p>
+ * Positions are decoded into a single reused {@link PositionRecord}, so documents of any size are read with constant
+ * memory. The device serial has to precede the positions of its device, as it does in the SiriusOne exports.
+ */
+public class SiriusOneXmlReader implements AutoCloseable {
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private static final int DEVICE_DEPTH = 2;
+    private static final int POSITION_DEPTH = 4;
+
+    private final XMLStreamReader reader;
+    private final PositionDecoder decoder = new PositionDecoder();
+    private final PositionRecord position = new PositionRecord();
+
+    private int depth;
+    private boolean inPositions;
+    private String deviceSerial;
+    private int positionCount;
+
+    public SiriusOneXmlReader(InputStream in) throws XMLStreamException {
+        this.reader = INPUT_FACTORY.createXMLStreamReader(in);
+    }
+
+    /**
+     * Advance to the next position of the document, overwriting the record returned by {@link #getPosition()}.
+     *
+     * @return false when the document holds no further position
+     */
+    public boolean next() throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (startElement(reader.getLocalName())) {
+                    return true;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == DEVICE_DEPTH + 1 && "positions".equals(reader.getLocalName())) {
+                    inPositions = false;
+                }
+                depth--;
+            }
+        }
+        return false;
+    }
+
+    private boolean startElement(String name) throws XMLStreamException {
+        if (depth == DEVICE_DEPTH && "device".equals(name)) {
+            deviceSerial = null;
+        } else if (depth == DEVICE_DEPTH + 1 && "serial".equals(name)) {
+            deviceSerial = reader.getElementText().trim();
+            depth--;
+        } else if (depth == DEVICE_DEPTH + 1 && "positions".equals(name)) {
+            inPositions = true;
+        } else if (depth == POSITION_DEPTH && inPositions && "position".equals(name)) {
+            if (deviceSerial == null) {
+                throw new XMLStreamException("Device serial must precede its positions", reader.getLocation());
+            }
+            decoder.decode(reader, position);
+            positionCount++;
+            // the decoder consumed the whole element and left the reader on its end
+            depth--;
+            return true;
+        }
+        return false;
+    }
+
+    public String getDeviceSerial() {
+        return deviceSerial;
+    }
+
+    public PositionRecord getPosition() {
+        return position;
+    }
+
+    public int getPositionCount() {
+        return positionCount;
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+        reader.close();
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
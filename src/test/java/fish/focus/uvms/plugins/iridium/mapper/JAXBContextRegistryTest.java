@@ -0,0 +1,51 @@
+package fish.focus.uvms.plugins.iridium.mapper;
+
+import fish.focus.uvms.plugins.iridium.siriusone.xml.Device;
+import fish.focus.uvms.plugins.iridium.siriusone.xml.Devices;
+import fish.focus.uvms.plugins.iridium.siriusone.xml.Speed;
+import org.junit.Test;
+
+import javax.xml.bind.JAXBException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class JAXBContextRegistryTest {
+
+    private final JAXBContextRegistry registry = new JAXBContextRegistry();
+
+    @Test
+    public void unmarshalsWithReusedUnmarshaller() throws JAXBException {
+        for (int i = 0; i < 3; i++) {
+            Devices devices = registry.unmarshal(xml("E" + i), Devices.class);
+            assertThat(devices.getDevice().get(0).getSerial(), is("E" + i));
+        }
+    }
+
+    @Test
+    public void marshalsWithReusedMarshaller() throws JAXBException {
+        Devices devices = new Devices();
+        Device device = new Device();
+        device.setSerial("E12345678");
+        devices.setDevice(Collections.singletonList(device));
+
+        registry.marshal(devices);
+        String xml = registry.marshal(devices);
+
+        assertThat(xml, containsString("<serial>E12345678</serial>"));
+    }
+
+    @Test(expected = JAXBException.class)
+    public void rejectsDocumentOfOtherType() throws JAXBException {
+        registry.unmarshal(xml("E1"), Speed.class);
+    }
+
+    private static ByteArrayInputStream xml(String serial) {
+        String xml = "<devices><device><serial>" + serial + "</serial></device></devices>";
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,23 @@
+package fish.focus.uvms.plugins.iridium.mapper;
+
+import fish.focus.schema.exchange.movement.v1.MovementBaseType;
+import fish.focus.uvms.plugins.iridium.siriusone.xml.PositionRecord;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MovementMapperTest {
+
+    @Test
+    public void leavesMissingCoordinatesUnset() {
+        MovementBaseType movement = MovementMapper.mapToSetReportMovementType("E1", new PositionRecord(), "plugin").getMovement();
+
+        assertThat(movement.getPosition().getLatitude(), is(nullValue()));
+        assertThat(movement.getPosition().getLongitude(), is(nullValue()));
+        assertThat(movement.getPosition().getAltitude(), is(nullValue()));
+        assertThat(movement.getReportedCourse(), is(nullValue()));
+        assertThat(movement.getPositionTime(), is(nullValue()));
+    }
+}
@@ -0,0 +1,243 @@
+package fish.focus.uvms.plugins.iridium.producer;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import javax.jms.CompletionListener;
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class JmsSessionPoolTest {
+
+    private final Queue queue = mock(Queue.class);
+    private final List<Connection> connections = new ArrayList<>();
+    private final List<Session> sessions = new ArrayList<>();
+    private final List<MessageProducer> producers = new ArrayList<>();
+    private JMSException sendFailure;
+
+    private final JmsSessionPool pool = new JmsSessionPool(this::connect, 2);
+
+    @Test
+    public void reusesConnectionSessionAndProducer() throws JMSException {
+        assertThat(pool.send(queue, this::message), is("ID:1"));
+        assertThat(pool.send(queue, this::message), is("ID:1"));
+
+        assertThat(connections.size(), is(1));
+        assertThat(sessions.size(), is(1));
+        verify(producers.get(0), times(2)).send(eq(queue), any(Message.class), anyInt(), anyInt(), anyLong());
+        verify(sessions.get(0), never()).close();
+    }
+
+    @Test
+    public void reconnectsAndRetriesWhenSendFails() throws JMSException {
+        pool.send(queue, this::message);
+        doThrow(new JMSException("connection lost")).when(producers.get(0))
+                .send(any(Destination.class), any(Message.class), anyInt(), anyInt(), anyLong());
+
+        pool.send(queue, this::message);
+
+        assertThat(connections.size(), is(2));
+        verify(connections.get(0)).close();
+        verify(sessions.get(0)).close();
+        verify(producers.get(1)).send(eq(queue), any(Message.class), anyInt(), anyInt(), anyLong());
+    }
+
+    @Test
+    public void throwsWhenRetryFailsAsWell() throws JMSException {
+        sendFailure = new JMSException("broker down");
+
+        try {
+            pool.send(queue, this::message);
+            fail("expected JMSException");
+        } catch (JMSException expected) {
+            assertThat(connections.size(), is(2));
+            verify(connections.get(1)).close();
+        }
+    }
+
+    @Test
+    public void dropsSessionsWhenConnectionReportsFailure() throws JMSException {
+        pool.send(queue, this::message);
+        ExceptionListener listener = listener(connections.get(0));
+
+        listener.onException(new JMSException("connection lost"));
+        pool.send(queue, this::message);
+
+        assertThat(connections.size(), is(2));
+        verify(connections.get(0)).close();
+        verify(sessions.get(0)).close();
+    }
+
+    @Test
+    public void ignoresFailureOfReplacedConnection() throws JMSException {
+        pool.send(queue, this::message);
+        ExceptionListener stale = listener(connections.get(0));
+        stale.onException(new JMSException("connection lost"));
+        pool.send(queue, this::message);
+
+        stale.onException(new JMSException("connection lost"));
+        pool.send(queue, this::message);
+
+        assertThat(connections.size(), is(2));
+        verify(connections.get(1), never()).close();
+    }
+
+    @Test
+    public void sendsWithoutExceptionListenerWhereContainerForbidsIt() throws JMSException {
+        JmsSessionPool restricted = new JmsSessionPool(() -> {
+            Connection connection = connect();
+            doThrow(new IllegalStateException("not allowed in the EJB container")).when(connection).setExceptionListener(any());
+            return connection;
+        }, 2);
+
+        assertThat(restricted.send(queue, this::message), is("ID:1"));
+    }
+
+    @Test
+    public void opensNoMoreSessionsThanTheMaximum() throws Exception {
+        CountDownLatch sending = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        JmsSessionPool.MessageFactory slow = session -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            sending.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            concurrent.decrementAndGet();
+            return message(session);
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> sends = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                sends.add(executor.submit(() -> pool.send(queue, slow)));
+            }
+            assertThat(sending.await(5, TimeUnit.SECONDS), is(true));
+            release.countDown();
+            for (Future<String> send : sends) {
+                assertThat(send.get(5, TimeUnit.SECONDS), is("ID:1"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(maxConcurrent.get() <= 2, is(true));
+        assertThat(sessions.size() <= 2, is(true));
+    }
+
+    @Test
+    public void commitsAllMessagesOfTransactedSend() throws JMSException {
+        JmsSessionPool transacted = new JmsSessionPool(this::connect, 2, true);
+
+        List<String> messageIds = transacted.send(queue, List.of(this::message, this::message, this::message));
+
+        assertThat(messageIds, is(List.of("ID:1", "ID:1", "ID:1")));
+        verify(connections.get(0)).createSession(true, Session.SESSION_TRANSACTED);
+        InOrder inOrder = inOrder(producers.get(0), sessions.get(0));
+        inOrder.verify(producers.get(0), times(3)).send(eq(queue), any(Message.class), anyInt(), anyInt(), anyLong());
+        inOrder.verify(sessions.get(0)).commit();
+    }
+
+    @Test
+    public void resendsWholeTransactionOnNewConnection() throws JMSException {
+        JmsSessionPool transacted = new JmsSessionPool(this::connect, 2, true);
+        transacted.send(queue, this::message);
+        doThrow(new JMSException("commit failed")).when(sessions.get(0)).commit();
+
+        transacted.send(queue, List.of(this::message, this::message));
+
+        assertThat(connections.size(), is(2));
+        verify(sessions.get(0)).close();
+        verify(producers.get(1), times(2)).send(eq(queue), any(Message.class), anyInt(), anyInt(), anyLong());
+        verify(sessions.get(1)).commit();
+    }
+
+    @Test
+    public void returnsSessionBeforeAsyncSendCompletes() throws JMSException {
+        CompletionListener listener = mock(CompletionListener.class);
+
+        pool.send(queue, this::message, listener);
+        pool.send(queue, this::message, listener);
+
+        assertThat(sessions.size(), is(1));
+        verify(producers.get(0), times(2)).send(eq(queue), any(Message.class), anyInt(), anyInt(), anyLong(), eq(listener));
+        verifyNoInteractions(listener);
+    }
+
+    @Test
+    public void closesConnectionOnClose() throws JMSException {
+        pool.send(queue, this::message);
+
+        pool.close();
+
+        verify(connections.get(0)).close();
+        verify(sessions.get(0)).close();
+        try {
+            pool.send(queue, this::message);
+            fail("expected JMSException");
+        } catch (JMSException expected) {
+            assertThat(connections.size(), is(1));
+        }
+    }
+
+    private Connection connect() throws JMSException {
+        Connection connection = mock(Connection.class);
+        when(connection.createSession(anyBoolean(), anyInt())).thenAnswer(invocation -> {
+            Session session = mock(Session.class);
+            MessageProducer producer = mock(MessageProducer.class);
+            when(session.createProducer(null)).thenReturn(producer);
+            if (sendFailure != null) {
+                doThrow(sendFailure).when(producer).send(any(Destination.class), any(Message.class), anyInt(), anyInt(), anyLong());
+            }
+            when(session.createTextMessage(any())).thenAnswer(create -> {
+                TextMessage message = mock(TextMessage.class);
+                when(message.getJMSMessageID()).thenReturn("ID:1");
+                return message;
+            });
+            sessions.add(session);
+            producers.add(producer);
+            return session;
+        });
+        connections.add(connection);
+        return connection;
+    }
+
+    private Message message(Session session) throws JMSException {
+        return session.createTextMessage("report");
+    }
+
+    private static ExceptionListener listener(Connection connection) throws JMSException {
+        ArgumentCaptor<ExceptionListener> listener = ArgumentCaptor.forClass(ExceptionListener.class);
+        verify(connection).setExceptionListener(listener.capture());
+        return listener.getValue();
+    }
+}
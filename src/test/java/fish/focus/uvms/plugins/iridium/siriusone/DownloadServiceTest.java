@@ -0,0 +1,173 @@
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import fish.focus.uvms.plugins.iridium.StartupBean;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.AttachmentJournal;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.MailboxConnectionManager;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.MailboxSettings;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.BinaryReportChunk;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.IngestPipeline;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.mail.*;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class DownloadServiceTest {
+
+    private final DownloadService downloadService = new DownloadService();
+    private final Folder folder = mock(Folder.class);
+
+    @Before
+    public void setUp() throws Exception {
+        downloadService.startUp = mock(StartupBean.class);
+        downloadService.pipeline = mock(IngestPipeline.class);
+        downloadService.mailbox = mock(MailboxConnectionManager.class);
+        downloadService.journal = mock(AttachmentJournal.class);
+        when(downloadService.mailbox.withFolder(any(), any()))
+                .thenAnswer(invocation -> invocation.<MailboxConnectionManager.FolderTask<?>>getArgument(1).run(folder));
+    }
+
+    @Test
+    public void prefetchesAllUnseenMessagesBeforeReadingContent() throws Exception {
+        Message first = multipartMessage();
+        Message second = multipartMessage();
+        Message[] mails = {first, second};
+        when(folder.search(any())).thenReturn(mails);
+
+        downloadService.download();
+
+        InOrder inOrder = inOrder(folder, first, second);
+        inOrder.verify(folder).fetch(eq(mails), argThat(profile -> profile.contains(FetchProfile.Item.ENVELOPE)
+                && profile.contains(FetchProfile.Item.CONTENT_INFO)
+                && profile.contains(UIDFolder.FetchProfileItem.UID)));
+        inOrder.verify(first).getContent();
+        inOrder.verify(second).getContent();
+        verify(folder, times(1)).fetch(any(), any());
+    }
+
+    @Test
+    public void skipsMessagesWithoutAttachments() throws Exception {
+        Message plain = mock(Message.class);
+        when(plain.isMimeType("multipart/*")).thenReturn(false);
+        when(folder.search(any())).thenReturn(new Message[]{plain});
+
+        downloadService.download();
+
+        verify(plain, never()).getContent();
+        verify(plain, never()).setFlag(any(), anyBoolean());
+        verify(folder, never()).setFlags(any(Message[].class), any(), anyBoolean());
+    }
+
+    @Test
+    public void downloadsOnlyReportAttachmentsOfNestedMultiparts() throws Exception {
+        BodyPart text = mock(BodyPart.class);
+        when(text.getFileName()).thenReturn(null);
+        BodyPart signature = mock(BodyPart.class);
+        when(signature.getDisposition()).thenReturn(Part.ATTACHMENT);
+        when(signature.getFileName()).thenReturn("smime.p7s");
+        BodyPart report = mock(BodyPart.class);
+        when(report.getFileName()).thenReturn("12345678_1.sbd");
+        when(report.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[10]));
+        Multipart inner = multipart(text, report);
+        BodyPart alternative = mock(BodyPart.class);
+        when(alternative.isMimeType("multipart/*")).thenReturn(true);
+        when(alternative.getContent()).thenReturn(inner);
+        Multipart outer = multipart(alternative, signature);
+        Message message = mock(Message.class);
+        when(message.isMimeType("multipart/*")).thenReturn(true);
+        when(message.getContent()).thenReturn(outer);
+        when(folder.search(any())).thenReturn(new Message[]{message});
+
+        downloadService.download();
+
+        verify(text, never()).getInputStream();
+        verify(signature, never()).getInputStream();
+        verify(downloadService.pipeline).submit(any(BinaryReportChunk.class), any());
+        verify(folder).setFlags(aryEq(new Message[]{message}), eq(new Flags(Flags.Flag.SEEN)), eq(true));
+    }
+
+    @Test
+    public void flagsAllHandledMessagesWithOneStoreAndArchivesThem() throws Exception {
+        when(downloadService.startUp.getSetting("ARCHIVE_FOLDER")).thenReturn("Archive");
+        Message first = multipartMessage();
+        Message second = multipartMessage();
+        when(folder.search(any())).thenReturn(new Message[]{first, second});
+        Store store = mock(Store.class);
+        Folder archive = mock(Folder.class);
+        when(folder.getStore()).thenReturn(store);
+        when(folder.getSeparator()).thenReturn('.');
+        when(store.getFolder(startsWith("Archive."))).thenReturn(archive);
+        when(archive.exists()).thenReturn(true);
+
+        downloadService.download();
+
+        verify(folder).setFlags(aryEq(new Message[]{first, second}), eq(new Flags(Flags.Flag.SEEN)), eq(true));
+        verify(first, never()).setFlag(any(), anyBoolean());
+        verify(folder).copyMessages(aryEq(new Message[]{first, second}), eq(archive));
+    }
+
+    @Test
+    public void handlesOtherMessagesWhenOneCannotBeRead() throws Exception {
+        Message first = multipartMessage();
+        Message unreadable = multipartMessage();
+        when(unreadable.getContent()).thenThrow(new MessagingException("BODY fetch failed"));
+        Message third = multipartMessage();
+        when(folder.search(any())).thenReturn(new Message[]{first, unreadable, third});
+
+        downloadService.download();
+
+        verify(third).getContent();
+        verify(folder).setFlags(aryEq(new Message[]{first, third}), eq(new Flags(Flags.Flag.SEEN)), eq(true));
+        verify(folder).setFlags(aryEq(new Message[]{unreadable}), eq(new Flags(Flags.Flag.SEEN)), eq(false));
+    }
+
+    @Test
+    public void downloadsEveryMailboxSourceDespiteFailingOne() throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        downloadService.executor = mock(ManagedExecutorService.class, delegatesTo(threads));
+        when(downloadService.startUp.getSetting(MailboxSettings.MAILBOXES)).thenReturn("fleet1, fleet2");
+        when(downloadService.startUp.getSetting("fleet1.MAILHOST")).thenReturn("imap.fleet1.example.com");
+        when(downloadService.startUp.getSetting("fleet2.MAILHOST")).thenReturn("imap.fleet2.example.com");
+        doThrow(new MessagingException("login failed")).when(downloadService.mailbox)
+                .withFolder(argThat(settings -> settings != null && settings.getSource().equals("fleet1")), any());
+        when(folder.search(any())).thenReturn(new Message[0]);
+
+        downloadService.download();
+        threads.shutdown();
+
+        verify(downloadService.mailbox).withFolder(argThat(settings -> settings != null && settings.getHost().equals("imap.fleet2.example.com")), any());
+        verify(folder).search(any());
+    }
+
+    private static Multipart multipart(BodyPart... parts) throws MessagingException {
+        Multipart multipart = mock(Multipart.class);
+        when(multipart.getCount()).thenReturn(parts.length);
+        for (int i = 0; i < parts.length; i++) {
+            when(multipart.getBodyPart(i)).thenReturn(parts[i]);
+        }
+        return multipart;
+    }
+
+    private static Message multipartMessage() throws Exception {
+        BodyPart attachment = mock(BodyPart.class);
+        when(attachment.getDisposition()).thenReturn(Part.ATTACHMENT);
+        when(attachment.getFileName()).thenReturn("report.xml");
+        when(attachment.getInputStream()).thenReturn(new ByteArrayInputStream("<devices/>".getBytes()));
+        Multipart multipart = mock(Multipart.class);
+        when(multipart.getCount()).thenReturn(1);
+        when(multipart.getBodyPart(0)).thenReturn(attachment);
+        Message message = mock(Message.class);
+        when(message.isMimeType("multipart/*")).thenReturn(true);
+        when(message.getContent()).thenReturn(multipart);
+        return message;
+    }
+}
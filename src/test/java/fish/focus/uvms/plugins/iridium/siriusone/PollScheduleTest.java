@@ -0,0 +1,51 @@
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PollScheduleTest {
+
+    private final PollSchedule schedule = new PollSchedule();
+
+    @Test
+    public void doublesIntervalWhileIdleUpToCeiling() {
+        schedule.setIntervals(1_000, 5_000);
+
+        assertThat(schedule.completed(10, 0), is(1_000L));
+        assertThat(schedule.completed(10, 0), is(2_000L));
+        assertThat(schedule.completed(10, 0), is(4_000L));
+        assertThat(schedule.completed(10, 0), is(5_000L));
+        assertThat(schedule.completed(10, 0), is(5_000L));
+    }
+
+    @Test
+    public void newMessagesResetInterval() {
+        schedule.setIntervals(1_000, 60_000);
+        schedule.completed(10, 0);
+        schedule.completed(10, 0);
+
+        assertThat(schedule.completed(10, 3), is(0L));
+        assertThat(schedule.completed(10, 0), is(1_000L));
+    }
+
+    @Test
+    public void recordsRunDurations() {
+        schedule.completed(100, 1);
+        schedule.completed(300, 0);
+
+        assertThat(schedule.getRuns(), is(2L));
+        assertThat(schedule.getLastRunMillis(), is(300L));
+        assertThat(schedule.getMaxRunMillis(), is(300L));
+        assertThat(schedule.getMeanRunMillis(), is(200L));
+        assertThat(schedule.getLastRunMessages(), is(0));
+    }
+
+    @Test
+    public void keepsMinimumIntervalAboveZero() {
+        schedule.setIntervals(0, 0);
+
+        assertThat(schedule.completed(10, 0) > 0, is(true));
+    }
+}
@@ -0,0 +1,35 @@
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ReportAttachmentTest {
+
+    @Test
+    public void recognizesXmlExport() {
+        assertThat(ReportAttachment.of("positions.xml").isXml(), is(true));
+        assertThat(ReportAttachment.of("POSITIONS.XML").isXml(), is(true));
+    }
+
+    @Test
+    public void recognizesBinaryReport() {
+        ReportAttachment attachment = ReportAttachment.of("300234060000000_000123.sbd");
+
+        assertThat(attachment.isXml(), is(false));
+        assertThat(attachment.getSerialNumber(), is(300234060000000L));
+    }
+
+    @Test
+    public void ignoresOtherAttachments() {
+        assertThat(ReportAttachment.of(null), is(nullValue()));
+        assertThat(ReportAttachment.of(""), is(nullValue()));
+        assertThat(ReportAttachment.of("smime.p7s"), is(nullValue()));
+        assertThat(ReportAttachment.of("invoice_2023.pdf.exe"), is(nullValue()));
+        assertThat(ReportAttachment.of("123_456_789.sbd"), is(nullValue()));
+        assertThat(ReportAttachment.of("123_.sbd"), is(nullValue()));
+        assertThat(ReportAttachment.of("123_456"), is(nullValue()));
+    }
+}
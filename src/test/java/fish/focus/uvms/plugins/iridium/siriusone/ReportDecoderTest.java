@@ -0,0 +1,55 @@
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.MailTicket;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.ReportSink;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ReportDecoderTest {
+
+    private static final ReportAttachment REPORT = ReportAttachment.of("12345678_1.sbd");
+
+    private final List<Integer> chunks = new ArrayList<>();
+    private final ReportSink sink = (chunk, ticket) -> chunks.add(chunk.size());
+
+    @Test
+    public void sizesBatchesToTheBytesLeft() {
+        assertThat(ReportDecoder.batchFor(10).capacity(), is(1));
+        assertThat(ReportDecoder.batchFor(25).capacity(), is(3));
+        assertThat(ReportDecoder.batchFor(0).capacity(), is(1));
+        assertThat(ReportDecoder.batchFor(1_000_000).capacity(), is(ReportDecoder.REPORT_BATCH_CAPACITY));
+        assertThat(ReportDecoder.batchFor(-1).capacity(), is(ReportDecoder.REPORT_BATCH_CAPACITY));
+    }
+
+    @Test
+    public void decodesStreamOfKnownSizeIntoFittingBatches() throws Exception {
+        byte[] frames = new byte[300 * SiriusOneFrame.FRAME_LENGTH];
+
+        ReportDecoder.decodeBinary(sink, new MailTicket(), REPORT, new ByteArrayInputStream(frames), 0, frames.length);
+
+        assertThat(chunks, is(List.of(ReportDecoder.REPORT_BATCH_CAPACITY, 300 - ReportDecoder.REPORT_BATCH_CAPACITY)));
+    }
+
+    @Test
+    public void decodesStreamOfUnknownSize() throws Exception {
+        byte[] frames = new byte[3 * SiriusOneFrame.FRAME_LENGTH];
+
+        ReportDecoder.decodeBinary(sink, new MailTicket(), REPORT, new ByteArrayInputStream(frames), 1, -1);
+
+        assertThat(chunks, is(List.of(2)));
+    }
+
+    @Test
+    public void decodesMappedFileIntoFittingBatches() {
+        ReportDecoder.decodeBinary(sink, new MailTicket(), REPORT, ByteBuffer.wrap(new byte[SiriusOneFrame.FRAME_LENGTH]));
+
+        assertThat(chunks, is(List.of(1)));
+    }
+}
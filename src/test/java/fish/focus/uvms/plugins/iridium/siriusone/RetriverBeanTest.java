@@ -0,0 +1,119 @@
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import fish.focus.uvms.plugins.iridium.StartupBean;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class RetriverBeanTest {
+
+    private final RetriverBean retriever = new RetriverBean();
+
+    @Before
+    public void setUp() {
+        retriever.downloadService = mock(DownloadService.class);
+        retriever.startupBean = mock(StartupBean.class);
+        retriever.idleWatcher = mock(MailboxIdleWatcher.class);
+        retriever.spoolWatcher = mock(SpoolWatcher.class);
+        retriever.timerService = mock(TimerService.class);
+        when(retriever.startupBean.isIsEnabled()).thenReturn(true);
+    }
+
+    @Test
+    public void coalescesTriggersUntilDownloadStarts() {
+        retriever.triggerDownload();
+        retriever.triggerDownload();
+        verify(retriever.timerService, times(1)).createSingleActionTimer(eq(0L), any(TimerConfig.class));
+
+        retriever.triggeredDownload();
+        verify(retriever.downloadService).download();
+
+        retriever.triggerDownload();
+        verify(retriever.timerService, times(2)).createSingleActionTimer(eq(0L), any(TimerConfig.class));
+    }
+
+    @Test
+    public void startsIdleWatcherInIdleMode() {
+        when(retriever.idleWatcher.isEnabled()).thenReturn(true);
+
+        retriever.poll();
+
+        verify(retriever.downloadService).download();
+        verify(retriever.idleWatcher).start();
+    }
+
+    @Test
+    public void startsSpoolWatcherWhenConfigured() {
+        when(retriever.spoolWatcher.isEnabled()).thenReturn(true);
+
+        retriever.poll();
+
+        verify(retriever.spoolWatcher).start();
+    }
+
+    @Test
+    public void stopsIdleWatcherWhenDisabled() {
+        when(retriever.idleWatcher.isEnabled()).thenReturn(true);
+        when(retriever.startupBean.isIsEnabled()).thenReturn(false);
+
+        retriever.poll();
+
+        verify(retriever.downloadService, never()).download();
+        verify(retriever.idleWatcher).stop();
+        verify(retriever.spoolWatcher).stop();
+        verify(retriever.timerService).createSingleActionTimer(eq(PollSchedule.DEFAULT_MIN_INTERVAL_MILLIS), poll());
+    }
+
+    @Test
+    public void pollsAgainRightAwayWhileMessagesKeepComing() {
+        when(retriever.downloadService.download()).thenReturn(5, 0, 0);
+
+        retriever.poll();
+        retriever.poll();
+        retriever.poll();
+
+        InOrder inOrder = inOrder(retriever.timerService);
+        inOrder.verify(retriever.timerService).createSingleActionTimer(eq(0L), poll());
+        inOrder.verify(retriever.timerService).createSingleActionTimer(eq(10_000L), poll());
+        inOrder.verify(retriever.timerService).createSingleActionTimer(eq(20_000L), poll());
+    }
+
+    @Test
+    public void readsIntervalBoundsFromSettings() {
+        when(retriever.startupBean.getSetting(RetriverBean.POLL_MIN_INTERVAL)).thenReturn("30");
+        when(retriever.startupBean.getSetting(RetriverBean.POLL_MAX_INTERVAL)).thenReturn("45");
+
+        retriever.poll();
+        retriever.poll();
+        retriever.poll();
+
+        InOrder inOrder = inOrder(retriever.timerService);
+        inOrder.verify(retriever.timerService).createSingleActionTimer(eq(30_000L), poll());
+        inOrder.verify(retriever.timerService, times(2)).createSingleActionTimer(eq(45_000L), poll());
+    }
+
+    @Test
+    public void schedulesNextPollWhenDownloadFails() {
+        when(retriever.downloadService.download()).thenThrow(new IllegalStateException("boom"));
+
+        try {
+            retriever.poll();
+        } catch (IllegalStateException expected) {
+            // the timer logs it
+        }
+
+        verify(retriever.timerService).createSingleActionTimer(eq(PollSchedule.DEFAULT_MIN_INTERVAL_MILLIS), poll());
+    }
+
+    private static TimerConfig poll() {
+        return argThat(config -> config != null && RetriverBean.POLL.equals(config.getInfo()));
+    }
+}
@@ -0,0 +1,114 @@
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.SplittableRandom;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SiriusOneFrameReaderTest {
+
+    @Test
+    public void returnsEveryFrameFromShortReads() throws IOException {
+        byte[] attachment = randomBytes(50 * SiriusOneFrame.FRAME_LENGTH);
+        SiriusOneFrameReader reader = new SiriusOneFrameReader(new TrickleInputStream(attachment), 3);
+
+        SiriusOneFrame frame = new SiriusOneFrame();
+        SiriusOneFrame expected = new SiriusOneFrame();
+        int frames = 0;
+        while (reader.next(frame)) {
+            expected.wrap(attachment, frames * SiriusOneFrame.FRAME_LENGTH);
+            assertThat(frame.getTime(), is(expected.getTime()));
+            assertThat(frame.getLatitude(), is(expected.getLatitude()));
+            assertThat(frame.getLongitude(), is(expected.getLongitude()));
+            frames++;
+        }
+
+        assertThat(frames, is(50));
+        assertThat(reader.getFramesRead(), is(50L));
+        assertThat(reader.getTrailingBytes(), is(0));
+    }
+
+    @Test
+    public void fillsBatchesAcrossBufferRefills() throws IOException {
+        byte[] attachment = randomBytes(1000 * SiriusOneFrame.FRAME_LENGTH);
+        SiriusOneFrameReader reader = new SiriusOneFrameReader(new TrickleInputStream(attachment), 7);
+        SiriusOneReportBatch batch = new SiriusOneReportBatch(64);
+        SiriusOneFrame expected = new SiriusOneFrame();
+
+        int total = 0;
+        int read;
+        while ((read = reader.read(batch)) > 0) {
+            assertThat(read, is(batch.size()));
+            for (int i = 0; i < batch.size(); i++) {
+                expected.wrap(attachment, (total + i) * SiriusOneFrame.FRAME_LENGTH);
+                assertThat(batch.getTime(i), is(expected.getTime()));
+                assertThat(batch.getCourse(i), is(expected.getCourse()));
+            }
+            total += read;
+            batch.clear();
+        }
+
+        assertThat(total, is(1000));
+        assertThat(reader.isEndOfStream(), is(true));
+    }
+
+    @Test
+    public void reportsTrailingBytes() throws IOException {
+        byte[] attachment = randomBytes(2 * SiriusOneFrame.FRAME_LENGTH + 7);
+        SiriusOneFrameReader reader = new SiriusOneFrameReader(new ByteArrayInputStream(attachment));
+        SiriusOneReportBatch batch = new SiriusOneReportBatch(10);
+
+        assertThat(reader.read(batch), is(2));
+        assertThat(reader.read(batch), is(0));
+        assertThat(reader.getTrailingBytes(), is(7));
+    }
+
+    @Test
+    public void handlesEmptyStream() throws IOException {
+        SiriusOneFrameReader reader = new SiriusOneFrameReader(new ByteArrayInputStream(new byte[0]));
+
+        assertThat(reader.next(new SiriusOneFrame()), is(false));
+        assertThat(reader.getTrailingBytes(), is(0));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new SplittableRandom(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns at most three bytes per read, like a slow network stream.
+     */
+    private static class TrickleInputStream extends InputStream {
+
+        private final byte[] data;
+        private int position;
+        private int chunk;
+
+        TrickleInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return position < data.length ? data[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position == data.length) {
+                return -1;
+            }
+            int count = Math.min(Math.min(len, chunk++ % 3 + 1), data.length - position);
+            System.arraycopy(data, position, b, off, count);
+            position += count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SiriusOneFrameTest {
+
+    /**
+     * The string based reference decoder is slow, raise this with -Dsiriusone.differential.frames for longer runs.
+     */
+    private static final int RANDOM_FRAMES = Integer.getInteger("siriusone.differential.frames", 1_000_000);
+
+    private final SiriusOneMessage expected = new SiriusOneMessage(new byte[SiriusOneFrame.FRAME_LENGTH], 0, 0);
+
+    @Test
+    public void decodesKnownFrame() {
+        // normal report, gps valid, 1000 minutes, west 10000 units, south 20000 units, speed 50, course 100
+        byte[] frame = frame(0b01L, 1000, 1, 10000, 1, 20000, 50, 100);
+
+        SiriusOneFrame view = new SiriusOneFrame().wrap(frame, 0);
+
+        assertThat(view.isNormalReport(), is(true));
+        assertThat(view.isGpsValid(), is(true));
+        assertThat(view.getTime(), is(1000));
+        assertThat(view.getLongitude(), is(-10000 * 0.000344));
+        assertThat(view.getLatitude(), is(-20000 * 0.000344));
+        assertThat(view.getSpeed(), is(10.0));
+        assertThat(view.getCourse(), is(150.0));
+    }
+
+    @Test
+    public void matchesStringDecoderForEverySingleBit() {
+        byte[] frame = new byte[SiriusOneFrame.FRAME_LENGTH];
+        SiriusOneFrame view = new SiriusOneFrame();
+        for (int bit = 0; bit < SiriusOneFrame.FRAME_LENGTH * 8; bit++) {
+            Arrays.fill(frame, (byte) 0);
+            frame[bit / 8] = (byte) (0x80 >>> (bit % 8));
+            assertSameDecoding(frame, view.wrap(frame, 0));
+        }
+        Arrays.fill(frame, (byte) 0xFF);
+        assertSameDecoding(frame, view.wrap(frame, 0));
+    }
+
+    @Test
+    public void matchesStringDecoderForRandomFrames() {
+        SplittableRandom random = new SplittableRandom(20150101L);
+        byte[] buffer = new byte[SiriusOneFrame.FRAME_LENGTH];
+        SiriusOneFrame view = new SiriusOneFrame();
+        for (int i = 0; i < RANDOM_FRAMES; i++) {
+            random.nextBytes(buffer);
+            assertSameDecoding(buffer, view.wrap(buffer, 0));
+        }
+    }
+
+    @Test
+    public void wrapsFramesAtAnOffset() {
+        byte[] buffer = new byte[3 * SiriusOneFrame.FRAME_LENGTH];
+        new SplittableRandom(1L).nextBytes(buffer);
+        SiriusOneFrame view = new SiriusOneFrame();
+        for (int offset = 0; offset < buffer.length; offset += SiriusOneFrame.FRAME_LENGTH) {
+            byte[] single = Arrays.copyOfRange(buffer, offset, offset + SiriusOneFrame.FRAME_LENGTH);
+            assertSameDecoding(single, view.wrap(buffer, offset));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsIncompleteFrame() {
+        new SiriusOneFrame().wrap(new byte[15], 6);
+    }
+
+    private void assertSameDecoding(byte[] bytes, SiriusOneFrame view) {
+        expected.parse(bytes);
+        if (view.getTime() == expected.time
+                && bits(view.getLatitude()) == bits(expected.getLatitude())
+                && bits(view.getLongitude()) == bits(expected.getLongitude())
+                && bits(view.getSpeed()) == bits(expected.getSpeed())
+                && bits(view.getCourse()) == bits(expected.getCourse())) {
+            return;
+        }
+        String frame = Arrays.toString(bytes);
+        assertThat(frame, view.getTime(), is(expected.time));
+        assertThat(frame, bits(view.getLatitude()), is(bits(expected.getLatitude())));
+        assertThat(frame, bits(view.getLongitude()), is(bits(expected.getLongitude())));
+        assertThat(frame, bits(view.getSpeed()), is(bits(expected.getSpeed())));
+        assertThat(frame, bits(view.getCourse()), is(bits(expected.getCourse())));
+    }
+
+    private static long bits(double value) {
+        return Double.doubleToRawLongBits(value);
+    }
+
+    private static byte[] frame(long flags, int time, int west, int longitude, int south, int latitude, int speed, int course) {
+        long high = flags << 62
+                | (long) time << 39
+                | (long) west << 38
+                | (long) longitude << 19
+                | (long) south << 18
+                | latitude;
+        byte[] frame = new byte[SiriusOneFrame.FRAME_LENGTH];
+        for (int i = 0; i < 8; i++) {
+            frame[i] = (byte) (high >>> (56 - 8 * i));
+        }
+        frame[8] = (byte) speed;
+        frame[9] = (byte) course;
+        return frame;
+    }
+}
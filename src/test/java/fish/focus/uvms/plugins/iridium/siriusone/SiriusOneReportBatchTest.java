@@ -0,0 +1,105 @@
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SiriusOneReportBatchTest {
+
+    @Test
+    public void decodesEveryFrameOfAnAttachment() {
+        byte[] attachment = randomFrames(37, 0);
+        SiriusOneReportBatch batch = new SiriusOneReportBatch(64);
+
+        int frames = batch.decode(attachment, 0, attachment.length);
+
+        assertThat(frames, is(37));
+        assertThat(batch.size(), is(37));
+        assertSameAsFrames(batch, attachment, 0);
+    }
+
+    @Test
+    public void stopsWhenFullAndContinuesAfterClear() {
+        ByteBuffer attachment = ByteBuffer.wrap(randomFrames(25, 0));
+        SiriusOneReportBatch batch = new SiriusOneReportBatch(10);
+
+        int decoded = 0;
+        int batches = 0;
+        while (batch.decode(attachment) > 0) {
+            assertSameAsFrames(batch, attachment.array(), decoded);
+            decoded += batch.size();
+            batches++;
+            batch.clear();
+        }
+
+        assertThat(decoded, is(25));
+        assertThat(batches, is(3));
+        assertThat(attachment.hasRemaining(), is(false));
+    }
+
+    @Test
+    public void leavesTrailingPartialFrameInBuffer() {
+        ByteBuffer attachment = ByteBuffer.wrap(randomFrames(3, 4));
+        SiriusOneReportBatch batch = new SiriusOneReportBatch(10);
+
+        assertThat(batch.decode(attachment), is(3));
+        assertThat(attachment.remaining(), is(4));
+    }
+
+    @Test
+    public void decodesDirectBuffers() {
+        byte[] bytes = randomFrames(12, 0);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        SiriusOneReportBatch batch = new SiriusOneReportBatch(16);
+
+        assertThat(batch.decode(direct), is(12));
+        assertSameAsFrames(batch, bytes, 0);
+    }
+
+    @Test
+    public void decodesFlags() {
+        byte[] bytes = new byte[2 * SiriusOneFrame.FRAME_LENGTH];
+        bytes[0] = (byte) 0b0100_0000;
+        bytes[SiriusOneFrame.FRAME_LENGTH] = (byte) 0b1000_0000;
+        SiriusOneReportBatch batch = new SiriusOneReportBatch(2);
+
+        batch.decode(bytes, 0, bytes.length);
+
+        assertThat(batch.isNormalReport(0), is(true));
+        assertThat(batch.isGpsValid(0), is(true));
+        assertThat(batch.isNormalReport(1), is(false));
+        assertThat(batch.isGpsValid(1), is(false));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsIndexBeyondSize() {
+        SiriusOneReportBatch batch = new SiriusOneReportBatch(4);
+        batch.decode(randomFrames(1, 0), 0, SiriusOneFrame.FRAME_LENGTH);
+        batch.getLatitude(1);
+    }
+
+    private static void assertSameAsFrames(SiriusOneReportBatch batch, byte[] attachment, int firstFrame) {
+        SiriusOneFrame frame = new SiriusOneFrame();
+        for (int i = 0; i < batch.size(); i++) {
+            frame.wrap(attachment, (firstFrame + i) * SiriusOneFrame.FRAME_LENGTH);
+            assertThat(batch.getTime(i), is(frame.getTime()));
+            assertThat(batch.getLatitude(i), is(frame.getLatitude()));
+            assertThat(batch.getLongitude(i), is(frame.getLongitude()));
+            assertThat(batch.getSpeed(i), is(frame.getSpeed()));
+            assertThat(batch.getCourse(i), is(frame.getCourse()));
+            assertThat(batch.isNormalReport(i), is(frame.isNormalReport()));
+            assertThat(batch.isGpsValid(i), is(frame.isGpsValid()));
+        }
+    }
+
+    private static byte[] randomFrames(int frames, int trailingBytes) {
+        byte[] bytes = new byte[frames * SiriusOneFrame.FRAME_LENGTH + trailingBytes];
+        new SplittableRandom(frames).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,50 @@
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import org.junit.Test;
+
+import javax.xml.datatype.DatatypeFactory;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.SplittableRandom;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SiriusOneTimeTest {
+
+    private static final int MAX_MINUTES = 0x7FFFFF;
+
+    @Test
+    public void startsAtReportEpoch() {
+        assertThat(SiriusOneTime.toEpochMillis(0), is(calendarMillis(0)));
+        assertThat(SiriusOneTime.toEpochMillis(MAX_MINUTES), is(calendarMillis(MAX_MINUTES)));
+    }
+
+    @Test
+    public void matchesCalendarArithmeticForRandomMinutes() {
+        SplittableRandom random = new SplittableRandom(2015L);
+        for (int i = 0; i < 10_000; i++) {
+            int minutes = random.nextInt(MAX_MINUTES + 1);
+            assertThat(SiriusOneTime.toEpochMillis(minutes), is(calendarMillis(minutes)));
+            assertThat(SiriusOneTime.toDate(minutes).getTime(), is(calendarMillis(minutes)));
+            assertThat(SiriusOneTime.toInstant(minutes).toEpochMilli(), is(calendarMillis(minutes)));
+        }
+    }
+
+    @Test
+    public void createsSameXmlCalendarAsCalendarArithmetic() throws Exception {
+        int minutes = 3_000_000;
+        GregorianCalendar calendar = new GregorianCalendar(2015, Calendar.JANUARY, 1, 0, 1);
+        calendar.add(Calendar.MINUTE, minutes);
+
+        String expected = DatatypeFactory.newInstance().newXMLGregorianCalendar(calendar).toXMLFormat();
+
+        assertThat(SiriusOneTime.toXmlGregorianCalendar(minutes).toXMLFormat(), is(expected));
+    }
+
+    private static long calendarMillis(int minutes) {
+        GregorianCalendar calendar = new GregorianCalendar(2015, Calendar.JANUARY, 1, 0, 1);
+        calendar.add(Calendar.MINUTE, minutes);
+        return calendar.getTimeInMillis();
+    }
+}
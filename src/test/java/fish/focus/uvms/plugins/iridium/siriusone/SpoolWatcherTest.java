@@ -0,0 +1,160 @@
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import fish.focus.uvms.plugins.iridium.StartupBean;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.BinaryReportChunk;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.IngestPipeline;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.MailTicket;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.XmlReportChunk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.enterprise.concurrent.ManagedExecutorService;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class SpoolWatcherTest {
+
+    private static final String XML = "<devices><device><serial>12345678</serial><positions><position>"
+            + "<lat>57.5</lat><lon>11.5</lon></position></positions></device></devices>";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+    private final SpoolWatcher watcher = new SpoolWatcher();
+    private Path spool;
+
+    @Before
+    public void setUp() {
+        spool = tmp.getRoot().toPath();
+        watcher.executor = mock(ManagedExecutorService.class, delegatesTo(threads));
+        watcher.startupBean = mock(StartupBean.class);
+        watcher.pipeline = mock(IngestPipeline.class);
+        watcher.settleMillis = 50;
+        when(watcher.startupBean.getSetting(SpoolWatcher.SPOOL_DIRECTORY)).thenReturn(spool.toString());
+    }
+
+    @After
+    public void tearDown() {
+        watcher.stop();
+        threads.shutdownNow();
+    }
+
+    @Test
+    public void mapsBinaryFilesAndMovesThemToDone() throws Exception {
+        Files.write(spool.resolve("12345678_1.sbd"), new byte[25]);
+
+        watcher.start();
+        Files.write(spool.resolve("12345678_2.sbd"), new byte[2560]);
+
+        awaitFile(spool.resolve(SpoolWatcher.DONE).resolve("12345678_1.sbd"));
+        awaitFile(spool.resolve(SpoolWatcher.DONE).resolve("12345678_2.sbd"));
+        // two frames, then ten frames in one chunk
+        verify(watcher.pipeline, times(2)).submit(any(BinaryReportChunk.class), any());
+    }
+
+    @Test
+    public void streamsXmlFiles() throws Exception {
+        watcher.start();
+        Files.write(spool.resolve("export.xml"), XML.getBytes(StandardCharsets.UTF_8));
+
+        awaitFile(spool.resolve(SpoolWatcher.DONE).resolve("export.xml"));
+        verify(watcher.pipeline).submit(any(XmlReportChunk.class), any());
+    }
+
+    @Test
+    public void movesUnreadableFilesToFailed() throws Exception {
+        watcher.start();
+        Files.write(spool.resolve("broken.xml"), "<devices><device>".getBytes(StandardCharsets.UTF_8));
+
+        awaitFile(spool.resolve(SpoolWatcher.FAILED).resolve("broken.xml"));
+    }
+
+    @Test
+    public void keepsFilesWhoseReportsWereNotSent() throws Exception {
+        doAnswer(invocation -> {
+            invocation.<MailTicket>getArgument(1).fail();
+            return null;
+        }).when(watcher.pipeline).submit(any(), any());
+        Path report = spool.resolve("12345678_1.sbd");
+        Files.write(report, new byte[10]);
+
+        watcher.start();
+
+        await(() -> mockingDetails(watcher.pipeline).getInvocations().size() > 0);
+        Thread.sleep(200);
+        assertThat(Files.exists(report), is(true));
+        assertThat(Files.exists(spool.resolve(SpoolWatcher.DONE).resolve("12345678_1.sbd")), is(false));
+    }
+
+    @Test
+    public void keepsEarlierFilesOfTheSameName() throws Exception {
+        Path done = Files.createDirectories(spool.resolve(SpoolWatcher.DONE));
+        Files.write(done.resolve("12345678_1.sbd"), new byte[1]);
+        Files.write(done.resolve("12345678_1-1.sbd"), new byte[2]);
+        Files.write(spool.resolve("12345678_1.sbd"), new byte[10]);
+
+        watcher.start();
+
+        awaitFile(done.resolve("12345678_1-2.sbd"));
+        assertThat(Files.size(done.resolve("12345678_1.sbd")), is(1L));
+        assertThat(Files.size(done.resolve("12345678_1-1.sbd")), is(2L));
+        assertThat(Files.size(done.resolve("12345678_1-2.sbd")), is(10L));
+    }
+
+    @Test
+    public void numbersNamesBeforeTheirExtension() {
+        assertThat(SpoolWatcher.numbered("export.xml", 0), is("export.xml"));
+        assertThat(SpoolWatcher.numbered("export.xml", 3), is("export-3.xml"));
+        assertThat(SpoolWatcher.numbered("export", 1), is("export-1"));
+    }
+
+    @Test
+    public void ignoresPartialUploadsAndOtherFiles() throws Exception {
+        Files.write(spool.resolve("12345678_1.sbd.part"), new byte[10]);
+        Files.write(spool.resolve(".12345678_1.sbd"), new byte[10]);
+        Files.write(spool.resolve("readme.txt"), new byte[10]);
+
+        assertThat(SpoolWatcher.accept(spool.resolve("12345678_1.sbd.part")), is(false));
+        assertThat(SpoolWatcher.accept(spool.resolve(".12345678_1.sbd")), is(false));
+        assertThat(SpoolWatcher.accept(spool.resolve("readme.txt")), is(false));
+        assertThat(SpoolWatcher.accept(spool.resolve("missing_1.sbd")), is(false));
+    }
+
+    @Test
+    public void followsChangedSpoolDirectory() throws Exception {
+        watcher.start();
+        Path other = tmp.newFolder("other").toPath();
+        when(watcher.startupBean.getSetting(SpoolWatcher.SPOOL_DIRECTORY)).thenReturn(other.toString());
+
+        watcher.start();
+        Files.write(other.resolve("12345678_1.sbd"), new byte[10]);
+
+        awaitFile(other.resolve(SpoolWatcher.DONE).resolve("12345678_1.sbd"));
+    }
+
+    private static void awaitFile(Path file) throws InterruptedException {
+        await(() -> Files.exists(file));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertThat("timed out", System.currentTimeMillis() < deadline, is(true));
+            Thread.sleep(20);
+        }
+    }
+}
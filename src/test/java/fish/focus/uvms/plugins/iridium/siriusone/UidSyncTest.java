@@ -0,0 +1,212 @@
+package fish.focus.uvms.plugins.iridium.siriusone;
+
+import fish.focus.uvms.plugins.iridium.StartupBean;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.AttachmentJournal;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.MailboxSettings;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.UidCheckpoint;
+import fish.focus.uvms.plugins.iridium.siriusone.mail.UidCheckpointStore;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.IngestPipeline;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.MailTicket;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.mail.*;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class UidSyncTest {
+
+    private static final String REPORT = "<devices><device><serial>E1</serial><positions><position>" +
+            "<gps>2020-09-02 14:59:01</gps><timestamp>2020-09-02 15:00:18</timestamp>" +
+            "<latitude>57.7</latitude><longitude>11.9</longitude></position></positions></device></devices>";
+
+    private static final MailboxSettings SETTINGS = new MailboxSettings("imap.example.com", "993", "user", "secret", "REPORTS");
+
+    private final DownloadService downloadService = new DownloadService();
+    private final Folder folder = mock(Folder.class, withSettings().extraInterfaces(UIDFolder.class));
+    private final UIDFolder uidFolder = (UIDFolder) folder;
+    private UidCheckpointStore checkpoints;
+
+    @Before
+    public void setUp() throws MessagingException {
+        downloadService.startUp = mock(StartupBean.class);
+        downloadService.pipeline = mock(IngestPipeline.class);
+        checkpoints = mock(UidCheckpointStore.class);
+        downloadService.checkpoints = checkpoints;
+        downloadService.journal = mock(AttachmentJournal.class);
+        when(uidFolder.getUIDValidity()).thenReturn(7L);
+    }
+
+    @Test
+    public void fetchesOnlyMessagesAboveCheckpoint() throws Exception {
+        when(checkpoints.load(SETTINGS)).thenReturn(new UidCheckpoint(7, 10));
+        Message newest = message(10, REPORT);
+        Message first = message(11, REPORT);
+        Message second = message(12, REPORT);
+        when(uidFolder.getMessagesByUID(11, UIDFolder.LASTUID)).thenReturn(new Message[]{newest, first, second});
+
+        downloadService.syncByUid(SETTINGS, folder, uidFolder);
+
+        verify(downloadService.pipeline, times(2)).submit(any(), any());
+        verify(newest, never()).getContent();
+        verify(checkpoints).save(any(MailboxSettings.class), argThat(c -> c.getLastUid() == 12));
+        verify(folder, never()).search(any());
+    }
+
+    @Test
+    public void stopsAtFailedMessage() throws Exception {
+        when(checkpoints.load(SETTINGS)).thenReturn(new UidCheckpoint(7, 10));
+        Message first = message(11, REPORT);
+        Message broken = message(12, "<devices><device><positions><position/></positions></device></devices>");
+        Message third = message(13, REPORT);
+        when(uidFolder.getMessagesByUID(11, UIDFolder.LASTUID)).thenReturn(new Message[]{first, broken, third});
+
+        downloadService.syncByUid(SETTINGS, folder, uidFolder);
+
+        verify(third, never()).getContent();
+        verify(checkpoints).save(any(MailboxSettings.class), argThat(c -> c.getLastUid() == 11 && c.getFailedUid() == 0));
+        verify(checkpoints).save(any(MailboxSettings.class), argThat(c -> c.getLastUid() == 11 && c.getFailedUid() == 12 && c.getAttempts() == 1));
+        verify(checkpoints, never()).save(any(MailboxSettings.class), argThat(c -> c.getLastUid() > 11));
+    }
+
+    @Test
+    public void movesPastMessageThatKeepsFailing() throws Exception {
+        UidCheckpoint[] stored = {new UidCheckpoint(7, 10)};
+        when(checkpoints.load(SETTINGS)).thenAnswer(invocation -> stored[0]);
+        doAnswer(invocation -> stored[0] = invocation.getArgument(1)).when(checkpoints).save(any(), any());
+        String poison = "<devices><device><positions><position/></positions></device></devices>";
+        when(uidFolder.getMessagesByUID(anyLong(), eq(UIDFolder.LASTUID))).thenAnswer(invocation -> {
+            long from = invocation.getArgument(0);
+            List<Message> mails = new ArrayList<>();
+            for (long uid = from; uid <= 13; uid++) {
+                mails.add(message(uid, uid == 12 ? poison : REPORT));
+            }
+            return mails.toArray(new Message[0]);
+        });
+
+        for (int attempt = 1; attempt < DownloadService.MAX_UID_ATTEMPTS; attempt++) {
+            downloadService.syncByUid(SETTINGS, folder, uidFolder);
+            assertThat(stored[0].getLastUid(), is(11L));
+            assertThat(stored[0].getAttempts(), is(attempt));
+        }
+        downloadService.syncByUid(SETTINGS, folder, uidFolder);
+        assertThat(stored[0].getLastUid(), is(12L));
+
+        downloadService.syncByUid(SETTINGS, folder, uidFolder);
+        assertThat(stored[0].getLastUid(), is(13L));
+        assertThat(stored[0].getFailedUid(), is(0L));
+    }
+
+    @Test
+    public void stopsAtMessageWhoseReportsWereNotSent() throws Exception {
+        when(checkpoints.load(SETTINGS)).thenReturn(new UidCheckpoint(7, 10));
+        Message first = message(11, REPORT);
+        Message unsent = message(12, REPORT);
+        Message third = message(13, REPORT);
+        when(uidFolder.getMessagesByUID(11, UIDFolder.LASTUID)).thenReturn(new Message[]{first, unsent, third});
+        List<MailTicket> tickets = new ArrayList<>();
+        doAnswer(invocation -> {
+            tickets.add(invocation.getArgument(1));
+            if (tickets.size() == 3) {
+                tickets.get(1).fail(); // sending fails while the next message is decoded
+            }
+            return null;
+        }).when(downloadService.pipeline).submit(any(), any());
+
+        downloadService.syncByUid(SETTINGS, folder, uidFolder);
+
+        verify(folder).setFlags(aryEq(new Message[]{first, third}), eq(new Flags(Flags.Flag.SEEN)), eq(true));
+        verify(folder).setFlags(aryEq(new Message[]{unsent}), eq(new Flags(Flags.Flag.SEEN)), eq(false));
+        verify(checkpoints).save(any(MailboxSettings.class), argThat(c -> c.getLastUid() == 11 && c.getFailedUid() == 0));
+        verify(checkpoints).save(any(MailboxSettings.class), argThat(c -> c.getLastUid() == 11 && c.getFailedUid() == 12));
+        verify(checkpoints, never()).save(any(MailboxSettings.class), argThat(c -> c.getLastUid() > 11));
+    }
+
+    @Test
+    public void startsFromUnseenMessagesWhenUidValidityChanged() throws Exception {
+        when(checkpoints.load(SETTINGS)).thenReturn(new UidCheckpoint(6, 500));
+        when(uidFolder.getUIDNext()).thenReturn(21L);
+        Message unseen = message(20, REPORT);
+        when(folder.search(any())).thenReturn(new Message[]{unseen});
+
+        downloadService.syncByUid(SETTINGS, folder, uidFolder);
+
+        verify(downloadService.pipeline).submit(any(), any());
+        verify(checkpoints).save(any(MailboxSettings.class), argThat(c -> c.getUidValidity() == 7 && c.getLastUid() == 20));
+        assertThat(mockingDetails(uidFolder).getInvocations().stream().anyMatch(i -> i.getMethod().getName().equals("getMessagesByUID")), is(false));
+    }
+
+    @Test
+    public void firstSyncContinuesBelowFailedUnseenMessage() throws Exception {
+        when(uidFolder.getUIDNext()).thenReturn(31L);
+        Message first = message(20, REPORT);
+        Message broken = message(25, "<devices><device><positions><position/></positions></device></devices>");
+        Message third = message(30, REPORT);
+        when(folder.search(any())).thenReturn(new Message[]{first, broken, third});
+
+        downloadService.syncByUid(SETTINGS, folder, uidFolder);
+
+        verify(checkpoints).save(any(MailboxSettings.class), argThat(c -> c.getUidValidity() == 7 && c.getLastUid() == 24));
+        verify(checkpoints, never()).save(any(MailboxSettings.class), argThat(c -> c.getLastUid() > 24));
+    }
+
+    @Test
+    public void skipsSeenMessagesBetweenFailedUnseenMessageAndNewestOfFirstSync() throws Exception {
+        UidCheckpoint[] stored = {null};
+        when(checkpoints.load(SETTINGS)).thenAnswer(invocation -> stored[0]);
+        doAnswer(invocation -> stored[0] = invocation.getArgument(1)).when(checkpoints).save(any(), any());
+        when(uidFolder.getUIDNext()).thenReturn(31L);
+        Message first = message(20, REPORT);
+        Message broken = message(25, "<devices><device><positions><position/></positions></device></devices>");
+        Message third = message(30, REPORT);
+        when(folder.search(any())).thenReturn(new Message[]{first, broken, third});
+
+        downloadService.syncByUid(SETTINGS, folder, uidFolder);
+        assertThat(stored[0].getLastUid(), is(24L));
+        assertThat(stored[0].getUnseenOnlyUpTo(), is(30L));
+
+        Message retried = message(25, REPORT);
+        Message readByPerson = seen(message(27, REPORT));
+        Message sentByFirstSync = seen(message(30, REPORT));
+        Message newer = message(31, REPORT);
+        when(uidFolder.getMessagesByUID(25, UIDFolder.LASTUID)).thenReturn(new Message[]{retried, readByPerson, sentByFirstSync, newer});
+        reset(downloadService.pipeline);
+
+        downloadService.syncByUid(SETTINGS, folder, uidFolder);
+
+        verify(downloadService.pipeline, times(2)).submit(any(), any());
+        verify(readByPerson, never()).getContent();
+        verify(sentByFirstSync, never()).getContent();
+        verify(folder).setFlags(aryEq(new Message[]{retried, newer}), eq(new Flags(Flags.Flag.SEEN)), eq(true));
+        assertThat(stored[0].getLastUid(), is(31L));
+        assertThat(stored[0].getUnseenOnlyUpTo(), is(0L));
+    }
+
+    private static Message seen(Message message) throws MessagingException {
+        when(message.isSet(Flags.Flag.SEEN)).thenReturn(true);
+        return message;
+    }
+
+    private Message message(long uid, String xml) throws Exception {
+        BodyPart attachment = mock(BodyPart.class);
+        when(attachment.getDisposition()).thenReturn(Part.ATTACHMENT);
+        when(attachment.getFileName()).thenReturn("report.xml");
+        when(attachment.getInputStream()).thenReturn(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        Multipart multipart = mock(Multipart.class);
+        when(multipart.getCount()).thenReturn(1);
+        when(multipart.getBodyPart(0)).thenReturn(attachment);
+        Message message = mock(Message.class);
+        when(message.getContent()).thenReturn(multipart);
+        when(message.isMimeType("multipart/*")).thenReturn(true);
+        when(uidFolder.getUID(message)).thenReturn(uid);
+        return message;
+    }
+}
@@ -0,0 +1,112 @@
+package fish.focus.uvms.plugins.iridium.siriusone.mail;
+
+import fish.focus.uvms.plugins.iridium.siriusone.ReportDecoder;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.MailTicket;
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.ReportSink;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.mail.BodyPart;
+import javax.mail.Multipart;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.*;
+
+public class AttachmentJournalTest {
+
+    private static final MailboxSettings MAILBOX = new MailboxSettings("imap.example.com", "143", "user", "secret", "REPORTS");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final List<Integer> submitted = new ArrayList<>();
+
+    @Test
+    public void resumesAttachmentAfterReportsSentWithoutGap() throws Exception {
+        AttachmentJournal journal = new AttachmentJournal(tmp.getRoot().toPath());
+        Multipart mail = mail(new byte[600 * 10], new byte[10]);
+        // the second chunk of 256 reports of the first attachment is not sent
+        ReportSink failSecond = sink(2);
+
+        MailTicket ticket = new MailTicket();
+        MailProgress progress = journal.open(MAILBOX, "7.12");
+        ReportDecoder.decodeParts(failSecond, ticket, mail, progress);
+        ticket.seal();
+        progress.completed(ticket.isSent());
+        journal.commit(MAILBOX, List.of(progress));
+        assertThat(submitted, is(List.of(256, 256, 88, 1)));
+
+        submitted.clear();
+        MailProgress retry = new AttachmentJournal(tmp.getRoot().toPath()).open(MAILBOX, "7.12");
+        assertThat(retry.offset("1"), is(256L));
+        assertThat(retry.offset("2"), is(MailProgress.DONE));
+        ReportDecoder.decodeParts(sink(0), new MailTicket(), mail(new byte[600 * 10], new byte[10]), retry);
+
+        assertThat(submitted, is(List.of(256, 88)));
+    }
+
+    @Test
+    public void forgetsMailOnceSentAndSkipsIdenticalAttachments() throws Exception {
+        AttachmentJournal journal = new AttachmentJournal(tmp.getRoot().toPath());
+        MailTicket ticket = new MailTicket();
+        MailProgress progress = journal.open(MAILBOX, "7.12");
+        ReportDecoder.decodeParts(sink(0), ticket, mail(new byte[20]), progress);
+        ticket.seal();
+        progress.completed(ticket.isSent());
+        journal.commit(MAILBOX, List.of(progress));
+
+        AttachmentJournal reloaded = new AttachmentJournal(tmp.getRoot().toPath());
+        assertThat(reloaded.open(MAILBOX, "7.12").offset("1"), is(0L));
+        submitted.clear();
+        Multipart resent = mail(new byte[20]);
+        int attachments = ReportDecoder.decodeParts(sink(0), new MailTicket(), resent, reloaded.open(MAILBOX, "7.13"));
+
+        assertThat(attachments, is(1));
+        assertThat(submitted, is(List.of()));
+    }
+
+    @Test
+    public void keepsMailboxesApart() throws Exception {
+        AttachmentJournal journal = new AttachmentJournal(tmp.getRoot().toPath());
+        MailboxSettings other = new MailboxSettings("imap.example.com", "143", "user", "secret", "ARCHIVE");
+        MailTicket ticket = new MailTicket();
+        MailProgress progress = journal.open(MAILBOX, "7.12");
+        ReportDecoder.decodeParts(sink(1), ticket, mail(new byte[10], new byte[10]), progress);
+        ticket.seal();
+        progress.completed(ticket.isSent());
+        journal.commit(MAILBOX, List.of(progress));
+
+        assertThat(journal.open(MAILBOX, "7.12").offset("2"), is(MailProgress.DONE));
+        assertThat(journal.open(other, "7.12").offset("2"), is(0L));
+    }
+
+    /**
+     * @param failing the submission to fail, counting from 1, or 0 to send all
+     */
+    private ReportSink sink(int failing) {
+        return (chunk, ticket) -> {
+            submitted.add(chunk.size());
+            if (submitted.size() == failing) {
+                ticket.fail();
+            }
+        };
+    }
+
+    private static Multipart mail(byte[]... attachments) throws Exception {
+        Multipart multipart = mock(Multipart.class);
+        when(multipart.getCount()).thenReturn(attachments.length);
+        for (int i = 0; i < attachments.length; i++) {
+            BodyPart part = mock(BodyPart.class);
+            when(part.getFileName()).thenReturn("1234567" + i + "_1.sbd");
+            when(part.getSize()).thenReturn(attachments[i].length);
+            when(part.getInputStream()).thenReturn(new ByteArrayInputStream(attachments[i]));
+            when(multipart.getBodyPart(i)).thenReturn(part);
+        }
+        return multipart;
+    }
+}
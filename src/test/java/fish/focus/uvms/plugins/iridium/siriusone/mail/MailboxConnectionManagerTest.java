@@ -0,0 +1,65 @@
+package fish.focus.uvms.plugins.iridium.siriusone.mail;
+
+import org.junit.Test;
+
+import javax.mail.Folder;
+import javax.mail.MessagingException;
+import javax.mail.Store;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.*;
+
+public class MailboxConnectionManagerTest {
+
+    private static final MailboxSettings SETTINGS = new MailboxSettings("imap.example.com", "143", "user", "secret", null);
+
+    private final List<Store> stores = new ArrayList<>();
+    private final MailboxConnectionManager manager = new MailboxConnectionManager(
+            () -> new MailboxConnection(this::connect, System::currentTimeMillis));
+
+    @Test
+    public void keepsConnectionBetweenPolls() throws Exception {
+        Folder first = manager.withFolder(SETTINGS, folder -> folder);
+        Folder second = manager.withFolder(SETTINGS, folder -> folder);
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(stores.size(), is(1));
+    }
+
+    @Test
+    public void closesInvalidatedConnectionOnlyAfterThePollUsingIt() throws Exception {
+        manager.withFolder(SETTINGS, folder -> {
+            manager.invalidate();
+            verify(stores.get(0), never()).close();
+            verify(folder, never()).close(anyBoolean());
+            return null;
+        });
+
+        verify(stores.get(0)).close();
+        manager.withFolder(SETTINGS, folder -> folder);
+        assertThat(stores.size(), is(2));
+    }
+
+    @Test
+    public void closesIdleConnectionOnInvalidate() throws Exception {
+        manager.withFolder(SETTINGS, folder -> folder);
+
+        manager.invalidate();
+
+        verify(stores.get(0)).close();
+    }
+
+    private Store connect(MailboxSettings settings) throws MessagingException {
+        Store store = mock(Store.class);
+        Folder inbox = mock(Folder.class);
+        when(store.isConnected()).thenReturn(true);
+        when(store.getFolder("INBOX")).thenReturn(inbox);
+        when(inbox.isOpen()).thenReturn(true);
+        stores.add(store);
+        return store;
+    }
+}
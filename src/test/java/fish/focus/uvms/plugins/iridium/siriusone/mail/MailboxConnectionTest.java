@@ -0,0 +1,130 @@
+package fish.focus.uvms.plugins.iridium.siriusone.mail;
+
+import org.junit.Test;
+
+import javax.mail.Folder;
+import javax.mail.MessagingException;
+import javax.mail.Store;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+public class MailboxConnectionTest {
+
+    private static final MailboxSettings SETTINGS = new MailboxSettings("imap.example.com", "143", "user", "secret", "REPORTS");
+
+    private final List<Store> stores = new ArrayList<>();
+    private final List<MailboxSettings> connects = new ArrayList<>();
+    private long now = 1_000_000;
+    private MessagingException connectFailure;
+
+    private final MailboxConnection connection = new MailboxConnection(this::connect, () -> now);
+
+    @Test
+    public void reusesLiveConnection() throws MessagingException {
+        Folder first = connection.open(SETTINGS);
+        Folder second = connection.open(SETTINGS);
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(connects.size(), is(1));
+        verify(first, never()).close(anyBoolean());
+    }
+
+    @Test
+    public void reconnectsWhenFolderIsClosed() throws MessagingException {
+        Folder first = connection.open(SETTINGS);
+        when(first.isOpen()).thenReturn(false);
+
+        Folder second = connection.open(SETTINGS);
+
+        assertThat(connects.size(), is(2));
+        assertThat(second == first, is(false));
+        verify(stores.get(0)).close();
+    }
+
+    @Test
+    public void reconnectsWhenStoreIsDisconnected() throws MessagingException {
+        connection.open(SETTINGS);
+        when(stores.get(0).isConnected()).thenReturn(false);
+
+        connection.open(SETTINGS);
+
+        assertThat(connects.size(), is(2));
+    }
+
+    @Test
+    public void reconnectsWhenSettingsChange() throws MessagingException {
+        Folder first = connection.open(SETTINGS);
+        MailboxSettings changed = new MailboxSettings("imap.example.com", "993", "user", "secret", "REPORTS");
+
+        connection.open(changed);
+
+        assertThat(connects, is(List.of(SETTINGS, changed)));
+        verify(first).close(false);
+    }
+
+    @Test
+    public void backsOffAfterFailedConnect() throws MessagingException {
+        connectFailure = new MessagingException("login rate limited");
+        assertConnectFails();
+        assertThat(connects.size(), is(1));
+
+        now += MailboxConnection.MIN_BACKOFF_MILLIS - 1;
+        assertConnectFails();
+        assertThat(connects.size(), is(1));
+
+        now += 1;
+        assertConnectFails();
+        assertThat(connects.size(), is(2));
+
+        connectFailure = null;
+        now += MailboxConnection.backoff(2);
+        connection.open(SETTINGS);
+        assertThat(connects.size(), is(3));
+        assertThat(connection.isOpen(), is(true));
+    }
+
+    @Test
+    public void backoffIsCapped() {
+        assertThat(MailboxConnection.backoff(1), is(MailboxConnection.MIN_BACKOFF_MILLIS));
+        assertThat(MailboxConnection.backoff(2), is(2 * MailboxConnection.MIN_BACKOFF_MILLIS));
+        assertThat(MailboxConnection.backoff(100), is(MailboxConnection.MAX_BACKOFF_MILLIS));
+    }
+
+    @Test
+    public void recognizesNamespacedMailboxSettings() {
+        assertThat(MailboxSettings.isMailboxSetting("fish.focus.uvms.plugins.iridium.siriusone.MAILHOST"), is(true));
+        assertThat(MailboxSettings.isMailboxSetting("fish.focus.uvms.plugins.iridium.siriusone.PSW"), is(true));
+        assertThat(MailboxSettings.isMailboxSetting("fish.focus.uvms.plugins.iridium.siriusone.POLLABLE"), is(false));
+    }
+
+    private void assertConnectFails() {
+        try {
+            connection.open(SETTINGS);
+            fail("Expected connect to fail");
+        } catch (MessagingException expected) {
+            assertThat(connection.isOpen(), is(false));
+        }
+    }
+
+    private Store connect(MailboxSettings settings) throws MessagingException {
+        connects.add(settings);
+        if (connectFailure != null) {
+            throw connectFailure;
+        }
+        Store store = mock(Store.class);
+        Folder inbox = mock(Folder.class);
+        Folder reports = mock(Folder.class);
+        when(store.isConnected()).thenReturn(true);
+        when(store.getFolder("INBOX")).thenReturn(inbox);
+        when(inbox.getFolder("REPORTS")).thenReturn(reports);
+        when(reports.isOpen()).thenReturn(true);
+        stores.add(store);
+        return store;
+    }
+}
@@ -0,0 +1,75 @@
+package fish.focus.uvms.plugins.iridium.siriusone.mail;
+
+import fish.focus.uvms.plugins.iridium.StartupBean;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MailboxSettingsTest {
+
+    private final StartupBean startupBean = mock(StartupBean.class);
+
+    @Before
+    public void setUp() {
+        when(startupBean.getSetting(MailboxSettings.HOST)).thenReturn("imap.example.com");
+        when(startupBean.getSetting("SYNC_MODE")).thenReturn("UNSEEN");
+    }
+
+    @Test
+    public void singleMailboxWithoutMailboxesSetting() {
+        List<MailboxSettings> mailboxes = MailboxSettings.all(startupBean);
+
+        assertThat(mailboxes.size(), is(1));
+        assertThat(mailboxes.get(0).getSource(), is(MailboxSettings.DEFAULT_SOURCE));
+        assertThat(mailboxes.get(0).getHost(), is("imap.example.com"));
+    }
+
+    @Test
+    public void readsPrefixedSettingsOfEachSource() {
+        when(startupBean.getSetting(MailboxSettings.MAILBOXES)).thenReturn(" fleet1,fleet-2 , fleet1,bad.id,");
+        when(startupBean.getSetting("fleet1.MAILHOST")).thenReturn("imap.one.example.com");
+        when(startupBean.getSetting("fleet1.SUBFOLDER")).thenReturn("ONE");
+        when(startupBean.getSetting("fleet-2.MAILHOST")).thenReturn("imap.two.example.com");
+
+        List<MailboxSettings> mailboxes = MailboxSettings.all(startupBean);
+
+        assertThat(MailboxSettings.sources(startupBean), is(Arrays.asList("fleet1", "fleet-2")));
+        assertThat(mailboxes.get(0).getHost(), is("imap.one.example.com"));
+        assertThat(mailboxes.get(0).getSubfolder(), is("ONE"));
+        assertThat(mailboxes.get(1).getHost(), is("imap.two.example.com"));
+        assertThat(mailboxes.get(1).getSubfolder(), is((String) null));
+    }
+
+    @Test
+    public void sourceSettingFallsBackToPluginSetting() {
+        when(startupBean.getSetting("fleet1.SYNC_MODE")).thenReturn("UID");
+
+        assertThat(MailboxSettings.getSetting(startupBean, "fleet1", "SYNC_MODE"), is("UID"));
+        assertThat(MailboxSettings.getSetting(startupBean, "fleet2", "SYNC_MODE"), is("UNSEEN"));
+        assertThat(MailboxSettings.getSetting(startupBean, MailboxSettings.DEFAULT_SOURCE, "SYNC_MODE"), is("UNSEEN"));
+    }
+
+    @Test
+    public void recognizesPrefixedMailboxKeys() {
+        String namespace = "fish.focus.uvms.plugins.iridium.siriusone.";
+
+        assertThat(MailboxSettings.isMailboxSetting(namespace + "fleet1.PSW"), is(true));
+        assertThat(MailboxSettings.isMailboxSetting(namespace + MailboxSettings.MAILBOXES), is(true));
+        assertThat(MailboxSettings.isMailboxSetting(namespace + "fleet1.SYNC_MODE"), is(false));
+    }
+
+    @Test
+    public void emptyMailboxesSettingMeansDefaultSource() {
+        when(startupBean.getSetting(MailboxSettings.MAILBOXES)).thenReturn(" ");
+
+        assertThat(MailboxSettings.sources(startupBean), is(Collections.singletonList(MailboxSettings.DEFAULT_SOURCE)));
+    }
+}
@@ -0,0 +1,110 @@
+package fish.focus.uvms.plugins.iridium.siriusone.mail;
+
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.mail.Flags;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ProcessedMailsTest {
+
+    private final IMAPFolder folder = mock(IMAPFolder.class);
+    private final IMAPStore store = mock(IMAPStore.class);
+    private final Folder september = mock(Folder.class);
+    private final Folder october = mock(Folder.class);
+
+    @Before
+    public void setUp() throws MessagingException {
+        when(folder.getStore()).thenReturn(store);
+        when(folder.getSeparator()).thenReturn('/');
+        when(store.getFolder("Archive/2020/09")).thenReturn(september);
+        when(store.getFolder("Archive/2020/10")).thenReturn(october);
+        when(september.exists()).thenReturn(true);
+        when(october.create(Folder.HOLDS_MESSAGES)).thenReturn(true);
+    }
+
+    @Test
+    public void partitionsByMonthReceived() {
+        assertThat(ProcessedMails.partition("Archive", Date.from(Instant.parse("2020-09-30T23:59:59Z"))), is("Archive/2020/09"));
+        assertThat(ProcessedMails.partition("Archive", Date.from(Instant.parse("2021-01-01T00:00:00Z"))), is("Archive/2021/01"));
+    }
+
+    @Test
+    public void movesEachMonthWithOneMoveCommand() throws MessagingException {
+        when(store.hasCapability("MOVE")).thenReturn(true);
+        Message first = received("2020-09-02T15:00:18Z");
+        Message second = received("2020-09-03T08:00:00Z");
+        Message third = received("2020-10-01T00:00:00Z");
+
+        ProcessedMails.archive(folder, Arrays.asList(first, second, third), "Archive");
+
+        verify(folder).moveMessages(aryEq(new Message[]{first, second}), eq(september));
+        verify(folder).moveMessages(aryEq(new Message[]{third}), eq(october));
+        verify(october).create(Folder.HOLDS_MESSAGES);
+        verify(folder, never()).copyMessages(any(), any());
+    }
+
+    @Test
+    public void copiesAndExpungesByUidWithoutMove() throws MessagingException {
+        when(store.hasCapability("UIDPLUS")).thenReturn(true);
+        Message message = received("2020-09-02T15:00:18Z");
+        Message[] messages = {message};
+
+        ProcessedMails.archive(folder, Arrays.asList(messages), "Archive");
+
+        verify(folder).copyMessages(aryEq(messages), eq(september));
+        verify(folder).setFlags(aryEq(messages), eq(new Flags(Flags.Flag.DELETED)), eq(true));
+        verify(folder).expunge(aryEq(messages));
+        verify(folder, never()).expunge();
+    }
+
+    @Test
+    public void leavesCopiedMessagesFlaggedWithoutMoveAndUidPlus() throws MessagingException {
+        when(store.hasCapability("MOVE")).thenReturn(false);
+        when(store.hasCapability("UIDPLUS")).thenReturn(false);
+        Message message = received("2020-09-02T15:00:18Z");
+        Message[] messages = {message};
+
+        ProcessedMails.archive(folder, Arrays.asList(messages), "Archive");
+
+        verify(store).hasCapability("MOVE");
+        verify(store).hasCapability("UIDPLUS");
+        verify(folder, never()).moveMessages(any(), any());
+        verify(folder).copyMessages(aryEq(messages), eq(september));
+        verify(folder).setFlags(aryEq(messages), eq(new Flags(Flags.Flag.DELETED)), eq(true));
+        // a plain EXPUNGE would also remove the messages other clients flagged as deleted
+        verify(folder, never()).expunge();
+        verify(folder, never()).expunge(any());
+    }
+
+    @Test
+    public void setsFlagsOfAllMessagesAtOnce() throws MessagingException {
+        Message first = mock(Message.class);
+        Message second = mock(Message.class);
+
+        ProcessedMails.setSeen(folder, Arrays.asList(first, second), true);
+        ProcessedMails.setSeen(folder, Arrays.asList(), false);
+
+        verify(folder).setFlags(aryEq(new Message[]{first, second}), eq(new Flags(Flags.Flag.SEEN)), eq(true));
+        verify(folder, times(1)).setFlags(any(Message[].class), any(), anyBoolean());
+    }
+
+    private static Message received(String instant) throws MessagingException {
+        Message message = mock(Message.class);
+        when(message.getReceivedDate()).thenReturn(Date.from(Instant.parse(instant)));
+        return message;
+    }
+}
@@ -0,0 +1,82 @@
+package fish.focus.uvms.plugins.iridium.siriusone.mail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class UidCheckpointStoreTest {
+
+    private static final MailboxSettings MAILBOX = new MailboxSettings("imap.example.com", "143", "user", "secret", "REPORTS");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void savesAndLoadsCheckpoint() {
+        UidCheckpointStore store = new UidCheckpointStore(tmp.getRoot().toPath().resolve("siriusone"));
+
+        store.save(MAILBOX, new UidCheckpoint(1234, 10));
+        store.save(MAILBOX, new UidCheckpoint(1234, 11));
+
+        UidCheckpoint checkpoint = new UidCheckpointStore(tmp.getRoot().toPath().resolve("siriusone")).load(MAILBOX);
+        assertThat(checkpoint.getUidValidity(), is(1234L));
+        assertThat(checkpoint.getLastUid(), is(11L));
+    }
+
+    @Test
+    public void keepsFailedAttempts() {
+        UidCheckpointStore store = new UidCheckpointStore(tmp.getRoot().toPath());
+
+        store.save(MAILBOX, new UidCheckpoint(1234, 10, 11, 2));
+
+        UidCheckpoint checkpoint = store.load(MAILBOX);
+        assertThat(checkpoint.getLastUid(), is(10L));
+        assertThat(checkpoint.getFailedUid(), is(11L));
+        assertThat(checkpoint.getAttempts(), is(2));
+        assertThat(checkpoint.attemptsAfterFailureOf(11), is(3));
+        assertThat(checkpoint.attemptsAfterFailureOf(12), is(1));
+    }
+
+    @Test
+    public void keepsNewestMessageOfFirstSync() {
+        UidCheckpointStore store = new UidCheckpointStore(tmp.getRoot().toPath());
+
+        store.save(MAILBOX, new UidCheckpoint(1234, 24, 25, 1, 30));
+
+        UidCheckpoint checkpoint = store.load(MAILBOX);
+        assertThat(checkpoint.getLastUid(), is(24L));
+        assertThat(checkpoint.getFailedUid(), is(25L));
+        assertThat(checkpoint.getUnseenOnlyUpTo(), is(30L));
+        assertThat(new UidCheckpoint(1234, 30, 0, 0, 30).getUnseenOnlyUpTo(), is(0L));
+    }
+
+    @Test
+    public void keepsMailboxesApart() {
+        UidCheckpointStore store = new UidCheckpointStore(tmp.getRoot().toPath());
+        MailboxSettings other = new MailboxSettings("imap.example.com", "143", "user", "secret", "ARCHIVE");
+
+        store.save(MAILBOX, new UidCheckpoint(1, 10));
+
+        assertThat(store.load(other), is(nullValue()));
+    }
+
+    @Test
+    public void ignoresCorruptCheckpoint() throws IOException {
+        Path directory = tmp.getRoot().toPath();
+        UidCheckpointStore store = new UidCheckpointStore(directory);
+        store.save(MAILBOX, new UidCheckpoint(1, 10));
+        try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+            Files.write(files.findFirst().get(), "garbage".getBytes());
+        }
+
+        assertThat(store.load(MAILBOX), is(nullValue()));
+    }
+}
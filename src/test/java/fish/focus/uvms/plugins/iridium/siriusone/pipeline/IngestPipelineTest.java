@@ -0,0 +1,399 @@
+package fish.focus.uvms.plugins.iridium.siriusone.pipeline;
+
+import fish.focus.schema.exchange.movement.v1.SetReportMovementType;
+import fish.focus.uvms.plugins.iridium.StartupBean;
+import fish.focus.uvms.plugins.iridium.service.ExchangeService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.jms.CompletionListener;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntToLongFunction;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class IngestPipelineTest {
+
+    private static final AtomicLong NEXT_KEY = new AtomicLong(1);
+
+    private final IngestPipeline pipeline = new IngestPipeline();
+
+    @Before
+    public void setUp() {
+        pipeline.startupBean = mock(StartupBean.class);
+        pipeline.exchange = mock(ExchangeService.class);
+        when(pipeline.exchange.createMovementReportRequest(any())).thenReturn("request");
+        pipeline.start(Executors.defaultThreadFactory());
+    }
+
+    @After
+    public void tearDown() {
+        pipeline.stop();
+    }
+
+    @Test
+    public void completesTicketWhenAllReportsAreSent() throws Exception {
+        MailTicket ticket = new MailTicket();
+        pipeline.submit(chunk(3), ticket);
+        pipeline.submit(chunk(2), ticket);
+        ticket.seal();
+
+        assertThat(ticket.awaitSent(5, TimeUnit.SECONDS), is(true));
+        verify(pipeline.exchange, times(5)).sendMovementReportRequest("request");
+        assertThat(pipeline.getReportsSent(), is(5L));
+    }
+
+    @Test
+    public void failsTicketWhenReportIsNotSent() throws Exception {
+        doNothing().doThrow(new JMSException("queue full")).when(pipeline.exchange).sendMovementReportRequest(anyString());
+        MailTicket ticket = new MailTicket();
+        pipeline.submit(chunk(2), ticket);
+        ticket.seal();
+
+        assertThat(ticket.awaitSent(5, TimeUnit.SECONDS), is(false));
+        assertThat(ticket.isFailed(), is(true));
+        assertThat(pipeline.getReportsFailed(), is(1L));
+    }
+
+    @Test
+    public void dropsReportsSentBefore() throws Exception {
+        MailTicket first = new MailTicket();
+        pipeline.submit(chunk(3, index -> 100 + index), first);
+        first.seal();
+        assertThat(first.awaitSent(5, TimeUnit.SECONDS), is(true));
+
+        MailTicket again = new MailTicket();
+        pipeline.submit(chunk(4, index -> 100 + index), again);
+        again.seal();
+
+        assertThat(again.awaitSent(5, TimeUnit.SECONDS), is(true));
+        verify(pipeline.exchange, times(4)).createMovementReportRequest(any());
+        verify(pipeline.exchange, times(4)).sendMovementReportRequest("request");
+        assertThat(pipeline.getDuplicatesDropped(), is(3L));
+    }
+
+    @Test
+    public void sendsFailedReportsAgain() throws Exception {
+        doThrow(new JMSException("queue full")).doNothing().when(pipeline.exchange).sendMovementReportRequest(anyString());
+        MailTicket first = new MailTicket();
+        pipeline.submit(chunk(1, index -> 200), first);
+        first.seal();
+        assertThat(first.awaitSent(5, TimeUnit.SECONDS), is(false));
+
+        MailTicket retry = new MailTicket();
+        pipeline.submit(chunk(1, index -> 200), retry);
+        retry.seal();
+
+        assertThat(retry.awaitSent(5, TimeUnit.SECONDS), is(true));
+        verify(pipeline.exchange, times(2)).sendMovementReportRequest("request");
+        assertThat(pipeline.getDuplicatesDropped(), is(0L));
+    }
+
+    @Test
+    public void sendsReportsInBatches() throws Exception {
+        when(pipeline.startupBean.getSetting(IngestPipeline.BATCH_SIZE)).thenReturn("10");
+        when(pipeline.startupBean.getSetting(IngestPipeline.BATCH_LINGER_MILLIS)).thenReturn("1000");
+        List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> batches.add(invocation.<List<String>>getArgument(0).size()))
+                .when(pipeline.exchange).sendMovementReportRequests(any());
+        MailTicket ticket = new MailTicket();
+        pipeline.submit(chunk(25), ticket);
+        ticket.seal();
+
+        assertThat(ticket.awaitSent(5, TimeUnit.SECONDS), is(true));
+        assertThat(pipeline.getReportsSent(), is(25L));
+        // a report left alone in the queue goes out on its own
+        assertThat(batches.isEmpty(), is(false));
+        assertThat(batches.stream().allMatch(size -> size <= 10), is(true));
+        assertThat(pipeline.getBatchesSent() < 25, is(true));
+        assertThat(pipeline.getAverageBatchSize() > 1, is(true));
+        assertThat(pipeline.getBatchSize(), is(10));
+    }
+
+    @Test
+    public void sendsBatchAfterLingerWhenNoMoreReportsCome() throws Exception {
+        when(pipeline.startupBean.getSetting(IngestPipeline.BATCH_SIZE)).thenReturn("100");
+        when(pipeline.startupBean.getSetting(IngestPipeline.BATCH_LINGER_MILLIS)).thenReturn("50");
+        MailTicket ticket = new MailTicket();
+        pipeline.submit(chunk(3), ticket);
+        ticket.seal();
+
+        assertThat(ticket.awaitSent(5, TimeUnit.SECONDS), is(true));
+        assertThat(pipeline.getReportsSent(), is(3L));
+    }
+
+    @Test
+    public void failsAllReportsOfFailedBatch() throws Exception {
+        when(pipeline.startupBean.getSetting(IngestPipeline.BATCH_SIZE)).thenReturn("10");
+        when(pipeline.startupBean.getSetting(IngestPipeline.BATCH_LINGER_MILLIS)).thenReturn("1000");
+        doThrow(new JMSException("transaction rolled back")).when(pipeline.exchange).sendMovementReportRequests(any());
+        doThrow(new JMSException("transaction rolled back")).when(pipeline.exchange).sendMovementReportRequest(anyString());
+        MailTicket ticket = new MailTicket();
+        pipeline.submit(chunk(10, index -> 300 + index), ticket);
+        ticket.seal();
+
+        assertThat(ticket.awaitSent(5, TimeUnit.SECONDS), is(false));
+        assertThat(pipeline.getReportsSent(), is(0L));
+        assertThat(pipeline.getReportsFailed(), is(10L));
+        assertThat(pipeline.getRecentReports(), is(0));
+    }
+
+    @Test
+    public void completesTicketOnlyWhenBrokerAcknowledgesAsyncSends() throws Exception {
+        when(pipeline.startupBean.getSetting(IngestPipeline.SEND_MODE)).thenReturn("ASYNC");
+        List<CompletionListener> listeners = captureAsyncSends();
+        MailTicket ticket = new MailTicket();
+        pipeline.submit(chunk(3), ticket);
+        ticket.seal();
+
+        awaitCondition(() -> listeners.size() == 3);
+        assertThat(ticket.awaitSent(100, TimeUnit.MILLISECONDS), is(false));
+        assertThat(pipeline.getInFlight(), is(3));
+
+        listeners.forEach(listener -> listener.onCompletion(mock(Message.class)));
+
+        assertThat(ticket.awaitSent(5, TimeUnit.SECONDS), is(true));
+        assertThat(pipeline.getReportsSent(), is(3L));
+        assertThat(pipeline.getInFlight(), is(0));
+        verify(pipeline.exchange, never()).sendMovementReportRequest(anyString());
+    }
+
+    @Test
+    public void holdsBackAsyncSendsBeyondTheWindow() throws Exception {
+        when(pipeline.startupBean.getSetting(IngestPipeline.SEND_MODE)).thenReturn("ASYNC");
+        when(pipeline.startupBean.getSetting(IngestPipeline.SEND_WINDOW)).thenReturn("2");
+        List<CompletionListener> listeners = captureAsyncSends();
+        MailTicket ticket = new MailTicket();
+        pipeline.submit(chunk(5), ticket);
+        ticket.seal();
+
+        awaitCondition(() -> listeners.size() == 2);
+        Thread.sleep(100);
+        assertThat(listeners.size(), is(2));
+
+        for (int acknowledged = 0; acknowledged < 5; acknowledged++) {
+            int sent = acknowledged + 1;
+            awaitCondition(() -> listeners.size() >= sent);
+            listeners.get(acknowledged).onCompletion(mock(Message.class));
+        }
+
+        assertThat(ticket.awaitSent(5, TimeUnit.SECONDS), is(true));
+        assertThat(pipeline.getSendWindow(), is(2));
+    }
+
+    @Test
+    public void failsTicketWhenBrokerRejectsAsyncSend() throws Exception {
+        when(pipeline.startupBean.getSetting(IngestPipeline.SEND_MODE)).thenReturn("ASYNC");
+        List<CompletionListener> listeners = captureAsyncSends();
+        MailTicket ticket = new MailTicket();
+        pipeline.submit(chunk(2), ticket);
+        ticket.seal();
+
+        awaitCondition(() -> listeners.size() == 2);
+        listeners.get(0).onCompletion(mock(Message.class));
+        listeners.get(1).onException(mock(Message.class), new JMSException("address full"));
+
+        assertThat(ticket.awaitSent(5, TimeUnit.SECONDS), is(false));
+        assertThat(ticket.isFailed(), is(true));
+        assertThat(pipeline.getReportsFailed(), is(1L));
+        assertThat(pipeline.getRecentReports(), is(1));
+    }
+
+    @Test
+    public void completesDuplicateWhenReportBeingSentIsAcknowledged() throws Exception {
+        when(pipeline.startupBean.getSetting(IngestPipeline.SEND_MODE)).thenReturn("ASYNC");
+        List<CompletionListener> listeners = captureAsyncSends();
+        MailTicket original = new MailTicket();
+        pipeline.submit(chunk(1, index -> 300), original);
+        original.seal();
+        awaitCondition(() -> listeners.size() == 1);
+
+        MailTicket copy = new MailTicket();
+        pipeline.submit(chunk(1, index -> 300), copy);
+        copy.seal();
+        assertThat(copy.awaitSent(100, TimeUnit.MILLISECONDS), is(false));
+
+        listeners.get(0).onCompletion(mock(Message.class));
+
+        assertThat(original.awaitSent(5, TimeUnit.SECONDS), is(true));
+        assertThat(copy.awaitSent(5, TimeUnit.SECONDS), is(true));
+        assertThat(listeners.size(), is(1));
+        assertThat(pipeline.getDuplicatesDropped(), is(1L));
+    }
+
+    @Test
+    public void failsDuplicateWhenReportBeingSentFails() throws Exception {
+        when(pipeline.startupBean.getSetting(IngestPipeline.SEND_MODE)).thenReturn("ASYNC");
+        List<CompletionListener> listeners = captureAsyncSends();
+        MailTicket original = new MailTicket();
+        pipeline.submit(chunk(1, index -> 400), original);
+        original.seal();
+        awaitCondition(() -> listeners.size() == 1);
+
+        MailTicket copy = new MailTicket();
+        pipeline.submit(chunk(1, index -> 400), copy);
+        copy.seal();
+        assertThat(copy.awaitSent(100, TimeUnit.MILLISECONDS), is(false));
+
+        listeners.get(0).onException(mock(Message.class), new JMSException("address full"));
+
+        assertThat(copy.awaitSent(5, TimeUnit.SECONDS), is(false));
+        assertThat(copy.isFailed(), is(true));
+        assertThat(pipeline.getReportsFailed(), is(2L));
+        assertThat(pipeline.getDuplicatesDropped(), is(0L));
+        assertThat(pipeline.getRecentReports(), is(0));
+    }
+
+    @Test
+    public void blocksSubmitterWhileQueuesAreFull() throws Exception {
+        CountDownLatch exchangeAvailable = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            exchangeAvailable.await();
+            return null;
+        }).when(pipeline.exchange).sendMovementReportRequest(anyString());
+        MailTicket ticket = new MailTicket();
+        int chunks = IngestPipeline.SEND_QUEUE_CAPACITY + IngestPipeline.MAP_QUEUE_CAPACITY + IngestPipeline.MAP_WORKERS + 10;
+        Thread download = new Thread(() -> {
+            for (int i = 0; i < chunks; i++) {
+                pipeline.submit(chunk(1), ticket);
+            }
+            ticket.seal();
+        });
+        download.start();
+
+        awaitCondition(() -> pipeline.getSendQueueDepth() == IngestPipeline.SEND_QUEUE_CAPACITY
+                && pipeline.getMapQueueDepth() == IngestPipeline.MAP_QUEUE_CAPACITY);
+        download.join(200);
+        assertThat(download.isAlive(), is(true));
+
+        exchangeAvailable.countDown();
+        download.join(5000);
+        assertThat(download.isAlive(), is(false));
+        assertThat(ticket.awaitSent(5, TimeUnit.SECONDS), is(true));
+        assertThat(pipeline.getReportsSent(), is((long) chunks));
+    }
+
+    @Test
+    public void failsQueuedReportsWhenStoppedWithoutWaiting() throws Exception {
+        CountDownLatch exchangeAvailable = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            exchangeAvailable.await();
+            return null;
+        }).when(pipeline.exchange).sendMovementReportRequest(anyString());
+        MailTicket ticket = new MailTicket();
+        int chunks = IngestPipeline.SEND_QUEUE_CAPACITY + IngestPipeline.MAP_QUEUE_CAPACITY + IngestPipeline.MAP_WORKERS + 10;
+        Thread download = new Thread(() -> {
+            for (int i = 0; i < chunks; i++) {
+                pipeline.submit(chunk(1), ticket);
+            }
+            ticket.seal();
+        });
+        download.start();
+        awaitCondition(() -> pipeline.getSendQueueDepth() == IngestPipeline.SEND_QUEUE_CAPACITY
+                && pipeline.getMapQueueDepth() == IngestPipeline.MAP_QUEUE_CAPACITY);
+
+        Thread undeploy = new Thread(pipeline::stop);
+        undeploy.start();
+        undeploy.interrupt();
+        undeploy.join(5000);
+        download.join(5000);
+
+        assertThat(undeploy.isAlive(), is(false));
+        long start = System.nanoTime();
+        assertThat(ticket.awaitSent(10, TimeUnit.SECONDS), is(false));
+        assertThat(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), is(true));
+        assertThat(ticket.isFailed(), is(true));
+        assertThat(pipeline.getReportsFailed(), is((long) chunks));
+        assertThat(pipeline.getSendQueueDepth(), is(0));
+    }
+
+    private List<CompletionListener> captureAsyncSends() throws JMSException {
+        List<CompletionListener> listeners = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> listeners.add(invocation.getArgument(1)))
+                .when(pipeline.exchange).sendMovementReportRequest(anyString(), any(CompletionListener.class));
+        return listeners;
+    }
+
+    @Test
+    public void rejectsTaskWaitingForRoomWhenStageShutsDown() throws Exception {
+        CountDownLatch busy = new CountDownLatch(1);
+        ThreadPoolExecutor stage = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+        stage.execute(() -> {
+            try {
+                busy.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        stage.execute(() -> {
+        });
+        AtomicBoolean ran = new AtomicBoolean();
+        AtomicBoolean rejected = new AtomicBoolean();
+        Thread submitter = new Thread(() -> {
+            try {
+                IngestPipeline.BLOCK_WHEN_FULL.rejectedExecution(() -> ran.set(true), stage);
+            } catch (RejectedExecutionException e) {
+                rejected.set(true);
+            }
+        });
+        submitter.start();
+
+        stage.shutdown();
+        busy.countDown();
+        submitter.join(5000);
+        assertThat(stage.awaitTermination(5, TimeUnit.SECONDS), is(true));
+
+        assertThat(submitter.isAlive(), is(false));
+        assertThat(rejected.get() != ran.get(), is(true));
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat("condition within 5 seconds", System.nanoTime() < deadline, is(true));
+            Thread.sleep(10);
+        }
+    }
+
+    private static ReportChunk chunk(int size) {
+        long first = NEXT_KEY.getAndAdd(size);
+        return chunk(size, index -> first + index);
+    }
+
+    private static ReportChunk chunk(int size, IntToLongFunction keys) {
+        return new ReportChunk() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public long key(int index) {
+                return keys.applyAsLong(index);
+            }
+
+            @Override
+            public SetReportMovementType map(int index, String pluginName) {
+                return new SetReportMovementType();
+            }
+        };
+    }
+}
@@ -0,0 +1,165 @@
+package fish.focus.uvms.plugins.iridium.siriusone.pipeline;
+
+import fish.focus.uvms.plugins.iridium.siriusone.pipeline.ReportDeduplicator.Claim;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ReportDeduplicatorTest {
+
+    private static final long TTL = 60_000;
+
+    @Test
+    public void detectsDuplicates() {
+        ReportDeduplicator recent = new ReportDeduplicator(100, TTL);
+
+        long first = ReportDeduplicator.key(12345678, 1_600_000_000, 57.7, 11.9);
+        long later = ReportDeduplicator.key(12345678, 1_600_000_060, 57.7, 11.9);
+        long other = ReportDeduplicator.key(12345679, 1_600_000_000, 57.7, 11.9);
+        for (long key : new long[]{first, later, other}) {
+            assertThat(recent.claim(key, 0), is(Claim.NEW));
+            recent.sent(key);
+        }
+
+        assertThat(recent.claim(first, 1), is(Claim.SENT));
+        assertThat(recent.size(), is(3));
+    }
+
+    @Test
+    public void tellsApartPositionsOfTheSameMinute() {
+        long key = ReportDeduplicator.key(12345678, 1_600_000_020, 57.7, 11.9);
+
+        assertThat(ReportDeduplicator.key(12345678, 1_600_000_020, 57.71, 11.9), not(key));
+        assertThat(ReportDeduplicator.key(12345678, 1_600_000_020, 57.7, 11.91), not(key));
+        assertThat(ReportDeduplicator.key(12345678, 1_600_000_020, 11.9, 57.7), not(key));
+        assertThat(ReportDeduplicator.key(12345678, 1_600_000_020, Double.NaN, Double.NaN), not(key));
+    }
+
+    @Test
+    public void countsClaimedReportAsSentOnlyOnceConfirmed() {
+        ReportDeduplicator recent = new ReportDeduplicator(100, TTL);
+
+        assertThat(recent.claim(1, 0), is(Claim.NEW));
+        assertThat(recent.claim(1, 0), is(Claim.SENDING));
+        recent.sent(1);
+        assertThat(recent.claim(1, 0), is(Claim.SENT));
+
+        assertThat(recent.claim(2, 0), is(Claim.NEW));
+        recent.remove(2);
+        assertThat(recent.claim(2, 0), is(Claim.NEW));
+    }
+
+    @Test
+    public void keepsClaimsWhenKeysMoveOnRemoval() {
+        ReportDeduplicator recent = new ReportDeduplicator(5_000, TTL);
+        Random random = new Random(7);
+        Set<Long> sent = new HashSet<>();
+        for (long key = 1; key <= 2_000; key++) {
+            recent.claim(key, 0);
+            if (random.nextBoolean()) {
+                recent.sent(key);
+                sent.add(key);
+            }
+        }
+        for (long key = 1; key <= 2_000; key += 3) {
+            recent.remove(key);
+            sent.remove(key);
+        }
+
+        for (long key = 2; key <= 2_000; key += 3) {
+            assertThat(recent.claim(key, 0), is(sent.contains(key) ? Claim.SENT : Claim.SENDING));
+        }
+    }
+
+    @Test
+    public void neverSuppressesReportsWithoutKey() {
+        ReportDeduplicator recent = new ReportDeduplicator(100, TTL);
+
+        assertThat(send(recent, ReportDeduplicator.NO_KEY, 0), is(true));
+        assertThat(send(recent, ReportDeduplicator.NO_KEY, 0), is(true));
+        assertThat(recent.size(), is(0));
+    }
+
+    @Test
+    public void forgetsReportsAfterTimeToLive() {
+        ReportDeduplicator recent = new ReportDeduplicator(100, TTL);
+        send(recent, 1, 0);
+        send(recent, 2, 30_000);
+
+        assertThat(send(recent, 1, TTL - 1), is(false));
+        assertThat(send(recent, 1, TTL), is(true));
+        assertThat(send(recent, 2, TTL), is(false));
+    }
+
+    @Test
+    public void evictsOldestWhenFull() {
+        ReportDeduplicator recent = new ReportDeduplicator(3, TTL);
+        send(recent, 1, 0);
+        send(recent, 2, 0);
+        send(recent, 3, 0);
+
+        send(recent, 4, 0);
+
+        assertThat(recent.size(), is(3));
+        assertThat(send(recent, 2, 0), is(false));
+        assertThat(send(recent, 1, 0), is(true));
+    }
+
+    @Test
+    public void removedReportIsNotEvictedByItsOlderEntry() {
+        ReportDeduplicator recent = new ReportDeduplicator(3, TTL);
+        send(recent, 1, 0);
+        recent.remove(1);
+        send(recent, 2, 0);
+        send(recent, 1, 0);
+
+        // evicts the first entry of 1, which must not take the second one with it
+        send(recent, 3, 0);
+        send(recent, 4, 0);
+
+        assertThat(send(recent, 1, 0), is(false));
+    }
+
+    @Test
+    public void agreesWithHashSetUnderRandomOperations() {
+        ReportDeduplicator recent = new ReportDeduplicator(200_000, TTL);
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            // a small key space, so that probe sequences collide and keys are removed from the middle of them
+            long key = 1 + random.nextInt(5_000);
+            if (random.nextInt(4) == 0) {
+                recent.remove(key);
+                expected.remove(key);
+            } else {
+                assertThat(send(recent, key, 0), is(expected.add(key)));
+            }
+        }
+        assertThat(recent.size(), is(expected.size()));
+    }
+
+    @Test
+    public void identifiesNumericSerialsByTheirNumber() {
+        assertThat(ReportDeduplicator.device("12345678"), is(12345678L));
+        assertThat(ReportDeduplicator.device("E1"), not(ReportDeduplicator.device("E2")));
+    }
+
+    /**
+     * Claim and send a report, as the pipeline does.
+     *
+     * @return false when the report was sent or claimed before
+     */
+    private static boolean send(ReportDeduplicator recent, long key, long nowMillis) {
+        if (recent.claim(key, nowMillis) != Claim.NEW) {
+            return false;
+        }
+        recent.sent(key);
+        return true;
+    }
+}
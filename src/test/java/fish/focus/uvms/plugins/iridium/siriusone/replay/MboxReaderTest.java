@@ -0,0 +1,73 @@
+package fish.focus.uvms.plugins.iridium.siriusone.replay;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MboxReaderTest {
+
+    @Test
+    public void splitsMessagesAtFromLines() throws IOException {
+        String mbox = "From reports@example.com Mon Sep 14 10:00:00 2020\n"
+                + "Subject: first\n\nbody one\n\n"
+                + "From reports@example.com Mon Sep 14 10:05:00 2020\r\n"
+                + "Subject: second\r\n\r\nbody two\r\n";
+
+        assertThat(readAll(mbox), is(List.of("Subject: first\n\nbody one\n\n", "Subject: second\r\n\r\nbody two\r\n")));
+    }
+
+    @Test
+    public void unquotesFromLinesInBodies() throws IOException {
+        String mbox = "From a Mon Sep 14 10:00:00 2020\n\n>From the boat\n>>From the sea\nFrom here on\n";
+
+        assertThat(readAll(mbox), is(List.of("\nFrom the boat\n>From the sea\n", "")));
+    }
+
+    @Test
+    public void skipsContentBeforeFirstMessage() throws IOException {
+        assertThat(readAll("garbage\nFrom a\nbody"), is(List.of("body")));
+        assertThat(readAll("no separator at all\n"), is(List.of()));
+        assertThat(readAll(""), is(List.of()));
+    }
+
+    @Test
+    public void readsLinesLongerThanItsBuffers() throws IOException {
+        String body = "x".repeat(200_000);
+
+        List<String> messages = readAll("From a\n" + body + "\nFrom b\nshort\n", 7);
+
+        assertThat(messages, is(List.of(body + "\n", "short\n")));
+    }
+
+    private static List<String> readAll(String mbox) throws IOException {
+        return readAll(mbox, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param chunk the most bytes returned by one read of the stream
+     */
+    private static List<String> readAll(String mbox, int chunk) throws IOException {
+        InputStream in = new ByteArrayInputStream(mbox.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, chunk));
+            }
+        };
+        List<String> messages = new ArrayList<>();
+        try (MboxReader reader = new MboxReader(in)) {
+            byte[] message;
+            while ((message = reader.next()) != null) {
+                messages.add(new String(message, StandardCharsets.UTF_8));
+            }
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,37 @@
+package fish.focus.uvms.plugins.iridium.siriusone.replay;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+
+public class RateLimiterTest {
+
+    @Test
+    public void spacesPermitsToTheCeiling() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(1000);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire(50);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // the first request is granted at once, the other four wait 50 ms each
+        assertThat(elapsed, greaterThanOrEqualTo(195L));
+    }
+
+    @Test
+    public void doesNotLimitWithoutCeiling() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(0);
+
+        long start = System.nanoTime();
+        limiter.acquire(1_000_000);
+        limiter.acquire(1_000_000);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(100L));
+    }
+}
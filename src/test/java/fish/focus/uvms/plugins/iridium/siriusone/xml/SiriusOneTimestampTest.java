@@ -0,0 +1,61 @@
+package fish.focus.uvms.plugins.iridium.siriusone.xml;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.SplittableRandom;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SiriusOneTimestampTest {
+
+    @Test
+    public void parsesLikeFormatter() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < 100_000; i++) {
+            LocalDateTime expected = LocalDateTime.ofEpochSecond(random.nextLong(-5_000_000_000L, 10_000_000_000L), 0, ZoneOffset.UTC);
+            String text = expected.format(SiriusOneTimestamp.FORMAT);
+
+            assertThat(text, SiriusOneTimestamp.parse(text), is(expected));
+            assertThat(text, SiriusOneTimestamp.parseEpochSecond(text), is(expected.toEpochSecond(ZoneOffset.UTC)));
+        }
+    }
+
+    @Test
+    public void epochDayMatchesLocalDate() {
+        for (LocalDate date = LocalDate.of(1, 1, 1); date.getYear() < 2500; date = date.plusDays(13)) {
+            assertThat(date.toString(), SiriusOneTimestamp.epochDay(date.getYear(), date.getMonthValue(), date.getDayOfMonth()), is(date.toEpochDay()));
+        }
+    }
+
+    @Test
+    public void leapDay() {
+        assertThat(SiriusOneTimestamp.parse("2024-02-29 23:59:59"), is(LocalDateTime.of(2024, 2, 29, 23, 59, 59)));
+        assertThat(SiriusOneTimestamp.parse("2000-02-29 00:00:00"), is(LocalDateTime.of(2000, 2, 29, 0, 0, 0)));
+    }
+
+    @Test
+    public void outOfRangeDayFallsBackToFormatter() {
+        String text = "2023-02-30 10:00:00";
+        assertThat(SiriusOneTimestamp.parse(text), is(LocalDateTime.parse(text, SiriusOneTimestamp.FORMAT)));
+    }
+
+    @Test(expected = DateTimeParseException.class)
+    public void rejectsOtherFormat() {
+        SiriusOneTimestamp.parse("2023-03-01T06:15:11");
+    }
+
+    @Test(expected = DateTimeParseException.class)
+    public void rejectsInvalidHour() {
+        SiriusOneTimestamp.parseEpochSecond("2023-03-01 24:15:11");
+    }
+
+    @Test
+    public void formats() {
+        assertThat(SiriusOneTimestamp.format(LocalDateTime.of(2020, 9, 2, 14, 59, 1)), is("2020-09-02 14:59:01"));
+    }
+}
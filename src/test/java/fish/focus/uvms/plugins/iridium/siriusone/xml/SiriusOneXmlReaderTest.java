@@ -0,0 +1,151 @@
+package fish.focus.uvms.plugins.iridium.siriusone.xml;
+
+import org.junit.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SiriusOneXmlReaderTest {
+
+    @Test
+    public void readsEveryPositionOfEveryDevice() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+                "<devices>\n" +
+                "    <device>\n" +
+                "        <devicetype>SiriusOne</devicetype>\n" +
+                "        <serial>E1</serial>\n" +
+                "        <positions>\n" +
+                position(1, 57.1) +
+                position(2, 57.2) +
+                "        </positions>\n" +
+                "    </device>\n" +
+                "    <device>\n" +
+                "        <serial>E2</serial>\n" +
+                "        <positions>\n" +
+                position(3, 58.3) +
+                "        </positions>\n" +
+                "    </device>\n" +
+                "</devices>\n";
+
+        List<String> read = readAll(xml);
+
+        assertThat(read, is(List.of("E1:1:57.1", "E1:2:57.2", "E2:3:58.3")));
+    }
+
+    @Test
+    public void readsDocumentWithoutWhitespaceBetweenElements() throws Exception {
+        String xml = "<devices><device><serial>E1</serial><positions>" +
+                position(1, 57.1) + position(2, 57.2) +
+                "</positions></device><device><serial>E2</serial><positions>" +
+                position(3, 58.3) +
+                "</positions></device></devices>";
+
+        List<String> read = readAll(xml.replace("\n", "").replace("    ", ""));
+
+        assertThat(read, is(List.of("E1:1:57.1", "E1:2:57.2", "E2:3:58.3")));
+    }
+
+    @Test
+    public void ignoresDeviceWithoutPositions() throws Exception {
+        String xml = "<devices><device><serial>E1</serial><positions/></device>" +
+                "<device><serial>E2</serial><positions>" + position(1, 57.1) + "</positions></device></devices>";
+
+        assertThat(readAll(xml), is(List.of("E2:1:57.1")));
+    }
+
+    @Test
+    public void decodesPositionFields() throws Exception {
+        String xml = "<devices><device><serial>E12345678</serial><positions>" +
+                "<position>\n" +
+                "    <serial>350</serial>\n" +
+                "    <csp>2020-09-02 15:00:12</csp>\n" +
+                "    <source>Data Report</source>\n" +
+                "    <timestamp>2020-09-02 15:00:18</timestamp>\n" +
+                "    <gps> 2020-09-02 14:59:01 </gps>\n" +
+                "    <speed><knots>1.2</knots><km>2</km></speed>\n" +
+                "    <course>123</course>\n" +
+                "    <odometer/><io><bit>1</bit></io>\n" +
+                "    <latitude>57.7152863</latitude>\n" +
+                "    <longitude>11.9736080</longitude>\n" +
+                "    <altitude/>\n" +
+                "</position></positions></device></devices>";
+
+        try (SiriusOneXmlReader reader = new SiriusOneXmlReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))) {
+            assertThat(reader.next(), is(true));
+            PositionRecord position = reader.getPosition();
+            assertThat(position.getSerial(), is(350L));
+            assertThat(position.getCsp(), is(LocalDateTime.of(2020, 9, 2, 15, 0, 12).toEpochSecond(ZoneOffset.UTC)));
+            assertThat(position.getTimestamp(), is(LocalDateTime.of(2020, 9, 2, 15, 0, 18).toEpochSecond(ZoneOffset.UTC)));
+            assertThat(position.getGps(), is(LocalDateTime.of(2020, 9, 2, 14, 59, 1).toEpochSecond(ZoneOffset.UTC)));
+            assertThat(position.getKnots(), is(1.2));
+            assertThat(position.getKm(), is(2.0));
+            assertThat(position.getCourse(), is(123.0));
+            assertThat(position.getLatitude(), is(57.7152863));
+            assertThat(position.getLongitude(), is(11.9736080));
+            assertThat(Double.isNaN(position.getAltitude()), is(true));
+            assertThat(reader.next(), is(false));
+        }
+    }
+
+    @Test
+    public void missingTimestampIsNoTime() throws Exception {
+        String xml = "<devices><device><serial>E1</serial><positions><position><serial>1</serial></position>" +
+                "</positions></device></devices>";
+
+        try (SiriusOneXmlReader reader = new SiriusOneXmlReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))) {
+            assertThat(reader.next(), is(true));
+            assertThat(reader.getPosition().getGps(), is(PositionRecord.NO_TIME));
+            assertThat(Double.isNaN(reader.getPosition().getKnots()), is(true));
+        }
+    }
+
+    @Test(expected = XMLStreamException.class)
+    public void rejectsInvalidNumber() throws Exception {
+        readAll("<devices><device><serial>E1</serial><positions><position><latitude>north</latitude></position>" +
+                "</positions></device></devices>");
+    }
+
+    @Test
+    public void readsEmptyDocument() throws Exception {
+        assertThat(readAll("<devices/>"), is(List.of()));
+    }
+
+    @Test(expected = XMLStreamException.class)
+    public void rejectsPositionsBeforeDeviceSerial() throws Exception {
+        readAll("<devices><device><positions>" + position(1, 57.1) + "</positions><serial>E1</serial></device></devices>");
+    }
+
+    private List<String> readAll(String xml) throws XMLStreamException {
+        List<String> read = new ArrayList<>();
+        try (SiriusOneXmlReader reader = new SiriusOneXmlReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))) {
+            while (reader.next()) {
+                PositionRecord position = reader.getPosition();
+                read.add(reader.getDeviceSerial() + ":" + position.getSerial() + ":" + position.getLatitude());
+            }
+            assertThat(reader.getPositionCount(), is(read.size()));
+        }
+        return read;
+    }
+
+    private static String position(int serial, double latitude) {
+        return "            <position>\n" +
+                "                <serial>" + serial + "</serial>\n" +
+                "                <timestamp>2020-09-02 15:00:18</timestamp>\n" +
+                "                <gps>2020-09-02 14:59:01</gps>\n" +
+                "                <speed>\n" +
+                "                    <knots>1.2</knots>\n" +
+                "                </speed>\n" +
+                "                <course>123</course>\n" +
+                "                <latitude>" + latitude + "</latitude>\n" +
+                "                <longitude>11.9736080</longitude>\n" +
+                "            </position>\n";
+    }
+}